@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.ninja.benchmarks;
+
+import com.basistech.ninja.Ensemble;
+import com.basistech.ninja.FrozenNetwork;
+import com.basistech.ninja.Network;
+import com.basistech.ninja.ejml.ColVector;
+import com.google.common.collect.Lists;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares averaging the outputs of separately applied {@link FrozenNetwork}s
+ * with a fused {@link Ensemble} of the same 784x100x10 networks, for sparse
+ * and dense inputs.
+ *
+ * <pre>
+ *  $ java -cp benchmarks/target/classes:/root/project/core/target/ninja-core-0.0.1-SNAPSHOT.jar:/root/.m2/repository/com/google/guava/guava/12.0/guava-12.0.jar:/root/.m2/repository/com/google/code/findbugs/jsr305/1.3.9/jsr305-1.3.9.jar:/root/.m2/repository/org/ejml/all/0.27/all-0.27.jar:/root/.m2/repository/org/ejml/denseC64/0.27/denseC64-0.27.jar:/root/.m2/repository/org/ejml/equation/0.27/equation-0.27.jar:/root/.m2/repository/org/ejml/dense64/0.27/dense64-0.27.jar:/root/.m2/repository/org/ejml/simple/0.27/simple-0.27.jar:/root/.m2/repository/org/ejml/core/0.27/core-0.27.jar:/root/.m2/repository/commons-cli/commons-cli/1.2/commons-cli-1.2.jar:/root/.m2/repository/org/slf4j/slf4j-api/1.7.7/slf4j-api-1.7.7.jar:/root/project/vector/target/ninja-vector-0.0.1-SNAPSHOT.jar:/root/.m2/repository/org/openjdk/jmh/jmh-core/1.37/jmh-core-1.37.jar:/root/.m2/repository/net/sf/jopt-simple/jopt-simple/5.0.4/jopt-simple-5.0.4.jar:/root/.m2/repository/org/apache/commons/commons-math3/3.6.1/commons-math3-3.6.1.jar:/root/.m2/repository/org/openjdk/jmh/jmh-generator-annprocess/1.37/jmh-generator-annprocess-1.37.jar \
+ *      org.openjdk.jmh.Main EnsembleBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EnsembleBenchmark {
+    // CHECKSTYLE:OFF annotation array initializers
+    @Param({"2", "5"})
+    int members;
+
+    // fraction of non-zero inputs; about 0.2 for the MNIST pixels
+    @Param({"0.2", "1.0"})
+    double density;
+    // CHECKSTYLE:ON
+
+    private FrozenNetwork[] frozen;
+    private Ensemble ensemble;
+    private double[] input;
+
+    @Setup
+    public void setUp() {
+        List<Network> nets = Lists.newArrayList();
+        frozen = new FrozenNetwork[members];
+        for (int m = 0; m < members; m++) {
+            Network net = new Network(Arrays.asList(784, 100, 10));
+            nets.add(net);
+            frozen[m] = net.freeze();
+        }
+        ensemble = new Ensemble(nets);
+        Random random = new Random(42);
+        input = new double[784];
+        for (int i = 0; i < input.length; i++) {
+            input[i] = random.nextDouble() < density ? random.nextDouble() : 0.0;
+        }
+    }
+
+    @Benchmark
+    public double[] separate() {
+        double[] average = new double[10];
+        for (FrozenNetwork net : frozen) {
+            ColVector output = net.apply(input);
+            for (int j = 0; j < average.length; j++) {
+                average[j] += output.get(j) / members;
+            }
+        }
+        return average;
+    }
+
+    @Benchmark
+    public ColVector fused() {
+        return ensemble.apply(input);
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.ninja.benchmarks;
+
+import com.basistech.ninja.ejml.ColVector;
+import com.basistech.ninja.ejml.Kernels;
+import com.basistech.ninja.ejml.KernelsLoader;
+import com.basistech.ninja.ejml.NinjaMatrix;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the {@link Kernels} implementations on the operations used by
+ * training and inference.
+ *
+ * <pre>
+ *  $ mvn -B install -Pfastinstall
+ *  $ java -cp benchmarks/target/classes:$(cat benchmarks/target/classpath.txt) \
+ *      org.openjdk.jmh.Main KernelsBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class KernelsBenchmark {
+    // CHECKSTYLE:OFF annotation array initializers
+    @Param({"ejml", "blocked", "vector"})
+    String kernelsName;
+
+    // rows x cols of the weight matrix, bias column included
+    @Param({"30x785", "1024x1025"})
+    String shape;
+    // CHECKSTYLE:ON
+
+    private Kernels kernels;
+    private NinjaMatrix m;
+    private ColVector x;
+    private ColVector y;
+    private ColVector rowsOut;
+    private ColVector colsOut;
+
+    @Setup
+    public void setUp() {
+        kernels = KernelsLoader.load(kernelsName);
+        if (!kernelsName.equals(kernels.getName())) {
+            throw new IllegalStateException(kernelsName + " kernels are not available");
+        }
+        String[] dims = shape.split("x");
+        int rows = Integer.parseInt(dims[0]);
+        int cols = Integer.parseInt(dims[1]);
+        Random random = new Random(42);
+        m = new NinjaMatrix(rows, cols);
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                m.set(i, j, random.nextGaussian());
+            }
+        }
+        x = new ColVector(cols);
+        for (int j = 0; j < cols; j++) {
+            x.set(j, random.nextDouble());
+        }
+        y = new ColVector(rows);
+        for (int i = 0; i < rows; i++) {
+            y.set(i, random.nextGaussian());
+        }
+        rowsOut = new ColVector(rows);
+        colsOut = new ColVector(cols);
+    }
+
+    @Benchmark
+    public ColVector mult() {
+        kernels.mult(m, x, rowsOut);
+        return rowsOut;
+    }
+
+    @Benchmark
+    public ColVector multTransA() {
+        kernels.multTransA(m, y, colsOut);
+        return colsOut;
+    }
+
+    @Benchmark
+    public NinjaMatrix addOuterProduct() {
+        kernels.addOuterProduct(m, y, x);
+        return m;
+    }
+
+    @Benchmark
+    public ColVector sigmoid() {
+        kernels.sigmoid(x, colsOut);
+        return colsOut;
+    }
+}
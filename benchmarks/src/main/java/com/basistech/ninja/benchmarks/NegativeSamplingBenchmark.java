@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.ninja.benchmarks;
+
+import com.basistech.ninja.NegativeSampling;
+import com.basistech.ninja.Network;
+import com.basistech.ninja.ejml.ColVector;
+import com.basistech.ninja.ejml.KernelsLoader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares training a batch of 10 examples with every output unit
+ * ({@link Network#trainBatch}) to training with 5 negative samples per example
+ * ({@link NegativeSampling#trainBatch}), for a 256x64 network with many labels.
+ *
+ * <pre>
+ *  $ java -cp benchmarks/target/classes:$(cat benchmarks/target/classpath.txt) \
+ *      org.openjdk.jmh.Main NegativeSamplingBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NegativeSamplingBenchmark {
+    private static final int BATCH_SIZE = 10;
+    private static final int NEGATIVES = 5;
+
+    // CHECKSTYLE:OFF annotation array initializers
+    @Param({"1000", "50000"})
+    int labels;
+    // CHECKSTYLE:ON
+
+    private Network net;
+    private NegativeSampling sampling;
+    private ColVector[] x;
+    private ColVector[] y;
+    private int[] batchLabels;
+
+    @Setup
+    public void setUp() {
+        net = new Network(KernelsLoader.get(), Arrays.asList(256, 64, labels));
+        sampling = new NegativeSampling(net, NEGATIVES);
+        Random random = new Random(42);
+        x = new ColVector[BATCH_SIZE];
+        y = new ColVector[BATCH_SIZE];
+        batchLabels = new int[BATCH_SIZE];
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            x[i] = new ColVector(256);
+            for (int j = 0; j < 256; j++) {
+                x[i].set(j, random.nextDouble());
+            }
+            batchLabels[i] = random.nextInt(labels);
+            y[i] = new ColVector(labels);
+            y[i].set(batchLabels[i], 1.0);
+        }
+    }
+
+    @Benchmark
+    public Network full() {
+        // a tiny learning rate keeps the weights from drifting between iterations
+        net.trainBatch(x, y, 1e-9);
+        return net;
+    }
+
+    @Benchmark
+    public Network sampled() {
+        sampling.trainBatch(x, batchLabels, 1e-9);
+        return net;
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.ninja.benchmarks;
+
+import com.basistech.ninja.FloatNetwork;
+import com.basistech.ninja.Model;
+import com.basistech.ninja.Network;
+import com.basistech.ninja.QuantizedNetwork;
+import com.basistech.ninja.ejml.BlockedKernels;
+import com.basistech.ninja.ejml.ColVector;
+import com.google.common.collect.Lists;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares prediction throughput of double precision, single precision and
+ * 8-bit quantized networks. The double precision network uses the scalar
+ * {@link BlockedKernels}, so all of them are plain Java loops and the
+ * difference is the precision.
+ *
+ * <pre>
+ *  $ java -cp benchmarks/target/classes:$(cat benchmarks/target/classpath.txt) \
+ *      org.openjdk.jmh.Main PrecisionBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PrecisionBenchmark {
+    // CHECKSTYLE:OFF annotation array initializers
+    @Param({"double", "float", "int8"})
+    String precision;
+
+    // layer sizes, not including bias units
+    @Param({"784x30x10", "1024x1024x1024"})
+    String layers;
+    // CHECKSTYLE:ON
+
+    private Model model;
+    private double[] input;
+
+    @Setup
+    public void setUp() {
+        List<Integer> layerSizes = Lists.newArrayList();
+        for (String size : layers.split("x")) {
+            layerSizes.add(Integer.parseInt(size));
+        }
+        Network net = new Network(new BlockedKernels(), layerSizes);
+        if ("float".equals(precision)) {
+            model = new FloatNetwork(net);
+        } else if ("int8".equals(precision)) {
+            // inputs and sigmoid outputs are all in [0, 1]
+            double[] inputMaxAbs = new double[layerSizes.size() - 1];
+            Arrays.fill(inputMaxAbs, 1.0);
+            model = QuantizedNetwork.quantize(net, inputMaxAbs);
+        } else {
+            model = net;
+        }
+        Random random = new Random(42);
+        input = new double[layerSizes.get(0)];
+        for (int i = 0; i < input.length; i++) {
+            input[i] = random.nextDouble();
+        }
+    }
+
+    @Benchmark
+    public ColVector apply() {
+        return model.apply(input);
+    }
+}
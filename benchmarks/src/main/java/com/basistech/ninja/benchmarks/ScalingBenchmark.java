@@ -0,0 +1,440 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.ninja.benchmarks;
+
+import com.basistech.ninja.Evaluate;
+import com.basistech.ninja.Evaluation;
+import com.basistech.ninja.ExamplesIterator;
+import com.basistech.ninja.FrozenNetwork;
+import com.basistech.ninja.LatencyHistogram;
+import com.basistech.ninja.Network;
+import com.basistech.ninja.Train;
+import com.basistech.ninja.ejml.KernelsLoader;
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.GnuParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * {@code ScalingBenchmark} measures how training and prediction scale with the
+ * size of the data and the network. For every combination of the values given
+ * for each parameter, it writes {@link SyntheticExamples} to a training file
+ * and a test file, trains a network by streaming the training file through
+ * {@link ExamplesIterator} and {@link Train#trainBatch}, as {@code Train}
+ * does, and evaluates it on the test file with {@link Evaluate}. Only a batch
+ * of examples is in memory at a time, so the peak heap is what training and
+ * prediction need, not the size of the data. Each combination is one row of
+ * CSV or JSON output, with:
+ *
+ * <ul>
+ * <li>training throughput in examples per second, including reading the
+ * file, and the latency of {@link Train#trainBatch}, which parses a batch and
+ * trains on it (p50, p99 and max, in microseconds);</li>
+ * <li>prediction throughput of {@link Evaluate} with the given number of
+ * threads, and the latency of a single {@link FrozenNetwork#apply} call;</li>
+ * <li>test accuracy, as a check that the network learned something;</li>
+ * <li>peak heap use and garbage collection time and count.</li>
+ * </ul>
+ *
+ * <p>Training is single threaded, so the threads parameter only affects
+ * prediction. The first combination is run once before any are measured, to
+ * warm up the JIT. Peak heap is measured per combination, so run with a fixed
+ * heap ({@code -Xms} equal to {@code -Xmx}) to compare combinations fairly.
+ */
+public final class ScalingBenchmark {
+    private static final String CSV = "csv";
+    private static final String JSON = "json";
+    private static final long SEED = 1;
+    private static final double NOISE = 0.3;
+    private final int features;
+    private final int labels;
+    private final int epochs;
+    private final int testExamples;
+    private final double learningRate;
+    private final File tempDir;
+
+    private ScalingBenchmark(int features, int labels, int epochs, int testExamples, double learningRate,
+        File tempDir) {
+        this.features = features;
+        this.labels = labels;
+        this.epochs = epochs;
+        this.testExamples = testExamples;
+        this.learningRate = learningRate;
+        this.tempDir = tempDir;
+    }
+
+    private Map<String, Object> run(int examples, double density, int width, int depth, int batchSize, int threads)
+        throws IOException, InterruptedException, ExecutionException {
+        Map<String, Object> row = Maps.newLinkedHashMap();
+        row.put("examples", examples);
+        row.put("features", features);
+        row.put("labels", labels);
+        row.put("density", density);
+        row.put("width", width);
+        row.put("depth", depth);
+        row.put("batch_size", batchSize);
+        row.put("threads", threads);
+        row.put("epochs", epochs);
+
+        // the test examples come from the same generator, so they have the same prototypes
+        SyntheticExamples generator = new SyntheticExamples(features, labels, density, NOISE, SEED);
+        File trainFile = new File(tempDir, "train.txt");
+        generator.write(trainFile, examples);
+        File testFile = new File(tempDir, "test.txt");
+        generator.write(testFile, testExamples);
+
+        List<Integer> layerSizes = Lists.newArrayList();
+        layerSizes.add(features);
+        for (int d = 0; d < depth; d++) {
+            layerSizes.add(width);
+        }
+        layerSizes.add(labels);
+        Network net = new Network(KernelsLoader.get(), layerSizes);
+
+        // so that the peak doesn't count garbage left by earlier combinations
+        System.gc();
+        resetPeakHeap();
+        long gcMillis = gcMillis();
+        long gcCount = gcCount();
+
+        Train train = new Train(net, trainFile);
+        LatencyHistogram trainLatency = new LatencyHistogram();
+        long trainStart = System.nanoTime();
+        for (int epoch = 0; epoch < epochs; epoch++) {
+            for (List<String> batch : new ExamplesIterator(trainFile, batchSize)) {
+                long batchStart = System.nanoTime();
+                train.trainBatch(batch, learningRate);
+                trainLatency.record(System.nanoTime() - batchStart);
+            }
+        }
+        long trainNanos = System.nanoTime() - trainStart;
+
+        FrozenNetwork frozen = net.freeze();
+        long predictStart = System.nanoTime();
+        Evaluation evaluation = Evaluate.evaluate(frozen, testFile, threads, 1);
+        long predictNanos = System.nanoTime() - predictStart;
+        double peakHeapMb = peakHeap() / (1024.0 * 1024.0);
+
+        // single calls, on inputs generated one at a time
+        LatencyHistogram predictLatency = new LatencyHistogram();
+        double[] input = new double[features];
+        for (int i = 0; i < Math.min(testExamples, 1000); i++) {
+            generator.next(input);
+            long applyStart = System.nanoTime();
+            frozen.apply(input);
+            predictLatency.record(System.nanoTime() - applyStart);
+        }
+
+        row.put("train_examples_per_sec", perSecond((long) examples * epochs, trainNanos));
+        row.put("train_batch_p50_us", micros(trainLatency.getPercentile(50)));
+        row.put("train_batch_p99_us", micros(trainLatency.getPercentile(99)));
+        row.put("train_batch_max_us", micros(trainLatency.getMax()));
+        row.put("predict_examples_per_sec", perSecond(testExamples, predictNanos));
+        row.put("predict_p50_us", micros(predictLatency.getPercentile(50)));
+        row.put("predict_p99_us", micros(predictLatency.getPercentile(99)));
+        row.put("predict_max_us", micros(predictLatency.getMax()));
+        row.put("accuracy", evaluation.getAccuracy());
+        row.put("peak_heap_mb", peakHeapMb);
+        row.put("gc_ms", gcMillis() - gcMillis);
+        row.put("gc_count", gcCount() - gcCount);
+        return row;
+    }
+
+    private static double perSecond(long count, long nanos) {
+        return count * 1e9 / nanos;
+    }
+
+    private static double micros(long nanos) {
+        return nanos / 1000.0;
+    }
+
+    private static void resetPeakHeap() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    // the sum of the peaks of the heap pools, which may not all have peaked at the same time
+    private static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, gc.getCollectionTime());
+        }
+        return millis;
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static String format(Object value) {
+        if (value instanceof Double) {
+            return String.format("%.4f", (Double) value);
+        }
+        return String.valueOf(value);
+    }
+
+    private static void printCsv(PrintStream out, Map<String, Object> row, boolean header) {
+        if (header) {
+            out.println(join(row.keySet(), ","));
+        }
+        List<String> values = Lists.newArrayList();
+        for (Object value : row.values()) {
+            values.add(format(value));
+        }
+        out.println(join(values, ","));
+        out.flush();
+    }
+
+    private static void printJson(PrintStream out, List<Map<String, Object>> rows) {
+        out.println("[");
+        for (int r = 0; r < rows.size(); r++) {
+            List<String> fields = Lists.newArrayList();
+            for (Map.Entry<String, Object> entry : rows.get(r).entrySet()) {
+                fields.add(String.format("\"%s\": %s", entry.getKey(), format(entry.getValue())));
+            }
+            out.println("  {" + join(fields, ", ") + "}" + (r < rows.size() - 1 ? "," : ""));
+        }
+        out.println("]");
+        out.flush();
+    }
+
+    private static String join(Iterable<String> values, String separator) {
+        StringBuilder sb = new StringBuilder();
+        for (String value : values) {
+            if (sb.length() > 0) {
+                sb.append(separator);
+            }
+            sb.append(value);
+        }
+        return sb.toString();
+    }
+
+    private static int[] ints(String values) {
+        String[] fields = values.split(",");
+        int[] result = new int[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            result[i] = Integer.parseInt(fields[i].trim());
+        }
+        return result;
+    }
+
+    private static double[] doubles(String values) {
+        String[] fields = values.split(",");
+        double[] result = new double[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            result[i] = Double.parseDouble(fields[i].trim());
+        }
+        return result;
+    }
+
+    private static void deleteDir(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (!file.delete()) {
+                    file.deleteOnExit();
+                }
+            }
+        }
+        if (!dir.delete()) {
+            dir.deleteOnExit();
+        }
+    }
+
+    private static void usage(Options options) {
+        HelpFormatter formatter = new HelpFormatter();
+        formatter.setWidth(80);
+        formatter.printHelp("ScalingBenchmark [options]", options);
+        System.out.println();
+    }
+
+    /**
+     * Command line interface to run the benchmark. Options that take a list
+     * take comma separated values, and every combination of them is run. CSV
+     * rows are written as each combination finishes; JSON is written at the
+     * end.
+     *
+     * <pre>
+     *  usage: ScalingBenchmark [options]
+     *  --batch-size <arg>      list of batch sizes (default = 10)
+     *  --density <arg>         list of fractions of features set in each example (default = 0.1)
+     *  --depth <arg>           list of numbers of hidden layers (default = 1)
+     *  --epochs <arg>          number of training epochs (default = 1)
+     *  --examples <arg>        list of numbers of training examples (default = 10000)
+     *  --features <arg>        number of features (default = 1000)
+     *  --format <arg>          output format: csv or json (default = csv)
+     *  --labels <arg>          number of labels (default = 10)
+     *  --learning-rate <arg>   learning rate (default = 0.7)
+     *  --output <arg>          output file (default = standard output)
+     *  --test-examples <arg>   number of test examples (default = 10000)
+     *  --threads <arg>         list of numbers of prediction threads (default = processors)
+     *  --width <arg>           list of hidden layer sizes (default = 100)
+     * </pre>
+     *
+     * @param args command line arguments
+     * @throws IOException
+     * @throws InterruptedException
+     * @throws ExecutionException
+     */
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+        String defaultExamples = "10000";
+        String defaultDensity = "0.1";
+        String defaultWidth = "100";
+        String defaultDepth = "1";
+        String defaultBatchSize = "10";
+        String defaultThreads = String.valueOf(Runtime.getRuntime().availableProcessors());
+        String defaultFeatures = "1000";
+        String defaultLabels = "10";
+        String defaultEpochs = "1";
+        String defaultTestExamples = "10000";
+        String defaultLearningRate = "0.7";
+        String defaultFormat = CSV;
+
+        Options options = new Options();
+        options.addOption(new Option(null, "examples", true,
+            String.format("list of numbers of training examples (default = %s)", defaultExamples)));
+        options.addOption(new Option(null, "density", true,
+            String.format("list of fractions of features set in each example (default = %s)", defaultDensity)));
+        options.addOption(new Option(null, "width", true,
+            String.format("list of hidden layer sizes (default = %s)", defaultWidth)));
+        options.addOption(new Option(null, "depth", true,
+            String.format("list of numbers of hidden layers (default = %s)", defaultDepth)));
+        options.addOption(new Option(null, "batch-size", true,
+            String.format("list of batch sizes (default = %s)", defaultBatchSize)));
+        options.addOption(new Option(null, "threads", true,
+            "list of numbers of prediction threads (default = processors)"));
+        options.addOption(new Option(null, "features", true,
+            String.format("number of features (default = %s)", defaultFeatures)));
+        options.addOption(new Option(null, "labels", true,
+            String.format("number of labels (default = %s)", defaultLabels)));
+        options.addOption(new Option(null, "epochs", true,
+            String.format("number of training epochs (default = %s)", defaultEpochs)));
+        options.addOption(new Option(null, "test-examples", true,
+            String.format("number of test examples (default = %s)", defaultTestExamples)));
+        options.addOption(new Option(null, "learning-rate", true,
+            String.format("learning rate (default = %s)", defaultLearningRate)));
+        options.addOption(new Option(null, "format", true,
+            String.format("output format: csv or json (default = %s)", defaultFormat)));
+        options.addOption(new Option(null, "output", true, "output file (default = standard output)"));
+
+        CommandLineParser parser = new GnuParser();
+        CommandLine cmdline = null;
+        try {
+            cmdline = parser.parse(options, args);
+        } catch (org.apache.commons.cli.ParseException e) {
+            System.err.println(e.getMessage());
+            usage(options);
+            System.exit(1);
+        }
+
+        String format = cmdline.getOptionValue("format", defaultFormat);
+        if (!CSV.equals(format) && !JSON.equals(format)) {
+            System.err.println("unknown format: " + format);
+            usage(options);
+            System.exit(1);
+        }
+        int[] examples = ints(cmdline.getOptionValue("examples", defaultExamples));
+        double[] densities = doubles(cmdline.getOptionValue("density", defaultDensity));
+        int[] widths = ints(cmdline.getOptionValue("width", defaultWidth));
+        int[] depths = ints(cmdline.getOptionValue("depth", defaultDepth));
+        int[] batchSizes = ints(cmdline.getOptionValue("batch-size", defaultBatchSize));
+        int[] threads = ints(cmdline.getOptionValue("threads", defaultThreads));
+
+        File tempDir = File.createTempFile("ninja-scaling", "");
+        if (!tempDir.delete() || !tempDir.mkdir()) {
+            throw new IOException("can't create " + tempDir);
+        }
+        PrintStream out = cmdline.hasOption("output")
+            ? new PrintStream(new FileOutputStream(cmdline.getOptionValue("output")), true, Charsets.UTF_8.name())
+            : System.out;
+        try {
+            ScalingBenchmark benchmark = new ScalingBenchmark(
+                Integer.parseInt(cmdline.getOptionValue("features", defaultFeatures)),
+                Integer.parseInt(cmdline.getOptionValue("labels", defaultLabels)),
+                Integer.parseInt(cmdline.getOptionValue("epochs", defaultEpochs)),
+                Integer.parseInt(cmdline.getOptionValue("test-examples", defaultTestExamples)),
+                Double.parseDouble(cmdline.getOptionValue("learning-rate", defaultLearningRate)),
+                tempDir);
+            // warm up
+            benchmark.run(examples[0], densities[0], widths[0], depths[0], batchSizes[0], threads[0]);
+
+            List<Map<String, Object>> rows = Lists.newArrayList();
+            for (int n : examples) {
+                for (double density : densities) {
+                    for (int width : widths) {
+                        for (int depth : depths) {
+                            for (int batchSize : batchSizes) {
+                                for (int t : threads) {
+                                    Map<String, Object> row = benchmark.run(n, density, width, depth, batchSize, t);
+                                    rows.add(row);
+                                    if (CSV.equals(format)) {
+                                        printCsv(out, row, rows.size() == 1);
+                                    }
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+            if (JSON.equals(format)) {
+                printJson(out, rows);
+            }
+        } finally {
+            deleteDir(tempDir);
+            if (out != System.out) {
+                out.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.ninja.benchmarks;
+
+import com.google.common.base.Charsets;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.GnuParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * {@code SyntheticExamples} generates examples in the format that
+ * {@code Train} reads, of any size and sparsity. Each label has a random
+ * prototype value for every feature. An example picks a label, picks the given
+ * fraction of the features at random, and sets each to the label's prototype
+ * value plus gaussian noise, so the labels can be learned, but not perfectly.
+ * The same seed always gives the same examples.
+ */
+public class SyntheticExamples {
+    private final int features;
+    private final int labels;
+    private final int nonZero;
+    private final double noise;
+    private final Random random;
+    private final double[][] prototypes;
+    private final int[] indexes;
+
+    /**
+     * Constructs a generator.
+     *
+     * @param features the number of features
+     * @param labels the number of labels
+     * @param density the fraction of features that are set in each example, from 0 to 1
+     * @param noise the standard deviation of the noise added to each value
+     * @param seed the random seed
+     */
+    public SyntheticExamples(int features, int labels, double density, double noise, long seed) {
+        if (density < 0 || density > 1) {
+            throw new IllegalArgumentException("density must be from 0 to 1: " + density);
+        }
+        this.features = features;
+        this.labels = labels;
+        this.noise = noise;
+        nonZero = Math.max(1, (int) Math.round(density * features));
+        random = new Random(seed);
+        prototypes = new double[labels][features];
+        for (double[] prototype : prototypes) {
+            for (int f = 0; f < features; f++) {
+                prototype[f] = random.nextDouble();
+            }
+        }
+        indexes = new int[features];
+        for (int f = 0; f < features; f++) {
+            indexes[f] = f;
+        }
+    }
+
+    /**
+     * Generates the next example.
+     *
+     * @param x receives the feature values; it must have one element per
+     *          feature, and is cleared first
+     * @return the label
+     */
+    public int next(double[] x) {
+        Arrays.fill(x, 0.0);
+        int label = random.nextInt(labels);
+        // a partial Fisher-Yates shuffle picks the features
+        for (int i = 0; i < nonZero; i++) {
+            int j = i + random.nextInt(features - i);
+            int f = indexes[j];
+            indexes[j] = indexes[i];
+            indexes[i] = f;
+            x[f] = Math.max(0.0, prototypes[label][f] + noise * random.nextGaussian());
+        }
+        return label;
+    }
+
+    /**
+     * Writes examples to a file, with only the non-zero features.
+     *
+     * @param file the output file
+     * @param count the number of examples
+     * @throws IOException
+     */
+    public void write(File file, int count) throws IOException {
+        double[] x = new double[features];
+        try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
+            new FileOutputStream(file), Charsets.UTF_8))) {
+            for (int i = 0; i < count; i++) {
+                int label = next(x);
+                writer.write(Integer.toString(label));
+                for (int f = 0; f < features; f++) {
+                    if (x[f] != 0.0) {
+                        writer.write(' ');
+                        writer.write(Integer.toString(f));
+                        writer.write(':');
+                        writer.write(Float.toString((float) x[f]));
+                    }
+                }
+                writer.newLine();
+            }
+        }
+    }
+
+    private static void usage(Options options) {
+        HelpFormatter formatter = new HelpFormatter();
+        formatter.setWidth(80);
+        formatter.printHelp("SyntheticExamples [options]", options);
+        System.out.println();
+    }
+
+    /**
+     * Command line interface to generate an examples file.
+     *
+     * <pre>
+     *  usage: SyntheticExamples [options]
+     *  --density <arg>    fraction of features set in each example (default = 0.1)
+     *  --examples <arg>   number of examples (required)
+     *  --features <arg>   number of features (default = 1000)
+     *  --labels <arg>     number of labels (default = 10)
+     *  --noise <arg>      standard deviation of the noise (default = 0.3)
+     *  --output <arg>     output examples file (required)
+     *  --seed <arg>       random seed (default = 1)
+     * </pre>
+     *
+     * @param args command line arguments
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+        String defaultDensity = "0.1";
+        String defaultFeatures = "1000";
+        String defaultLabels = "10";
+        String defaultNoise = "0.3";
+        String defaultSeed = "1";
+
+        Options options = new Options();
+        Option option;
+        option = new Option(null, "output", true, "output examples file (required)");
+        option.setRequired(true);
+        options.addOption(option);
+        option = new Option(null, "examples", true, "number of examples (required)");
+        option.setRequired(true);
+        options.addOption(option);
+        options.addOption(new Option(null, "features", true,
+            String.format("number of features (default = %s)", defaultFeatures)));
+        options.addOption(new Option(null, "labels", true,
+            String.format("number of labels (default = %s)", defaultLabels)));
+        options.addOption(new Option(null, "density", true,
+            String.format("fraction of features set in each example (default = %s)", defaultDensity)));
+        options.addOption(new Option(null, "noise", true,
+            String.format("standard deviation of the noise (default = %s)", defaultNoise)));
+        options.addOption(new Option(null, "seed", true, String.format("random seed (default = %s)", defaultSeed)));
+
+        CommandLineParser parser = new GnuParser();
+        CommandLine cmdline = null;
+        try {
+            cmdline = parser.parse(options, args);
+        } catch (org.apache.commons.cli.ParseException e) {
+            System.err.println(e.getMessage());
+            usage(options);
+            System.exit(1);
+        }
+
+        SyntheticExamples generator = new SyntheticExamples(
+            Integer.parseInt(cmdline.getOptionValue("features", defaultFeatures)),
+            Integer.parseInt(cmdline.getOptionValue("labels", defaultLabels)),
+            Double.parseDouble(cmdline.getOptionValue("density", defaultDensity)),
+            Double.parseDouble(cmdline.getOptionValue("noise", defaultNoise)),
+            Long.parseLong(cmdline.getOptionValue("seed", defaultSeed)));
+        generator.write(new File(cmdline.getOptionValue("output")),
+            Integer.parseInt(cmdline.getOptionValue("examples")));
+    }
+}
@@ -0,0 +1,399 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.ninja;
+
+import com.basistech.ninja.ejml.ColVector;
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.GnuParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * {@code Cascade} makes predictions with a small, fast model, and only asks a
+ * larger, more accurate model when the fast one isn't confident. The fast
+ * model is confident when its top score is at least {@code minScore} and
+ * beats the second score by at least {@code minMargin}. When most inputs are
+ * easy, the average cost of a prediction is close to that of the fast model.
+ *
+ * <p>{@link #tune} picks the threshold on a validation file: the one that
+ * answers the most examples with the fast model while keeping the accuracy of
+ * the cascade at or above a target. The models must have the same number of
+ * inputs and outputs.
+ */
+public class Cascade implements Model {
+    private final Model fast;
+    private final Model accurate;
+    private final double minScore;
+    private final double minMargin;
+
+    /**
+     * Constructs a cascade.
+     *
+     * @param fast the model to try first
+     * @param accurate the model to use when the fast one isn't confident
+     * @param minScore the lowest top score of the fast model to accept
+     * @param minMargin the lowest difference between the top two scores of the fast model to accept
+     */
+    public Cascade(Model fast, Model accurate, double minScore, double minMargin) {
+        List<Integer> fastSizes = fast.getLayerSizes();
+        List<Integer> accurateSizes = accurate.getLayerSizes();
+        if (!fastSizes.get(0).equals(accurateSizes.get(0))
+            || !fastSizes.get(fastSizes.size() - 1).equals(accurateSizes.get(accurateSizes.size() - 1))) {
+            throw new IllegalArgumentException(
+                String.format("models have different inputs or outputs: %s and %s", fastSizes, accurateSizes));
+        }
+        this.fast = fast;
+        this.accurate = accurate;
+        this.minScore = minScore;
+        this.minMargin = minMargin;
+    }
+
+    /**
+     * Returns the layer sizes of the accurate model.
+     *
+     * @return the layer sizes
+     */
+    @Override
+    public List<Integer> getLayerSizes() {
+        return accurate.getLayerSizes();
+    }
+
+    /**
+     * Applies the input to the fast model, and to the accurate model if the
+     * fast one isn't confident. Safe to call from multiple threads if both
+     * models are.
+     *
+     * @param values the input values
+     * @return the output of the model that answered
+     */
+    @Override
+    public ColVector apply(double... values) {
+        ColVector output = fast.apply(values);
+        return isConfident(output) ? output : accurate.apply(values);
+    }
+
+    /**
+     * Returns whether the fast model's output would be accepted.
+     *
+     * @param output the output of the fast model
+     * @return whether the cascade would stop at the fast model
+     */
+    public boolean isConfident(ColVector output) {
+        double[] top = topTwo(output);
+        return top[0] >= minScore && top[0] - top[1] >= minMargin;
+    }
+
+    // the top two scores, as the first two results of Network.sort
+    static double[] topTwo(ColVector output) {
+        double first = Double.NEGATIVE_INFINITY;
+        double second = Double.NEGATIVE_INFINITY;
+        for (double v : output.getData()) {
+            if (v > first) {
+                second = first;
+                first = v;
+            } else if (v > second) {
+                second = v;
+            }
+        }
+        // a single output has nothing to beat
+        return new double[] {first, output.numRows() > 1 ? second : 0.0};
+    }
+
+    static int argMax(ColVector output) {
+        double[] data = output.getData();
+        int best = 0;
+        for (int i = 1; i < data.length; i++) {
+            if (data[i] > data[best]) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Estimates the cost of a prediction by the number of weights, including
+     * bias weights.
+     *
+     * @param model the model
+     * @return the number of multiply-adds of a dense prediction
+     */
+    public static long cost(Model model) {
+        List<Integer> sizes = model.getLayerSizes();
+        long cost = 0;
+        for (int l = 0; l + 1 < sizes.size(); l++) {
+            cost += (long) (sizes.get(l) + 1) * sizes.get(l + 1);
+        }
+        return cost;
+    }
+
+    /**
+     * A threshold picked by {@link #tune}, and how the cascade does with it
+     * on the validation examples.
+     */
+    public static final class Tuning {
+        private final double threshold;
+        private final double accuracy;
+        private final double fastFraction;
+        private final double relativeCost;
+
+        Tuning(double threshold, double accuracy, double fastFraction, double relativeCost) {
+            this.threshold = threshold;
+            this.accuracy = accuracy;
+            this.fastFraction = fastFraction;
+            this.relativeCost = relativeCost;
+        }
+
+        /**
+         * Returns the threshold; infinite if every example needs the accurate model.
+         *
+         * @return the minimum score or margin
+         */
+        public double getThreshold() {
+            return threshold;
+        }
+
+        public double getAccuracy() {
+            return accuracy;
+        }
+
+        /**
+         * Returns the fraction of examples answered by the fast model alone.
+         *
+         * @return the fraction, from 0 to 1
+         */
+        public double getFastFraction() {
+            return fastFraction;
+        }
+
+        /**
+         * Returns the average cost of a prediction, relative to the accurate
+         * model alone; see {@link Cascade#cost}.
+         *
+         * @return the relative cost
+         */
+        public double getRelativeCost() {
+            return relativeCost;
+        }
+    }
+
+    /**
+     * Picks a threshold on a validation file. With the returned threshold as
+     * {@code minScore}, or as {@code minMargin} if {@code margin} is true, and
+     * 0 for the other, the cascade answers the most examples with the fast
+     * model (so the average cost is lowest) while its accuracy is at least the
+     * target. If no threshold reaches the target, the one with the best
+     * accuracy is returned.
+     *
+     * @param fast the fast model
+     * @param accurate the accurate model
+     * @param examplesFile the validation examples; see {@link Train} for the format
+     * @param targetAccuracy the lowest acceptable accuracy, from 0 to 1
+     * @param margin whether to tune the margin rather than the top score
+     * @return the threshold and how the cascade does with it
+     * @throws IOException
+     */
+    public static Tuning tune(Model fast, Model accurate, File examplesFile, double targetAccuracy, boolean margin)
+        throws IOException {
+        return tune(fast, accurate, examplesFile, null, targetAccuracy, margin);
+    }
+
+    /**
+     * Picks a threshold on a validation file, for models trained with feature
+     * hashing; see {@link #tune(Model, Model, File, double, boolean)}.
+     *
+     * @param fast the fast model
+     * @param accurate the accurate model
+     * @param examplesFile the validation examples; see {@link FeatureHasher} for the format
+     * @param hasher the feature hasher, or {@code null} for integer features
+     * @param targetAccuracy the lowest acceptable accuracy, from 0 to 1
+     * @param margin whether to tune the margin rather than the top score
+     * @return the threshold and how the cascade does with it
+     * @throws IOException
+     */
+    public static Tuning tune(Model fast, Model accurate, File examplesFile, FeatureHasher hasher,
+        double targetAccuracy, boolean margin) throws IOException {
+        int inputNeurons = accurate.getLayerSizes().get(0);
+        List<double[]> rows = Lists.newArrayList();
+        int lineno = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+            new FileInputStream(examplesFile), Charsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineno++;
+                String[] fields = line.split("\\s+");
+                int label = Integer.parseInt(fields[0]);
+                double[] x = Models.parseFeatures(fields, inputNeurons, lineno, hasher).getData();
+                ColVector fastOutput = fast.apply(x);
+                double[] top = topTwo(fastOutput);
+                rows.add(new double[] {
+                    margin ? top[0] - top[1] : top[0],
+                    argMax(fastOutput) == label ? 1 : 0,
+                    argMax(accurate.apply(x)) == label ? 1 : 0,
+                });
+            }
+        }
+        double[] confidence = new double[rows.size()];
+        boolean[] fastCorrect = new boolean[rows.size()];
+        boolean[] accurateCorrect = new boolean[rows.size()];
+        for (int i = 0; i < rows.size(); i++) {
+            confidence[i] = rows.get(i)[0];
+            fastCorrect[i] = rows.get(i)[1] == 1;
+            accurateCorrect[i] = rows.get(i)[2] == 1;
+        }
+        return tune(confidence, fastCorrect, accurateCorrect, targetAccuracy, cost(fast), cost(accurate));
+    }
+
+    static Tuning tune(final double[] confidence, boolean[] fastCorrect, boolean[] accurateCorrect,
+        double targetAccuracy, long fastCost, long accurateCost) {
+        int n = confidence.length;
+        if (n == 0) {
+            throw new IllegalArgumentException("no validation examples");
+        }
+        // the most confident examples are the first to be left to the fast model
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Collections.reverseOrder(new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Double.compare(confidence[a], confidence[b]);
+            }
+        }));
+        int accurateTotal = 0;
+        for (boolean correct : accurateCorrect) {
+            accurateTotal += correct ? 1 : 0;
+        }
+
+        // k is the number of examples the fast model answers; k = 0 is the accurate model alone
+        int correct = accurateTotal;
+        int bestK = 0;
+        int bestCorrect = correct;
+        boolean bestMeetsTarget = (double) correct / n >= targetAccuracy;
+        for (int k = 1; k <= n; k++) {
+            int i = order[k - 1];
+            correct += (fastCorrect[i] ? 1 : 0) - (accurateCorrect[i] ? 1 : 0);
+            // a threshold can't separate equal confidences
+            if (k < n && confidence[order[k]] == confidence[i]) {
+                continue;
+            }
+            boolean meetsTarget = (double) correct / n >= targetAccuracy;
+            if (meetsTarget || !bestMeetsTarget && correct >= bestCorrect) {
+                bestK = k;
+                bestCorrect = correct;
+                bestMeetsTarget = meetsTarget;
+            }
+        }
+
+        double threshold = bestK == 0 ? Double.POSITIVE_INFINITY : confidence[order[bestK - 1]];
+        double fastFraction = (double) bestK / n;
+        double relativeCost = (fastCost + (1 - fastFraction) * accurateCost) / accurateCost;
+        return new Tuning(threshold, (double) bestCorrect / n, fastFraction, relativeCost);
+    }
+
+    private static void usage(Options options) {
+        HelpFormatter formatter = new HelpFormatter();
+        formatter.setWidth(80);
+        formatter.printHelp("Cascade [options]", options);
+        System.out.println();
+    }
+
+    /**
+     * Command line interface to tune a cascade. Prints the threshold, the
+     * accuracy of each model alone and of the cascade, the fraction of
+     * examples answered by the fast model, and the average cost.
+     *
+     * <pre>
+     *  usage: Cascade [options]
+     *  --accurate <arg>          accurate model file (required)
+     *  --examples <arg>          validation examples file (required)
+     *  --fast <arg>              fast model file (required)
+     *  --margin                  tune the margin between the top two scores instead of the top score
+     *  --target-accuracy <arg>   lowest acceptable accuracy, from 0 to 1 (required)
+     * </pre>
+     *
+     * @param args command line arguments
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+        Options options = new Options();
+        Option option;
+        option = new Option(null, "fast", true, "fast model file (required)");
+        option.setRequired(true);
+        options.addOption(option);
+        option = new Option(null, "accurate", true, "accurate model file (required)");
+        option.setRequired(true);
+        options.addOption(option);
+        option = new Option(null, "examples", true, "validation examples file (required)");
+        option.setRequired(true);
+        options.addOption(option);
+        option = new Option(null, "target-accuracy", true, "lowest acceptable accuracy, from 0 to 1 (required)");
+        option.setRequired(true);
+        options.addOption(option);
+        options.addOption(new Option(null, "margin", false,
+            "tune the margin between the top two scores instead of the top score"));
+
+        CommandLineParser parser = new GnuParser();
+        CommandLine cmdline = null;
+        try {
+            cmdline = parser.parse(options, args);
+        } catch (org.apache.commons.cli.ParseException e) {
+            System.err.println(e.getMessage());
+            usage(options);
+            System.exit(1);
+        }
+
+        File fastFile = new File(cmdline.getOptionValue("fast"));
+        File accurateFile = new File(cmdline.getOptionValue("accurate"));
+        Model fast = Models.load(fastFile);
+        Model accurate = Models.load(accurateFile);
+        FeatureHasher hasher = Models.featureHasher(Arrays.asList(fastFile, accurateFile),
+            accurate.getLayerSizes().get(0));
+        File examplesFile = new File(cmdline.getOptionValue("examples"));
+        double targetAccuracy = Double.parseDouble(cmdline.getOptionValue("target-accuracy"));
+        boolean margin = cmdline.hasOption("margin");
+
+        Tuning tuning = tune(fast, accurate, examplesFile, hasher, targetAccuracy, margin);
+        if (tuning.getAccuracy() < targetAccuracy) {
+            System.out.println(String.format("target accuracy %.4f is not reachable", targetAccuracy));
+        }
+        System.out.println(String.format("%s: %.6f", margin ? "min margin" : "min score", tuning.getThreshold()));
+        System.out.println(String.format("fast accuracy: %.4f", Models.accuracy(fast, examplesFile, hasher)));
+        System.out.println(String.format("accurate accuracy: %.4f",
+            Models.accuracy(accurate, examplesFile, hasher)));
+        System.out.println(String.format("cascade accuracy: %.4f", tuning.getAccuracy()));
+        System.out.println(String.format("answered by fast model: %.4f", tuning.getFastFraction()));
+        System.out.println(String.format("average cost relative to accurate model: %.4f", tuning.getRelativeCost()));
+    }
+}
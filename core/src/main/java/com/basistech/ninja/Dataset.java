@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.ninja;
+
+import com.basistech.ninja.ejml.ColVector;
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.primitives.Ints;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * {@code Dataset} is an examples file parsed into memory. It is never
+ * modified after loading, so it can be shared by threads that train or
+ * evaluate different networks at the same time.
+ */
+public final class Dataset {
+    private final ColVector[] x;
+    private final ColVector[] y;
+    private final int[] labels;
+
+    private Dataset(ColVector[] x, ColVector[] y, int[] labels) {
+        this.x = x;
+        this.y = y;
+        this.labels = labels;
+    }
+
+    /**
+     * Loads an examples file. See {@link Train} for the format.
+     *
+     * @param file the examples file
+     * @param inputNeurons the number of input units
+     * @param outputNeurons the number of output units
+     * @return the dataset
+     * @throws IOException
+     */
+    public static Dataset load(File file, int inputNeurons, int outputNeurons) throws IOException {
+        return load(file, inputNeurons, outputNeurons, null);
+    }
+
+    /**
+     * Loads an examples file, with feature hashing if a hasher is given.
+     *
+     * @param file the examples file
+     * @param inputNeurons the number of input units
+     * @param outputNeurons the number of output units
+     * @param hasher the feature hasher, or {@code null} for integer features
+     * @return the dataset
+     * @throws IOException
+     */
+    public static Dataset load(File file, int inputNeurons, int outputNeurons, FeatureHasher hasher)
+        throws IOException {
+        List<ColVector> inputs = Lists.newArrayList();
+        List<ColVector> outputs = Lists.newArrayList();
+        List<Integer> labels = Lists.newArrayList();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+            new FileInputStream(file), Charsets.UTF_8))) {
+            int lineno = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineno++;
+                String[] fields = line.split("\\s+");
+                int label = Integer.parseInt(fields[0]);
+                if (label < 0 || label >= outputNeurons) {
+                    throw new RuntimeException(
+                        String.format(
+                            "line %d: yval (%d) out of range [0, %d); wrong network architecture?",
+                            lineno,
+                            label,
+                            outputNeurons));
+                }
+                ColVector output = new ColVector(outputNeurons);
+                output.set(label, 1.0);
+                inputs.add(Models.parseFeatures(fields, inputNeurons, lineno, hasher));
+                outputs.add(output);
+                labels.add(label);
+            }
+        }
+        return new Dataset(inputs.toArray(new ColVector[inputs.size()]),
+            outputs.toArray(new ColVector[outputs.size()]), Ints.toArray(labels));
+    }
+
+    /**
+     * Returns the number of examples.
+     *
+     * @return the number of examples
+     */
+    public int size() {
+        return x.length;
+    }
+
+    /**
+     * Trains a network for one epoch, in file order.
+     *
+     * @param net the network
+     * @param batchSize the batch size
+     * @param learningRate the learning rate
+     */
+    public void trainEpoch(Network net, int batchSize, double learningRate) {
+        for (int start = 0; start < x.length; start += batchSize) {
+            int end = Math.min(x.length, start + batchSize);
+            net.trainBatch(Arrays.copyOfRange(x, start, end), Arrays.copyOfRange(y, start, end), learningRate);
+        }
+    }
+
+    /**
+     * Returns the fraction of examples whose label is the highest scoring output.
+     *
+     * @param model the model
+     * @return the accuracy, from 0 to 1
+     */
+    public double accuracy(Model model) {
+        int correct = 0;
+        for (int i = 0; i < x.length; i++) {
+            if (Network.sort(model.apply(x[i].getData())).get(0).getIndex() == labels[i]) {
+                correct++;
+            }
+        }
+        return x.length == 0 ? 0.0 : (double) correct / x.length;
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.ninja;
+
+import com.basistech.ninja.ejml.ColVector;
+import com.google.common.collect.Lists;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * {@code Distillation} makes training targets from the outputs of a larger
+ * teacher model, so that a smaller student network can learn what the teacher
+ * learned (knowledge distillation). The teacher's outputs say more than the
+ * label: how close each example is to the other labels.
+ *
+ * <p>Each output unit is a sigmoid, so the temperature {@code T} scales each
+ * unit's weighted sum {@code z}: the soft target is {@code sigmoid(z / T)},
+ * where {@code z} is recovered from the teacher's output. A temperature above 1
+ * moves the targets towards 0.5, which brings out the smaller differences. The
+ * target is {@code alpha} times the soft target plus {@code 1 - alpha} times
+ * the one-hot label.
+ *
+ * <p>Examples must be given in the same order in every epoch. The teacher is
+ * applied once to each example, the first time it is seen, and its soft
+ * targets are kept, in single precision, for the following epochs. The new
+ * examples of a batch go through the teacher together: a {@link Network} is
+ * frozen, and a {@link FrozenNetwork} applies the whole batch one layer at a
+ * time (see {@link FrozenNetwork#applyBatch}). Other models are applied to one
+ * example at a time.
+ *
+ * <p>The cache is not bounded. It holds one float per output for every example
+ * of the epoch, about {@code 4 * examples * outputs} bytes, so for a large
+ * training set with many labels it may not fit in the heap. For the same
+ * reason {@link Train} doesn't allow a teacher with micro-batches, which are
+ * meant to keep memory bounded.
+ */
+public class Distillation {
+    // keeps the inverse sigmoid finite
+    private static final double EPSILON = 1e-12;
+    private final Model teacher;
+    private final double temperature;
+    private final double alpha;
+    private final List<float[]> cache = Lists.newArrayList();
+
+    /**
+     * Constructs a distillation.
+     *
+     * @param teacher the teacher model
+     * @param temperature the temperature, greater than 0
+     * @param alpha the weight of the soft targets, from 0 to 1
+     */
+    public Distillation(Model teacher, double temperature, double alpha) {
+        if (temperature <= 0) {
+            throw new IllegalArgumentException("temperature must be positive: " + temperature);
+        }
+        if (alpha < 0 || alpha > 1) {
+            throw new IllegalArgumentException("alpha must be from 0 to 1: " + alpha);
+        }
+        this.teacher = teacher instanceof Network ? ((Network) teacher).freeze() : teacher;
+        this.temperature = temperature;
+        this.alpha = alpha;
+    }
+
+    public Model getTeacher() {
+        return teacher;
+    }
+
+    /**
+     * Returns the number of examples whose soft targets are cached.
+     *
+     * @return the number of examples
+     */
+    public int getCacheSize() {
+        return cache.size();
+    }
+
+    /**
+     * Returns the training targets for a batch.
+     *
+     * @param first the position of the first example of the batch in the epoch
+     * @param x the inputs of the batch
+     * @param labels the labels of the batch
+     * @return the targets
+     */
+    public ColVector[] targets(int first, ColVector[] x, int[] labels) {
+        if (first > cache.size()) {
+            throw new IllegalStateException(
+                String.format("examples %d to %d have not been seen", cache.size(), first - 1));
+        }
+        int known = Math.min(x.length, cache.size() - first);
+        if (known < x.length) {
+            ColVector[] outputs = applyTeacher(Arrays.copyOfRange(x, known, x.length));
+            for (ColVector output : outputs) {
+                cache.add(soften(output.getData(), temperature));
+            }
+        }
+        ColVector[] y = new ColVector[x.length];
+        for (int i = 0; i < x.length; i++) {
+            float[] soft = cache.get(first + i);
+            y[i] = new ColVector(soft.length);
+            for (int j = 0; j < soft.length; j++) {
+                y[i].set(j, alpha * soft[j] + (j == labels[i] ? 1 - alpha : 0));
+            }
+        }
+        return y;
+    }
+
+    private ColVector[] applyTeacher(ColVector[] x) {
+        if (teacher instanceof FrozenNetwork) {
+            double[][] inputs = new double[x.length][];
+            for (int i = 0; i < x.length; i++) {
+                inputs[i] = x[i].getData();
+            }
+            return ((FrozenNetwork) teacher).applyBatch(inputs);
+        }
+        ColVector[] outputs = new ColVector[x.length];
+        for (int i = 0; i < x.length; i++) {
+            outputs[i] = teacher.apply(x[i].getData());
+        }
+        return outputs;
+    }
+
+    static float[] soften(double[] outputs, double temperature) {
+        float[] soft = new float[outputs.length];
+        for (int j = 0; j < outputs.length; j++) {
+            double a = Math.min(Math.max(outputs[j], EPSILON), 1 - EPSILON);
+            double z = Math.log(a / (1 - a));
+            soft[j] = (float) (1.0 / (1 + Math.exp(-z / temperature)));
+        }
+        return soft;
+    }
+}
@@ -0,0 +1,352 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.ninja;
+
+import com.basistech.ninja.ejml.ColVector;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * {@code Ensemble} averages the outputs of several networks with the same
+ * layer sizes, for prediction, at less cost than applying each one. The
+ * members' weights are stacked: the first layers of all members form one wide
+ * matrix, which is stored by column, so that a single pass over the shared
+ * input adds each input value times its column to the sums of every member.
+ * Inputs that are zero, as most sparse features are, are skipped, and the
+ * inner loop is a simple scaled addition over contiguous memory, which the JIT
+ * can vectorize. Each deeper layer is block diagonal, with each member's block
+ * reading only that member's part of the previous layer, and is computed like
+ * {@link FrozenNetwork}. The outputs are averaged at the end. Instances are
+ * immutable and may be shared by any number of threads.
+ *
+ * <p>The ensemble model format is little-endian:
+ * <pre>
+ *  int      magic (0x4E4A4531, "NJE1")
+ *  int      number of members
+ *  int      number of layers
+ *  int[]    layer sizes of each member, not including bias units
+ *  for each layer:
+ *   double[] bias weights of each member in turn
+ *   double[] weights without the bias column: for the first layer, column by
+ *            column, each column holding the rows of each member in turn; for
+ *            later layers, the row-major weights of each member in turn
+ * </pre>
+ */
+public class Ensemble implements Model {
+    static final int MAGIC = 0x4E4A4531;
+    private final int members;
+    private final List<Integer> layerSizes;
+    // for each layer, the rows of all members, member by member; the first layer is column-major
+    private final double[][] weights;
+    private final double[][] bias;
+
+    /**
+     * Constructs an ensemble. The weights are copied.
+     *
+     * @param nets the members, which must all have the same layer sizes
+     */
+    public Ensemble(List<? extends Network> nets) {
+        if (nets.isEmpty()) {
+            throw new IllegalArgumentException("an ensemble needs at least one member");
+        }
+        members = nets.size();
+        layerSizes = ImmutableList.copyOf(nets.get(0).getLayerSizes());
+        weights = new double[layerSizes.size() - 1][];
+        bias = new double[layerSizes.size() - 1][];
+        for (int l = 0; l < weights.length; l++) {
+            int rows = layerSizes.get(l + 1);
+            int cols = layerSizes.get(l);
+            weights[l] = new double[members * rows * cols];
+            bias[l] = new double[members * rows];
+        }
+        for (int m = 0; m < members; m++) {
+            Network net = nets.get(m);
+            if (!layerSizes.equals(net.getLayerSizes())) {
+                throw new IllegalArgumentException(
+                    String.format("member %d has layer sizes %s, not %s", m, net.getLayerSizes(), layerSizes));
+            }
+            for (int l = 0; l < weights.length; l++) {
+                double[] data = net.weights(l).getData();
+                int rows = layerSizes.get(l + 1);
+                int cols = layerSizes.get(l);
+                for (int i = 0; i < rows; i++) {
+                    int row = m * rows + i;
+                    bias[l][row] = data[i * (cols + 1)];
+                    if (l == 0) {
+                        for (int j = 0; j < cols; j++) {
+                            weights[l][j * members * rows + row] = data[i * (cols + 1) + 1 + j];
+                        }
+                    } else {
+                        System.arraycopy(data, i * (cols + 1) + 1, weights[l], row * cols, cols);
+                    }
+                }
+            }
+        }
+    }
+
+    private Ensemble(int members, List<Integer> layerSizes, double[][] weights, double[][] bias) {
+        this.members = members;
+        this.layerSizes = layerSizes;
+        this.weights = weights;
+        this.bias = bias;
+    }
+
+    public int getNumMembers() {
+        return members;
+    }
+
+    /**
+     * Returns the layer sizes of each member.
+     *
+     * @return the layer sizes
+     */
+    @Override
+    public List<Integer> getLayerSizes() {
+        return layerSizes;
+    }
+
+    /**
+     * Applies the input to every member and averages their outputs. Safe to
+     * call from multiple threads.
+     *
+     * @param values the input values
+     * @return the average output
+     */
+    @Override
+    public ColVector apply(double... values) {
+        if (values.length != layerSizes.get(0)) {
+            throw new IllegalArgumentException(
+                String.format("expected %d input values, got %d", layerSizes.get(0), values.length));
+        }
+        // one wide matrix-vector product over the shared input
+        double[] w = weights[0];
+        double[] a = bias[0].clone();
+        int width = a.length;
+        int[] nonZero = new int[values.length];
+        int n = 0;
+        for (int j = 0; j < values.length; j++) {
+            if (values[j] != 0.0) {
+                nonZero[n++] = j;
+            }
+        }
+        // four columns at a time, so each sum is loaded and stored once for four inputs
+        int k = 0;
+        for (; k + 3 < n; k += 4) {
+            double v0 = values[nonZero[k]];
+            double v1 = values[nonZero[k + 1]];
+            double v2 = values[nonZero[k + 2]];
+            double v3 = values[nonZero[k + 3]];
+            int o0 = nonZero[k] * width;
+            int o1 = nonZero[k + 1] * width;
+            int o2 = nonZero[k + 2] * width;
+            int o3 = nonZero[k + 3] * width;
+            for (int i = 0; i < width; i++) {
+                a[i] += w[o0 + i] * v0 + w[o1 + i] * v1 + w[o2 + i] * v2 + w[o3 + i] * v3;
+            }
+        }
+        for (; k < n; k++) {
+            double v = values[nonZero[k]];
+            int offset = nonZero[k] * width;
+            for (int i = 0; i < width; i++) {
+                a[i] += w[offset + i] * v;
+            }
+        }
+        for (int i = 0; i < width; i++) {
+            a[i] = sigmoid(a[i]);
+        }
+        for (int l = 1; l < weights.length; l++) {
+            int rows = layerSizes.get(l + 1);
+            int cols = layerSizes.get(l);
+            double[] next = new double[members * rows];
+            for (int m = 0; m < members; m++) {
+                rows(l, a, m * cols, next, m * rows, (m + 1) * rows);
+            }
+            a = next;
+        }
+        int outputs = layerSizes.get(layerSizes.size() - 1);
+        double[] average = new double[outputs];
+        for (int m = 0; m < members; m++) {
+            for (int j = 0; j < outputs; j++) {
+                average[j] += a[m * outputs + j];
+            }
+        }
+        for (int j = 0; j < outputs; j++) {
+            average[j] /= members;
+        }
+        return new ColVector(average);
+    }
+
+    // out[i] = sigmoid(bias + row i . in[inOffset...]) for rows [from, to), four at a time like FrozenNetwork
+    private void rows(int l, double[] in, int inOffset, double[] out, int from, int to) {
+        double[] w = weights[l];
+        double[] b = bias[l];
+        int cols = layerSizes.get(l);
+        int i = from;
+        for (; i + 3 < to; i += 4) {
+            int o0 = i * cols;
+            int o1 = o0 + cols;
+            int o2 = o1 + cols;
+            int o3 = o2 + cols;
+            double s0 = b[i];
+            double s1 = b[i + 1];
+            double s2 = b[i + 2];
+            double s3 = b[i + 3];
+            for (int j = 0; j < cols; j++) {
+                double v = in[inOffset + j];
+                s0 += w[o0 + j] * v;
+                s1 += w[o1 + j] * v;
+                s2 += w[o2 + j] * v;
+                s3 += w[o3 + j] * v;
+            }
+            out[i] = sigmoid(s0);
+            out[i + 1] = sigmoid(s1);
+            out[i + 2] = sigmoid(s2);
+            out[i + 3] = sigmoid(s3);
+        }
+        for (; i < to; i++) {
+            int offset = i * cols;
+            double sum = b[i];
+            for (int j = 0; j < cols; j++) {
+                sum += w[offset + j] * in[inOffset + j];
+            }
+            out[i] = sigmoid(sum);
+        }
+    }
+
+    private static double sigmoid(double x) {
+        return 1.0 / (1 + Math.exp(-x));
+    }
+
+    /**
+     * Loads a model in the ensemble model format.
+     *
+     * @param file the model file
+     * @return a new ensemble instance
+     * @throws IOException
+     */
+    public static Ensemble load(File file) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            if (in.getInt() != MAGIC) {
+                throw new IOException(file + ": not an ensemble model file");
+            }
+            int members = in.getInt();
+            int numLayers = in.getInt();
+            List<Integer> layerSizes = Lists.newArrayList();
+            for (int l = 0; l < numLayers; l++) {
+                layerSizes.add(in.getInt());
+            }
+            double[][] weights = new double[numLayers - 1][];
+            double[][] bias = new double[numLayers - 1][];
+            for (int l = 0; l < numLayers - 1; l++) {
+                int rows = layerSizes.get(l + 1);
+                bias[l] = new double[members * rows];
+                weights[l] = new double[members * rows * layerSizes.get(l)];
+                in.asDoubleBuffer().get(bias[l]);
+                in.position(in.position() + 8 * bias[l].length);
+                in.asDoubleBuffer().get(weights[l]);
+                in.position(in.position() + 8 * weights[l].length);
+            }
+            return new Ensemble(members, ImmutableList.copyOf(layerSizes), weights, bias);
+        } catch (BufferUnderflowException e) {
+            throw new IOException(file + ": truncated ensemble model file", e);
+        }
+    }
+
+    /**
+     * Writes the ensemble in the ensemble model format.
+     *
+     * @param file the output file
+     * @throws IOException
+     */
+    public void write(File file) throws IOException {
+        int size = 4 * (3 + layerSizes.size());
+        for (int l = 0; l < weights.length; l++) {
+            size += 8 * (bias[l].length + weights[l].length);
+        }
+        ByteBuffer out = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(MAGIC);
+        out.putInt(members);
+        out.putInt(layerSizes.size());
+        for (int layerSize : layerSizes) {
+            out.putInt(layerSize);
+        }
+        for (int l = 0; l < weights.length; l++) {
+            out.asDoubleBuffer().put(bias[l]);
+            out.position(out.position() + 8 * bias[l].length);
+            out.asDoubleBuffer().put(weights[l]);
+            out.position(out.position() + 8 * weights[l].length);
+        }
+        Files.write(file.toPath(), out.array());
+    }
+
+    /**
+     * Command line interface to combine text models into an ensemble model.
+     * Reports the accuracy of each member and of the ensemble if a test file
+     * is given.
+     *
+     * <pre>
+     *  Usage: Ensemble [--test examples] ensemble-model model model [model ...]
+     * </pre>
+     *
+     * @param args command line arguments
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+        String usage = "Usage: Ensemble [--test examples] ensemble-model model model [model ...]";
+        int first = 0;
+        File testFile = null;
+        if (args.length > 1 && args[0].equals("--test")) {
+            testFile = new File(args[1]);
+            first = 2;
+        }
+        if (args.length - first < 3) {
+            System.err.println(usage);
+            System.exit(1);
+        }
+        List<File> modelFiles = Lists.newArrayList();
+        List<Network> nets = Lists.newArrayList();
+        for (int i = first + 1; i < args.length; i++) {
+            modelFiles.add(new File(args[i]));
+            nets.add(Network.loadModel(new File(args[i])));
+        }
+        FeatureHasher hasher = Models.featureHasher(modelFiles, nets.get(0).getNumUnits(0));
+        Ensemble ensemble = new Ensemble(nets);
+        File ensembleFile = new File(args[first]);
+        ensemble.write(ensembleFile);
+        FeatureHasher.copyMode(modelFiles.get(0), ensembleFile);
+        if (testFile != null) {
+            for (int i = 0; i < nets.size(); i++) {
+                System.out.println(String.format("%s: accuracy %.4f", args[first + 1 + i],
+                    Models.accuracy(nets.get(i), testFile, hasher)));
+            }
+            System.out.println(String.format("ensemble: accuracy %.4f",
+                Models.accuracy(ensemble, testFile, hasher)));
+        }
+    }
+}
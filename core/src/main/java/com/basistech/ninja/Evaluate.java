@@ -0,0 +1,252 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.ninja;
+
+import com.basistech.ninja.ejml.ColVector;
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.GnuParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code Evaluate} measures a model on a labeled examples file. One thread
+ * reads the file in chunks of lines; worker threads parse them, apply the
+ * model, and add the results to their own {@link Evaluation}, which are merged
+ * at the end. Only a few chunks are queued at a time, so memory use doesn't
+ * depend on the size of the file.
+ */
+public final class Evaluate {
+    private static final int CHUNK_LINES = 256;
+    private static final int CHUNKS_PER_THREAD = 4;
+    // an empty chunk tells a worker that there are no more lines
+    private static final Chunk END = new Chunk(0, Collections.<String>emptyList());
+
+    private Evaluate() {
+        // empty
+    }
+
+    private static final class Chunk {
+        final int firstLine;
+        final List<String> lines;
+
+        Chunk(int firstLine, List<String> lines) {
+            this.firstLine = firstLine;
+            this.lines = lines;
+        }
+    }
+
+    /**
+     * Evaluates a model on an examples file. See {@link Train} for the format.
+     *
+     * @param model the model; it must be safe to apply from multiple threads
+     * @param examplesFile the examples file
+     * @param threads the number of worker threads
+     * @param topK the k in top-k accuracy
+     * @return the evaluation
+     * @throws IOException
+     * @throws InterruptedException
+     * @throws ExecutionException
+     */
+    public static Evaluation evaluate(Model model, File examplesFile, int threads, int topK)
+        throws IOException, InterruptedException, ExecutionException {
+        return evaluate(model, examplesFile, threads, topK, null);
+    }
+
+    /**
+     * Evaluates a model on an examples file with hashed features.
+     *
+     * @param model the model; it must be safe to apply from multiple threads
+     * @param examplesFile the examples file
+     * @param threads the number of worker threads
+     * @param topK the k in top-k accuracy
+     * @param hasher the feature hasher, or {@code null} for integer features
+     * @return the evaluation
+     * @throws IOException
+     * @throws InterruptedException
+     * @throws ExecutionException
+     */
+    public static Evaluation evaluate(final Model model, File examplesFile, int threads, final int topK,
+        final FeatureHasher hasher) throws IOException, InterruptedException, ExecutionException {
+        final List<Integer> layerSizes = model.getLayerSizes();
+        final int inputNeurons = layerSizes.get(0);
+        final int outputNeurons = layerSizes.get(layerSizes.size() - 1);
+        final BlockingQueue<Chunk> queue = new ArrayBlockingQueue<>(threads * CHUNKS_PER_THREAD);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads,
+            new ThreadFactoryBuilder().setNameFormat("evaluate-%d").setDaemon(true).build());
+        try {
+            List<Future<Evaluation>> futures = Lists.newArrayList();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(new Callable<Evaluation>() {
+                    @Override
+                    public Evaluation call() throws InterruptedException {
+                        Evaluation evaluation = new Evaluation(outputNeurons, topK);
+                        for (Chunk chunk = queue.take(); chunk != END; chunk = queue.take()) {
+                            int lineno = chunk.firstLine;
+                            for (String line : chunk.lines) {
+                                String[] fields = line.split("\\s+");
+                                int label = Integer.parseInt(fields[0]);
+                                if (label < 0 || label >= outputNeurons) {
+                                    throw new RuntimeException(
+                                        String.format(
+                                            "line %d: yval (%d) out of range [0, %d); wrong network architecture?",
+                                            lineno,
+                                            label,
+                                            outputNeurons));
+                                }
+                                ColVector x = Models.parseFeatures(fields, inputNeurons, lineno, hasher);
+                                evaluation.add(label, model.apply(x.getData()));
+                                lineno++;
+                            }
+                        }
+                        return evaluation;
+                    }
+                }));
+            }
+
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(examplesFile), Charsets.UTF_8))) {
+                int lineno = 0;
+                List<String> lines = Lists.newArrayListWithCapacity(CHUNK_LINES);
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    lines.add(line);
+                    if (lines.size() == CHUNK_LINES) {
+                        put(queue, new Chunk(lineno + 1, lines), futures);
+                        lineno += lines.size();
+                        lines = Lists.newArrayListWithCapacity(CHUNK_LINES);
+                    }
+                }
+                if (!lines.isEmpty()) {
+                    put(queue, new Chunk(lineno + 1, lines), futures);
+                }
+            }
+            for (int t = 0; t < threads; t++) {
+                put(queue, END, futures);
+            }
+
+            Evaluation total = new Evaluation(outputNeurons, topK);
+            for (Future<Evaluation> future : futures) {
+                total.merge(future.get());
+            }
+            return total;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // waits for room in the queue, but gives up if a worker has failed, since then nothing may take from it
+    private static void put(BlockingQueue<Chunk> queue, Chunk chunk, List<Future<Evaluation>> futures)
+        throws InterruptedException, ExecutionException {
+        while (!queue.offer(chunk, 100, TimeUnit.MILLISECONDS)) {
+            for (Future<Evaluation> future : futures) {
+                if (future.isDone()) {
+                    future.get();
+                }
+            }
+        }
+    }
+
+    private static void usage(Options options) {
+        HelpFormatter formatter = new HelpFormatter();
+        formatter.setWidth(80);
+        formatter.printHelp("Evaluate [options]", options);
+        System.out.println();
+    }
+
+    /**
+     * Command line interface to evaluate a model. Prints the accuracy, top-k
+     * accuracy, precision and recall of each class, and the confusion matrix.
+     * Any kind of model that {@link Models#load} reads may be used. Features
+     * are hashed as recorded when the model was trained; see
+     * {@link Models#featureHasher}.
+     *
+     * <pre>
+     *  usage: Evaluate [options]
+     *  --examples <arg>          input examples file (required)
+     *  --feature-hashing <arg>   hash feature keys into the input layer: unsigned or signed
+     *  --model <arg>             model file (required)
+     *  --threads <arg>           number of threads (default = processors)
+     *  --top-k <arg>             k for top-k accuracy (default = 5)
+     * </pre>
+     *
+     * @param args command line arguments
+     * @throws IOException
+     * @throws InterruptedException
+     * @throws ExecutionException
+     */
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+        String defaultTopK = "5";
+        String defaultThreads = String.valueOf(Runtime.getRuntime().availableProcessors());
+
+        Options options = new Options();
+        Option option;
+        option = new Option(null, "model", true, "model file (required)");
+        option.setRequired(true);
+        options.addOption(option);
+        option = new Option(null, "examples", true, "input examples file (required)");
+        option.setRequired(true);
+        options.addOption(option);
+        options.addOption(new Option(null, "threads", true, "number of threads (default = processors)"));
+        options.addOption(new Option(null, "feature-hashing", true,
+            "hash feature keys into the input layer: unsigned or signed"));
+        options.addOption(new Option(null, "top-k", true,
+            String.format("k for top-k accuracy (default = %s)", defaultTopK)));
+
+        CommandLineParser parser = new GnuParser();
+        CommandLine cmdline = null;
+        try {
+            cmdline = parser.parse(options, args);
+        } catch (org.apache.commons.cli.ParseException e) {
+            System.err.println(e.getMessage());
+            usage(options);
+            System.exit(1);
+        }
+
+        File modelFile = new File(cmdline.getOptionValue("model"));
+        Model model = Models.load(modelFile);
+        int threads = Integer.parseInt(cmdline.getOptionValue("threads", defaultThreads));
+        int topK = Integer.parseInt(cmdline.getOptionValue("top-k", defaultTopK));
+        FeatureHasher hasher = Models.featureHasher(modelFile, model.getLayerSizes().get(0),
+            cmdline.getOptionValue("feature-hashing"));
+        evaluate(model, new File(cmdline.getOptionValue("examples")), threads, topK, hasher).print(System.out);
+    }
+}
@@ -0,0 +1,299 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.ninja;
+
+import com.basistech.ninja.ejml.ColVector;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.primitives.Longs;
+
+import java.io.PrintStream;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@code Evaluation} accumulates classification results: accuracy, top-k
+ * accuracy, per-class precision and recall, and a confusion matrix. The
+ * per-class counts take a few longs per class, and the confusion matrix keeps
+ * only the (label, prediction) pairs that occur as mistakes, so models with
+ * tens of thousands of classes can be evaluated. It is not thread safe; give
+ * each thread its own instance and {@link #merge} them at the end.
+ *
+ * <p>At most {@value #MAX_TRACKED_MISTAKES} distinct mistakes are counted, so
+ * memory doesn't grow with the square of the number of classes. Beyond that,
+ * the mistakes are a Space-Saving sketch: a new mistake replaces the least
+ * frequent one and starts from its count. Every mistake that is more than
+ * {@code 1 / }{@value #MAX_TRACKED_MISTAKES} of all of the mistakes is still
+ * counted, but its count may be too high, and the rarer ones may be missing.
+ * With up to {@value #MAX_MATRIX_CLASSES} classes every pair fits, and the
+ * counts are exact.
+ */
+public class Evaluation {
+    // up to this many classes, print shows the whole confusion matrix; beyond, the most frequent mistakes
+    private static final int MAX_MATRIX_CLASSES = 20;
+    private static final int MAX_PRINTED_MISTAKES = 20;
+    private static final int MAX_TRACKED_MISTAKES = 1000;
+    private final int numClasses;
+    private final int topK;
+    // per class: examples predicted correctly, predictions of the class, and examples of the class
+    private final long[] correct;
+    private final long[] predicted;
+    private final long[] support;
+    // counts of the mistakes, keyed by label * numClasses + prediction
+    private final Map<Long, long[]> mistakes = Maps.newHashMap();
+    // whether a mistake has been replaced, so that the counts are estimates
+    private boolean approximate;
+    private long topKCorrect;
+    private long total;
+
+    /**
+     * Constructs an empty evaluation.
+     *
+     * @param numClasses the number of classes (output units)
+     * @param topK the k in top-k accuracy
+     */
+    public Evaluation(int numClasses, int topK) {
+        this.numClasses = numClasses;
+        this.topK = topK;
+        correct = new long[numClasses];
+        predicted = new long[numClasses];
+        support = new long[numClasses];
+    }
+
+    /**
+     * Adds the result for one example.
+     *
+     * @param label the correct class
+     * @param scores the model output
+     */
+    public void add(int label, ColVector scores) {
+        double[] values = scores.getData();
+        double labelScore = values[label];
+        int prediction = 0;
+        // the label is in the top k if fewer than k classes score higher
+        int higher = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] > values[prediction]) {
+                prediction = i;
+            }
+            if (values[i] > labelScore) {
+                higher++;
+            }
+        }
+        add(label, prediction, 1);
+        if (higher < topK) {
+            topKCorrect++;
+        }
+        total++;
+    }
+
+    private void add(int label, int prediction, long count) {
+        support[label] += count;
+        predicted[prediction] += count;
+        if (label == prediction) {
+            correct[label] += count;
+        } else {
+            addMistake((long) label * numClasses + prediction, count);
+        }
+    }
+
+    private void addMistake(long key, long count) {
+        long[] n = mistakes.get(key);
+        if (n == null) {
+            n = new long[1];
+            if (mistakes.size() == MAX_TRACKED_MISTAKES) {
+                // replace the least frequent mistake, whose count the new one may have had
+                Map.Entry<Long, long[]> least = null;
+                for (Map.Entry<Long, long[]> entry : mistakes.entrySet()) {
+                    if (least == null || entry.getValue()[0] < least.getValue()[0]) {
+                        least = entry;
+                    }
+                }
+                mistakes.remove(least.getKey());
+                n[0] = least.getValue()[0];
+                approximate = true;
+            }
+            mistakes.put(key, n);
+        }
+        n[0] += count;
+    }
+
+    /**
+     * Adds the results accumulated by another evaluation.
+     *
+     * @param other the other evaluation, with the same number of classes and k
+     */
+    public void merge(Evaluation other) {
+        if (other.numClasses != numClasses || other.topK != topK) {
+            throw new IllegalArgumentException("evaluations have different classes or k");
+        }
+        for (int c = 0; c < numClasses; c++) {
+            correct[c] += other.correct[c];
+            predicted[c] += other.predicted[c];
+            support[c] += other.support[c];
+        }
+        for (Map.Entry<Long, long[]> entry : other.mistakes.entrySet()) {
+            addMistake(entry.getKey(), entry.getValue()[0]);
+        }
+        approximate |= other.approximate;
+        topKCorrect += other.topKCorrect;
+        total += other.total;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * Returns the number of examples with the given label and prediction.
+     * For a mistake, this is an estimate if more than
+     * {@value #MAX_TRACKED_MISTAKES} distinct mistakes have been seen; see
+     * {@link #isApproximate}.
+     *
+     * @param label the correct class
+     * @param prediction the predicted class
+     * @return the count
+     */
+    public long getCount(int label, int prediction) {
+        if (label == prediction) {
+            return correct[label];
+        }
+        long[] n = mistakes.get((long) label * numClasses + prediction);
+        return n == null ? 0 : n[0];
+    }
+
+    /**
+     * Returns whether the counts of the mistakes are estimates, because there
+     * were too many distinct mistakes to count them all.
+     *
+     * @return {@code true} if the counts of the mistakes are estimates
+     */
+    public boolean isApproximate() {
+        return approximate;
+    }
+
+    public double getAccuracy() {
+        long sum = 0;
+        for (int c = 0; c < numClasses; c++) {
+            sum += correct[c];
+        }
+        return ratio(sum, total);
+    }
+
+    public double getTopKAccuracy() {
+        return ratio(topKCorrect, total);
+    }
+
+    /**
+     * Returns the fraction of predictions of a class that are correct.
+     *
+     * @param c the class
+     * @return the precision, or 0 if the class was never predicted
+     */
+    public double getPrecision(int c) {
+        return ratio(correct[c], predicted[c]);
+    }
+
+    /**
+     * Returns the fraction of examples of a class that are predicted correctly.
+     *
+     * @param c the class
+     * @return the recall, or 0 if there are no examples of the class
+     */
+    public double getRecall(int c) {
+        return ratio(correct[c], support[c]);
+    }
+
+    /**
+     * Returns the number of examples of a class.
+     *
+     * @param c the class
+     * @return the number of examples
+     */
+    public long getSupport(int c) {
+        return support[c];
+    }
+
+    private static double ratio(long numerator, long denominator) {
+        return denominator == 0 ? 0.0 : (double) numerator / denominator;
+    }
+
+    /**
+     * Prints a report of all of the measures. With many classes, only the
+     * most frequent mistakes of the confusion matrix are printed.
+     *
+     * @param out the output stream
+     */
+    public void print(PrintStream out) {
+        out.println(String.format("examples: %d", total));
+        out.println(String.format("accuracy: %.4f", getAccuracy()));
+        out.println(String.format("top-%d accuracy: %.4f", topK, getTopKAccuracy()));
+        out.println();
+        out.println("class\tprecision\trecall\tsupport");
+        for (int c = 0; c < numClasses; c++) {
+            out.println(String.format("%d\t%.4f\t%.4f\t%d", c, getPrecision(c), getRecall(c), getSupport(c)));
+        }
+        out.println();
+        if (numClasses <= MAX_MATRIX_CLASSES) {
+            printMatrix(out);
+        } else {
+            printMistakes(out);
+        }
+    }
+
+    private void printMatrix(PrintStream out) {
+        out.println("confusion matrix (rows are labels, columns are predictions)");
+        StringBuilder header = new StringBuilder();
+        for (int j = 0; j < numClasses; j++) {
+            header.append('\t').append(j);
+        }
+        out.println(header);
+        for (int i = 0; i < numClasses; i++) {
+            StringBuilder row = new StringBuilder().append(i);
+            for (int j = 0; j < numClasses; j++) {
+                row.append('\t').append(getCount(i, j));
+            }
+            out.println(row);
+        }
+    }
+
+    private void printMistakes(PrintStream out) {
+        List<Map.Entry<Long, long[]>> entries = Lists.newArrayList(mistakes.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<Long, long[]>>() {
+            @Override
+            public int compare(Map.Entry<Long, long[]> a, Map.Entry<Long, long[]> b) {
+                int byCount = Longs.compare(b.getValue()[0], a.getValue()[0]);
+                return byCount != 0 ? byCount : Longs.compare(a.getKey(), b.getKey());
+            }
+        });
+        if (approximate) {
+            out.println(String.format("most frequent mistakes (estimated; over %d distinct)", MAX_TRACKED_MISTAKES));
+        } else {
+            out.println(String.format("most frequent mistakes (%d distinct)", entries.size()));
+        }
+        out.println("label\tprediction\tcount");
+        for (Map.Entry<Long, long[]> entry : entries.subList(0, Math.min(MAX_PRINTED_MISTAKES, entries.size()))) {
+            long key = entry.getKey();
+            out.println(String.format("%d\t%d\t%d", key / numClasses, key % numClasses, entry.getValue()[0]));
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.ninja;
+
+import com.basistech.ninja.ejml.ColVector;
+import com.google.common.base.Charsets;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * {@code FeatureHasher} maps features with arbitrary keys onto a fixed number
+ * of input units (the "hashing trick"), so that examples don't need a
+ * dictionary of features, and the input layer stays the same size however many
+ * distinct features there are. Features are of the form {@code key:value},
+ * where the key is any string without spaces; a feature without a value, e.g.
+ * {@code word=ninja}, has the value 1. The values of features that hash to the
+ * same unit are added.
+ *
+ * <p>With signed hashing, another bit of the hash decides whether the value is
+ * added or subtracted, so collisions cancel out on average instead of always
+ * adding up.
+ *
+ * <p>The same kind of hashing must be used for training and prediction, so
+ * the tools that train a model ({@link Train}, {@link Sweep} and
+ * {@link MultiTaskNetwork}) record it in a file beside the model, named after
+ * the model file with {@code .hashing} appended, and the tools that convert a
+ * model copy it; see {@link #writeMode} and {@link Models#featureHasher}.
+ */
+public class FeatureHasher {
+    public static final String UNSIGNED = "unsigned";
+    public static final String SIGNED = "signed";
+    private static final HashFunction HASH = Hashing.murmur3_32();
+    private static final String SUFFIX = ".hashing";
+    private final int buckets;
+    private final boolean signed;
+
+    /**
+     * Constructs a hasher.
+     *
+     * @param buckets the number of input units
+     * @param signed whether to use signed hashing
+     */
+    public FeatureHasher(int buckets, boolean signed) {
+        if (buckets <= 0) {
+            throw new IllegalArgumentException("buckets must be positive: " + buckets);
+        }
+        this.buckets = buckets;
+        this.signed = signed;
+    }
+
+    /**
+     * Constructs a hasher from a command line mode.
+     *
+     * @param mode {@link #UNSIGNED} or {@link #SIGNED}
+     * @param buckets the number of input units
+     * @return the hasher
+     */
+    public static FeatureHasher forMode(String mode, int buckets) {
+        if (UNSIGNED.equals(mode)) {
+            return new FeatureHasher(buckets, false);
+        }
+        if (SIGNED.equals(mode)) {
+            return new FeatureHasher(buckets, true);
+        }
+        throw new IllegalArgumentException("unknown feature hashing: " + mode);
+    }
+
+    public int getBuckets() {
+        return buckets;
+    }
+
+    public boolean isSigned() {
+        return signed;
+    }
+
+    /**
+     * Returns the command line mode of this hasher.
+     *
+     * @return {@link #UNSIGNED} or {@link #SIGNED}
+     */
+    public String getMode() {
+        return signed ? SIGNED : UNSIGNED;
+    }
+
+    private static File modeFile(File modelFile) {
+        return new File(modelFile.getPath() + SUFFIX);
+    }
+
+    /**
+     * Returns the hashing mode recorded for a model file.
+     *
+     * @param modelFile the model file
+     * @return the mode, or {@code null} if the model was trained without hashing
+     * @throws IOException
+     */
+    public static String readMode(File modelFile) throws IOException {
+        File file = modeFile(modelFile);
+        return file.exists() ? Files.toString(file, Charsets.UTF_8).trim() : null;
+    }
+
+    /**
+     * Records the hashing mode of a model file, replacing any earlier record.
+     *
+     * @param mode the mode, or {@code null} for a model trained without hashing
+     * @param modelFile the model file
+     * @throws IOException
+     */
+    public static void writeMode(String mode, File modelFile) throws IOException {
+        File file = modeFile(modelFile);
+        if (mode != null) {
+            Files.write(mode + "\n", file, Charsets.UTF_8);
+        } else if (file.exists() && !file.delete()) {
+            throw new IOException("Can't delete " + file);
+        }
+    }
+
+    /**
+     * Records the hashing mode of a model file for a model converted from it.
+     *
+     * @param modelFile the original model file
+     * @param convertedFile the converted model file
+     * @throws IOException
+     */
+    public static void copyMode(File modelFile, File convertedFile) throws IOException {
+        writeMode(readMode(modelFile), convertedFile);
+    }
+
+    /**
+     * Parses and hashes the features of an example.
+     *
+     * @param fields the fields of the example line; the label is skipped
+     * @return the input vector, with one value per bucket
+     */
+    public ColVector parseFeatures(String[] fields) {
+        ColVector x = new ColVector(buckets);
+        for (int i = 1; i < fields.length; i++) {
+            String field = fields[i];
+            // keys may contain ':', values can't
+            int colon = field.lastIndexOf(':');
+            String key = colon < 0 ? field : field.substring(0, colon);
+            double value = colon < 0 ? 1.0 : Double.parseDouble(field.substring(colon + 1));
+            add(x, key, value);
+        }
+        return x;
+    }
+
+    /**
+     * Adds the value of one feature to an input vector.
+     *
+     * @param x the input vector
+     * @param key the feature key
+     * @param value the feature value
+     */
+    public void add(ColVector x, String key, double value) {
+        int hash = HASH.hashString(key, Charsets.UTF_8).asInt();
+        // the index ignores the sign bit, which picks the sign
+        int index = (hash & Integer.MAX_VALUE) % buckets;
+        double signedValue = signed && hash < 0 ? -value : value;
+        x.set(index, x.get(index) + signedValue);
+    }
+}
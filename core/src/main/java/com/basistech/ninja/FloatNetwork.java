@@ -0,0 +1,382 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.ninja;
+
+import com.basistech.ninja.ejml.ColVector;
+import com.basistech.ninja.ejml.NinjaMatrix;
+import com.google.common.collect.Lists;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * {@code FloatNetwork} is a single precision (float32) version of
+ * {@link Network}. Weights and activations are floats, which halves the model
+ * size and the memory bandwidth of every matrix-vector product. Prediction
+ * is done entirely in single precision. Training is mixed precision: the
+ * forward pass sums its products in double precision, the gradient is
+ * accumulated over the batch in double precision, and each weight keeps the
+ * rounding error of its last update in a float of its own, which is added to
+ * the next update (compensated summation). An update smaller than half a unit
+ * in the last place of a weight is carried over instead of being lost.
+ *
+ * <p>The float model format is little-endian:
+ * <pre>
+ *  int     magic (0x4E4A4631, "NJF1")
+ *  int     number of layers
+ *  int[]   layer sizes, not including bias units
+ *  float[] row-major weight matrix for each layer, bias column first
+ * </pre>
+ */
+public class FloatNetwork implements Model {
+    static final int MAGIC = 0x4E4A4631;
+    private final List<Integer> layerSizes;
+    private final float[][] w;
+    private final Function activationFunction = Functions.SIGMOID;
+    // the rounding error of the last update of each weight, allocated by the first training batch
+    private float[][] residual;
+
+    /**
+     * Constructs a network by rounding the weights of a double precision network.
+     *
+     * @param net the network
+     */
+    public FloatNetwork(Network net) {
+        layerSizes = Lists.newArrayList(net.getLayerSizes());
+        w = new float[layerSizes.size() - 1][];
+        for (int l = 0; l < w.length; l++) {
+            double[] data = net.getWeightMatrix(l).getData();
+            w[l] = new float[data.length];
+            for (int k = 0; k < data.length; k++) {
+                w[l][k] = (float) data[k];
+            }
+        }
+    }
+
+    FloatNetwork(List<Integer> layerSizes, float[][] w) {
+        this.layerSizes = layerSizes;
+        this.w = w;
+    }
+
+    @Override
+    public List<Integer> getLayerSizes() {
+        return Collections.unmodifiableList(layerSizes);
+    }
+
+    // a[l] starts with the bias unit, except for the output layer; training sums in double precision
+    float[][] feedForward(boolean training, double... values) {
+        float[][] a = new float[w.length + 1][];
+        a[0] = new float[values.length + 1];
+        a[0][0] = 1.0f;
+        for (int i = 0; i < values.length; i++) {
+            a[0][i + 1] = (float) values[i];
+        }
+        for (int l = 0; l < w.length; l++) {
+            int rows = layerSizes.get(l + 1);
+            int cols = layerSizes.get(l) + 1;
+            int bias = l == w.length - 1 ? 0 : 1;
+            float[] m = w[l];
+            float[] in = a[l];
+            float[] next = new float[rows + bias];
+            if (bias == 1) {
+                next[0] = 1.0f;
+            }
+            if (training) {
+                multDouble(m, in, next, rows, cols, bias);
+            } else {
+                mult(m, in, next, rows, cols, bias);
+            }
+            a[l + 1] = next;
+        }
+        return a;
+    }
+
+    private void mult(float[] m, float[] in, float[] next, int rows, int cols, int bias) {
+        int i = 0;
+        // four rows at a time, like BlockedKernels.mult
+        for (; i + 3 < rows; i += 4) {
+            int o0 = i * cols;
+            int o1 = o0 + cols;
+            int o2 = o1 + cols;
+            int o3 = o2 + cols;
+            float s0 = 0;
+            float s1 = 0;
+            float s2 = 0;
+            float s3 = 0;
+            for (int j = 0; j < cols; j++) {
+                float v = in[j];
+                s0 += m[o0 + j] * v;
+                s1 += m[o1 + j] * v;
+                s2 += m[o2 + j] * v;
+                s3 += m[o3 + j] * v;
+            }
+            next[i + bias] = (float) activationFunction.apply(s0);
+            next[i + bias + 1] = (float) activationFunction.apply(s1);
+            next[i + bias + 2] = (float) activationFunction.apply(s2);
+            next[i + bias + 3] = (float) activationFunction.apply(s3);
+        }
+        for (; i < rows; i++) {
+            int offset = i * cols;
+            float sum = 0;
+            for (int j = 0; j < cols; j++) {
+                sum += m[offset + j] * in[j];
+            }
+            next[i + bias] = (float) activationFunction.apply(sum);
+        }
+    }
+
+    // the same, but the products are summed in double precision
+    private void multDouble(float[] m, float[] in, float[] next, int rows, int cols, int bias) {
+        for (int i = 0; i < rows; i++) {
+            int offset = i * cols;
+            double sum = 0;
+            for (int j = 0; j < cols; j++) {
+                sum += (double) m[offset + j] * in[j];
+            }
+            next[i + bias] = (float) activationFunction.apply(sum);
+        }
+    }
+
+    /**
+     * Applies the input to the network. Safe to call from multiple threads,
+     * as long as no thread is training the network.
+     *
+     * @param values the input values
+     * @return the network output for the given input
+     */
+    @Override
+    public ColVector apply(double... values) {
+        float[] out = feedForward(false, values)[w.length];
+        double[] result = new double[out.length];
+        for (int i = 0; i < out.length; i++) {
+            result[i] = out[i];
+        }
+        return new ColVector(result);
+    }
+
+    /**
+     * Updates the weights given a batch of training examples, like
+     * {@link Network#trainBatch}. The gradient is accumulated in double
+     * precision, and the rounding error of each weight update is carried over
+     * to the next one.
+     * Throws IllegalArgumentException if 'x' and 'y' have different lengths.
+     *
+     * @param x a batch of inputs
+     * @param y a batch of outputs
+     * @param learningRate the learning rate to use during training
+     */
+    public void trainBatch(ColVector[] x, ColVector[] y, double learningRate) {
+        if (x.length != y.length) {
+            throw new IllegalArgumentException("x and y must be the same length!");
+        }
+        TrainingListener.Span span = Profiler.ENABLED ? Profiler.batchStarted(x.length) : null;
+        double[][] grad = computeGradient(x, y);
+        if (residual == null) {
+            residual = new float[w.length][];
+            for (int l = 0; l < w.length; l++) {
+                residual[l] = new float[w[l].length];
+            }
+        }
+        for (int l = 0; l < w.length; l++) {
+            float[] m = w[l];
+            float[] r = residual[l];
+            double[] g = grad[l];
+            for (int k = 0; k < m.length; k++) {
+                double step = r[k] - learningRate * g[k];
+                double updated = m[k] + step;
+                m[k] = (float) updated;
+                r[k] = (float) (updated - m[k]);
+            }
+        }
+        if (Profiler.ENABLED) {
+            span.end();
+        }
+    }
+
+    double[][] computeGradient(ColVector[] x, ColVector[] y) {
+        int numExamples = x.length;
+        double[][] bigDelta = new double[w.length][];
+        for (int l = 0; l < w.length; l++) {
+            bigDelta[l] = new double[w[l].length];
+        }
+
+        for (int e = 0; e < numExamples; e++) {
+            float[][] a = feedForward(true, x[e].getData());
+            float[] out = a[w.length];
+            double[] delta = new double[out.length];
+            for (int i = 0; i < out.length; i++) {
+                delta[i] = out[i] - y[e].get(i);
+            }
+            for (int l = w.length - 1; l >= 0; l--) {
+                int cols = layerSizes.get(l) + 1;
+                float[] m = w[l];
+                float[] in = a[l];
+                double[] acc = bigDelta[l];
+                for (int i = 0; i < delta.length; i++) {
+                    double d = delta[i];
+                    int offset = i * cols;
+                    for (int j = 0; j < cols; j++) {
+                        acc[offset + j] += d * in[j];
+                    }
+                }
+                if (l > 0) {
+                    // transpose(w) * delta without the bias column, times sigmoid'(z) = a * (1 - a)
+                    double[] previous = new double[cols - 1];
+                    for (int i = 0; i < delta.length; i++) {
+                        double d = delta[i];
+                        int offset = i * cols + 1;
+                        for (int j = 0; j < previous.length; j++) {
+                            previous[j] += d * m[offset + j];
+                        }
+                    }
+                    for (int j = 0; j < previous.length; j++) {
+                        double aj = in[j + 1];
+                        previous[j] *= aj * (1.0 - aj);
+                    }
+                    delta = previous;
+                }
+            }
+        }
+
+        for (double[] g : bigDelta) {
+            for (int k = 0; k < g.length; k++) {
+                g[k] /= numExamples;
+            }
+        }
+        return bigDelta;
+    }
+
+    /**
+     * Copies the weights into a double precision network.
+     *
+     * @return a new network instance
+     */
+    public Network toNetwork() {
+        NinjaMatrix[] matrices = new NinjaMatrix[w.length];
+        for (int l = 0; l < w.length; l++) {
+            double[] data = new double[w[l].length];
+            for (int k = 0; k < data.length; k++) {
+                data[k] = w[l][k];
+            }
+            matrices[l] = new NinjaMatrix(layerSizes.get(l + 1), layerSizes.get(l) + 1, true, data);
+        }
+        return new Network(matrices);
+    }
+
+    /**
+     * Loads a model in the float model format.
+     *
+     * @param file the model file
+     * @return a new network instance
+     * @throws IOException
+     */
+    public static FloatNetwork load(File file) throws IOException {
+        try (FileInputStream in = new FileInputStream(file);
+             FileChannel channel = in.getChannel()) {
+            ByteBuffer header = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, header, file);
+            if (header.getInt() != MAGIC) {
+                throw new IOException(file + ": not a float model file");
+            }
+            int numLayers = header.getInt();
+            ByteBuffer sizes = ByteBuffer.allocate(4 * numLayers).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, sizes, file);
+            List<Integer> layerSizes = Lists.newArrayList();
+            for (int l = 0; l < numLayers; l++) {
+                layerSizes.add(sizes.getInt());
+            }
+
+            float[][] w = new float[numLayers - 1][];
+            for (int l = 0; l < w.length; l++) {
+                w[l] = new float[layerSizes.get(l + 1) * (layerSizes.get(l) + 1)];
+                ByteBuffer data = ByteBuffer.allocate(4 * w[l].length).order(ByteOrder.LITTLE_ENDIAN);
+                readFully(channel, data, file);
+                data.asFloatBuffer().get(w[l]);
+            }
+            return new FloatNetwork(layerSizes, w);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, File file) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new IOException(file + ": truncated float model file");
+            }
+        }
+        buffer.flip();
+    }
+
+    /**
+     * Writes the network in the float model format.
+     *
+     * @param file the output file
+     * @throws IOException
+     */
+    public void write(File file) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file);
+             FileChannel channel = out.getChannel()) {
+            ByteBuffer header = ByteBuffer.allocate(4 * (2 + layerSizes.size())).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC);
+            header.putInt(layerSizes.size());
+            for (int size : layerSizes) {
+                header.putInt(size);
+            }
+            header.flip();
+            writeFully(channel, header);
+            for (float[] m : w) {
+                ByteBuffer data = ByteBuffer.allocate(4 * m.length).order(ByteOrder.LITTLE_ENDIAN);
+                data.asFloatBuffer().put(m);
+                writeFully(channel, data);
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Command line interface to convert a text model to the float model format.
+     *
+     * <pre>
+     *  Usage: FloatNetwork text-model float-model
+     * </pre>
+     *
+     * @param args command line arguments
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: FloatNetwork text-model float-model");
+            System.exit(1);
+        }
+        new FloatNetwork(Network.loadModel(new File(args[0]))).write(new File(args[1]));
+        FeatureHasher.copyMode(new File(args[0]), new File(args[1]));
+    }
+}
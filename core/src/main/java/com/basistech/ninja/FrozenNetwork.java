@@ -0,0 +1,222 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.ninja;
+
+import com.basistech.ninja.ejml.ColVector;
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+
+/**
+ * {@code FrozenNetwork} is an immutable copy of a {@link Network} for
+ * prediction, made with {@link Network#freeze()}. {@link Network#apply} keeps
+ * everything that training needs: it stores the weighted sums, applies the
+ * activation function into another vector, and copies that to add the bias
+ * unit. Here each layer is computed in a single pass that takes the dot
+ * product, adds the bias weight, applies the activation function and writes
+ * the result into the next layer's input.
+ *
+ * <p>The weights of all layers are packed into one array, row by row, and the
+ * bias weights into another, so prediction reads memory sequentially. Nothing
+ * is modified after construction and {@link #apply} only allocates its own
+ * temporary arrays, so one instance can be shared by any number of threads
+ * without locks, and later training of the original network doesn't change it.
+ */
+public final class FrozenNetwork implements Model {
+    private final List<Integer> layerSizes;
+    // row-major, without the bias column
+    private final double[] weights;
+    private final double[] bias;
+    // start of each layer in weights and bias
+    private final int[] weightOffsets;
+    private final int[] biasOffsets;
+
+    FrozenNetwork(Network net) {
+        layerSizes = ImmutableList.copyOf(net.getLayerSizes());
+        int numMatrices = layerSizes.size() - 1;
+        weightOffsets = new int[numMatrices];
+        biasOffsets = new int[numMatrices];
+        int numWeights = 0;
+        int numBias = 0;
+        for (int l = 0; l < numMatrices; l++) {
+            weightOffsets[l] = numWeights;
+            biasOffsets[l] = numBias;
+            numWeights += layerSizes.get(l + 1) * layerSizes.get(l);
+            numBias += layerSizes.get(l + 1);
+        }
+        weights = new double[numWeights];
+        bias = new double[numBias];
+        for (int l = 0; l < numMatrices; l++) {
+            double[] data = net.weights(l).getData();
+            int rows = layerSizes.get(l + 1);
+            int cols = layerSizes.get(l);
+            for (int i = 0; i < rows; i++) {
+                bias[biasOffsets[l] + i] = data[i * (cols + 1)];
+                System.arraycopy(data, i * (cols + 1) + 1, weights, weightOffsets[l] + i * cols, cols);
+            }
+        }
+    }
+
+    @Override
+    public List<Integer> getLayerSizes() {
+        return layerSizes;
+    }
+
+    /**
+     * Applies the input to the network. Safe to call from multiple threads.
+     *
+     * @param values the input values
+     * @return the network output for the given input
+     */
+    @Override
+    public ColVector apply(double... values) {
+        if (values.length != layerSizes.get(0)) {
+            throw new IllegalArgumentException(
+                String.format("expected %d input values, got %d", layerSizes.get(0), values.length));
+        }
+        double[] a = values;
+        for (int l = 0; l < weightOffsets.length; l++) {
+            double[] next = new double[layerSizes.get(l + 1)];
+            layer(l, a, next, 0, next.length);
+            a = next;
+        }
+        return new ColVector(a);
+    }
+
+    /**
+     * Applies a batch of inputs to the network. The result is the same as
+     * calling {@link #apply} for each input, but each group of weight rows is
+     * read once for the whole batch instead of once per input, which helps
+     * when the weights don't fit in the cache and memory bandwidth is the
+     * limit. Safe to call from multiple threads.
+     *
+     * @param inputs the input values of each example
+     * @return the network output for each input
+     */
+    public ColVector[] applyBatch(double[][] inputs) {
+        for (double[] values : inputs) {
+            if (values.length != layerSizes.get(0)) {
+                throw new IllegalArgumentException(
+                    String.format("expected %d input values, got %d", layerSizes.get(0), values.length));
+            }
+        }
+        double[][] a = inputs;
+        for (int l = 0; l < weightOffsets.length; l++) {
+            double[][] next = new double[inputs.length][layerSizes.get(l + 1)];
+            layerBatch(l, a, next);
+            a = next;
+        }
+        ColVector[] outputs = new ColVector[inputs.length];
+        for (int e = 0; e < inputs.length; e++) {
+            outputs[e] = new ColVector(a[e]);
+        }
+        return outputs;
+    }
+
+    int getNumMatrices() {
+        return weightOffsets.length;
+    }
+
+    // out = sigmoid(bias + m * in) for rows [from, to), four rows at a time like BlockedKernels.mult
+    void layer(int l, double[] in, double[] out, int from, int to) {
+        double[] m = weights;
+        int cols = in.length;
+        int b = biasOffsets[l];
+        int i = from;
+        for (; i + 3 < to; i += 4) {
+            int o0 = weightOffsets[l] + i * cols;
+            int o1 = o0 + cols;
+            int o2 = o1 + cols;
+            int o3 = o2 + cols;
+            double s0 = bias[b + i];
+            double s1 = bias[b + i + 1];
+            double s2 = bias[b + i + 2];
+            double s3 = bias[b + i + 3];
+            for (int j = 0; j < cols; j++) {
+                double v = in[j];
+                s0 += m[o0 + j] * v;
+                s1 += m[o1 + j] * v;
+                s2 += m[o2 + j] * v;
+                s3 += m[o3 + j] * v;
+            }
+            out[i] = sigmoid(s0);
+            out[i + 1] = sigmoid(s1);
+            out[i + 2] = sigmoid(s2);
+            out[i + 3] = sigmoid(s3);
+        }
+        for (; i < to; i++) {
+            int offset = weightOffsets[l] + i * cols;
+            double sum = bias[b + i];
+            for (int j = 0; j < cols; j++) {
+                sum += m[offset + j] * in[j];
+            }
+            out[i] = sigmoid(sum);
+        }
+    }
+
+    // the same as layer for all rows, with each group of four rows applied to every example in turn
+    private void layerBatch(int l, double[][] in, double[][] out) {
+        double[] m = weights;
+        int cols = layerSizes.get(l);
+        int rows = layerSizes.get(l + 1);
+        int b = biasOffsets[l];
+        int i = 0;
+        for (; i + 3 < rows; i += 4) {
+            int o0 = weightOffsets[l] + i * cols;
+            int o1 = o0 + cols;
+            int o2 = o1 + cols;
+            int o3 = o2 + cols;
+            for (int e = 0; e < in.length; e++) {
+                double[] x = in[e];
+                double s0 = bias[b + i];
+                double s1 = bias[b + i + 1];
+                double s2 = bias[b + i + 2];
+                double s3 = bias[b + i + 3];
+                for (int j = 0; j < cols; j++) {
+                    double v = x[j];
+                    s0 += m[o0 + j] * v;
+                    s1 += m[o1 + j] * v;
+                    s2 += m[o2 + j] * v;
+                    s3 += m[o3 + j] * v;
+                }
+                double[] y = out[e];
+                y[i] = sigmoid(s0);
+                y[i + 1] = sigmoid(s1);
+                y[i + 2] = sigmoid(s2);
+                y[i + 3] = sigmoid(s3);
+            }
+        }
+        for (; i < rows; i++) {
+            int offset = weightOffsets[l] + i * cols;
+            for (int e = 0; e < in.length; e++) {
+                double[] x = in[e];
+                double sum = bias[b + i];
+                for (int j = 0; j < cols; j++) {
+                    sum += m[offset + j] * x[j];
+                }
+                out[e][i] = sigmoid(sum);
+            }
+        }
+    }
+
+    private static double sigmoid(double x) {
+        return 1.0 / (1 + Math.exp(-x));
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.ninja;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * {@code ImportanceSampling} picks the training examples of each batch in
+ * proportion to their loss, so that gradient computations go to the examples
+ * the network still gets wrong rather than those it has already learned. The
+ * loss of an example is recorded whenever it is trained; the sampling
+ * distribution is rebuilt from the recorded losses by {@link #update()}, e.g.
+ * once an epoch, so the losses of examples not trained since are stale.
+ *
+ * <p>Examples are drawn with replacement with probability
+ * {@code p = (1 - u) loss / total + u / n}, where {@code u} is the uniform
+ * fraction, which keeps every example in play and bounds the weights. Each
+ * sampled gradient is to be multiplied by its weight {@code 1 / (n p)}, so
+ * that the expected gradient of a batch is the same as with uniform sampling.
+ */
+public class ImportanceSampling {
+    private static final long SEED = 4068395163L;
+    private final double[] losses;
+    private final double uniform;
+    private final Random random;
+    private final double[] probabilities;
+    private final double[] cumulative;
+
+    /**
+     * Constructs a sampler with a fixed random seed. Until losses are
+     * recorded, examples are sampled uniformly.
+     *
+     * @param numExamples the number of training examples
+     * @param uniform the uniform fraction, greater than 0 and at most 1
+     */
+    public ImportanceSampling(int numExamples, double uniform) {
+        this(numExamples, uniform, new Random(SEED));
+    }
+
+    /**
+     * Constructs a sampler. Until losses are recorded, examples are sampled
+     * uniformly.
+     *
+     * @param numExamples the number of training examples
+     * @param uniform the uniform fraction, greater than 0 and at most 1
+     * @param random the source of samples
+     */
+    public ImportanceSampling(int numExamples, double uniform, Random random) {
+        if (numExamples <= 0) {
+            throw new IllegalArgumentException("numExamples must be positive: " + numExamples);
+        }
+        if (!(uniform > 0 && uniform <= 1)) {
+            throw new IllegalArgumentException("uniform must be greater than 0 and at most 1: " + uniform);
+        }
+        this.uniform = uniform;
+        this.random = random;
+        losses = new double[numExamples];
+        probabilities = new double[numExamples];
+        cumulative = new double[numExamples];
+        Arrays.fill(losses, 1.0);
+        update();
+    }
+
+    public int getNumExamples() {
+        return losses.length;
+    }
+
+    /**
+     * Records the loss of an example. It takes effect at the next
+     * {@link #update()}.
+     *
+     * @param example the index of the example
+     * @param loss its loss, at least 0
+     */
+    public void setLoss(int example, double loss) {
+        losses[example] = loss;
+    }
+
+    /**
+     * Rebuilds the sampling distribution from the recorded losses.
+     */
+    public void update() {
+        int n = losses.length;
+        double total = 0;
+        for (double loss : losses) {
+            total += loss;
+        }
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            // with no loss at all, there is nothing to prefer
+            double share = total > 0 ? losses[i] / total : 1.0 / n;
+            probabilities[i] = (1 - uniform) * share + uniform / n;
+            sum += probabilities[i];
+            cumulative[i] = sum;
+        }
+    }
+
+    /**
+     * Draws an example.
+     *
+     * @return the index of the example
+     */
+    public int sample() {
+        int n = cumulative.length;
+        int i = Arrays.binarySearch(cumulative, random.nextDouble() * cumulative[n - 1]);
+        // a miss returns -(insertion point) - 1; the insertion point is the first entry above
+        return Math.min(i < 0 ? -i - 1 : i, n - 1);
+    }
+
+    /**
+     * Returns the weight of an example's gradient, which undoes the bias of
+     * sampling it more or less often than uniform sampling would.
+     *
+     * @param example the index of the example
+     * @return the weight
+     */
+    public double weight(int example) {
+        return 1.0 / (losses.length * probabilities[example]);
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.ninja;
+
+import com.basistech.ninja.ejml.ColVector;
+import com.basistech.ninja.ejml.NinjaMatrix;
+import com.google.common.collect.Lists;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * {@code MappedNetwork} is a read-only network whose weights stay off the Java
+ * heap, in a memory-mapped binary model file. The weights are never copied
+ * into the heap, so they add nothing to garbage collection work, and all
+ * processes on a host that map the same file share one physical copy through
+ * the operating system's page cache.
+ *
+ * <p>The binary model format is little-endian:
+ * <pre>
+ *  int     magic (0x4E4A4D31, "NJM1")
+ *  int     number of layers
+ *  int[]   layer sizes, not including bias units
+ *  int     padding, if needed to align the weights to 8 bytes
+ *  double[] row-major weight matrix for each layer, bias column first
+ * </pre>
+ *
+ * Each weight matrix must be smaller than 2GB. Use {@link #write(Network, File)}
+ * or the command line interface to convert a model to this format. To train
+ * further, copy the weights back to the heap with {@link #toNetwork()}.
+ */
+public class MappedNetwork implements Model {
+    static final int MAGIC = 0x4E4A4D31;
+    private final List<Integer> layerSizes;
+    private final DoubleBuffer[] w;
+    private final Function activationFunction = Functions.SIGMOID;
+
+    MappedNetwork(List<Integer> layerSizes, DoubleBuffer[] w) {
+        this.layerSizes = layerSizes;
+        this.w = w;
+    }
+
+    /**
+     * Memory-maps a binary model file.
+     *
+     * @param file the binary model file
+     * @return a new network instance
+     * @throws IOException
+     */
+    public static MappedNetwork map(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), 4096))
+                .order(ByteOrder.LITTLE_ENDIAN);
+            List<Integer> layerSizes = Lists.newArrayList();
+            int numLayers;
+            try {
+                if (header.getInt() != MAGIC) {
+                    throw new IOException(file + ": not a binary model file");
+                }
+                numLayers = header.getInt();
+                if (numLayers < 2) {
+                    throw new IOException(file + ": bad number of layers: " + numLayers);
+                }
+                for (int l = 0; l < numLayers; l++) {
+                    layerSizes.add(header.getInt());
+                }
+            } catch (BufferUnderflowException e) {
+                throw new IOException(file + ": truncated binary model file", e);
+            }
+
+            // the mapping stays valid after the channel is closed
+            long offset = headerSize(numLayers);
+            DoubleBuffer[] w = new DoubleBuffer[numLayers - 1];
+            for (int l = 0; l < w.length; l++) {
+                long bytes = 8L * layerSizes.get(l + 1) * (layerSizes.get(l) + 1);
+                if (offset + bytes > channel.size()) {
+                    throw new IOException(file + ": truncated binary model file");
+                }
+                w[l] = channel.map(FileChannel.MapMode.READ_ONLY, offset, bytes)
+                    .order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+                offset += bytes;
+            }
+            return new MappedNetwork(layerSizes, w);
+        }
+    }
+
+    /**
+     * Returns whether the file starts like a binary model file.
+     *
+     * @param file the model file
+     * @return {@code true} for a binary model file
+     * @throws IOException
+     */
+    public static boolean isBinaryModel(File file) throws IOException {
+        return Models.readMagic(file) == MAGIC;
+    }
+
+    private static long headerSize(int numLayers) {
+        long size = 4L * (2 + numLayers);
+        return (size + 7) / 8 * 8;
+    }
+
+    /**
+     * Writes a network in the binary model format.
+     *
+     * @param net the network
+     * @param file the output file
+     * @throws IOException
+     */
+    public static void write(Network net, File file) throws IOException {
+        List<Integer> layerSizes = net.getLayerSizes();
+        try (FileOutputStream out = new FileOutputStream(file);
+             FileChannel channel = out.getChannel()) {
+            ByteBuffer header = ByteBuffer.allocate((int) headerSize(layerSizes.size()))
+                .order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC);
+            header.putInt(layerSizes.size());
+            for (int size : layerSizes) {
+                header.putInt(size);
+            }
+            header.rewind();
+            writeFully(channel, header);
+
+            ByteBuffer chunk = ByteBuffer.allocate(8 * 8192).order(ByteOrder.LITTLE_ENDIAN);
+            for (int l = 0; l < layerSizes.size() - 1; l++) {
+                // row-major, like the in-memory representation
+                for (double value : net.getWeightMatrix(l).getData()) {
+                    if (!chunk.hasRemaining()) {
+                        chunk.flip();
+                        writeFully(channel, chunk);
+                        chunk.clear();
+                    }
+                    chunk.putDouble(value);
+                }
+            }
+            chunk.flip();
+            writeFully(channel, chunk);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    @Override
+    public List<Integer> getLayerSizes() {
+        return Collections.unmodifiableList(layerSizes);
+    }
+
+    /**
+     * Applies the input to the network. Safe to call from multiple threads.
+     *
+     * @param values the input values
+     * @return the network output for the given input
+     */
+    @Override
+    public ColVector apply(double... values) {
+        double[] a = values;
+        for (int l = 0; l < w.length; l++) {
+            DoubleBuffer m = w[l];
+            int rows = layerSizes.get(l + 1);
+            int cols = layerSizes.get(l) + 1;
+            double[] next = new double[rows];
+            for (int i = 0; i < rows; i++) {
+                int offset = i * cols;
+                // bias column first
+                double sum = m.get(offset);
+                for (int j = 1; j < cols; j++) {
+                    sum += m.get(offset + j) * a[j - 1];
+                }
+                next[i] = activationFunction.apply(sum);
+            }
+            a = next;
+        }
+        return new ColVector(a);
+    }
+
+    /**
+     * Copies the weights into a trainable, heap-resident network.
+     *
+     * @return a new network instance
+     */
+    public Network toNetwork() {
+        NinjaMatrix[] matrices = new NinjaMatrix[w.length];
+        for (int l = 0; l < w.length; l++) {
+            double[] data = new double[w[l].capacity()];
+            w[l].duplicate().get(data);
+            matrices[l] = new NinjaMatrix(layerSizes.get(l + 1), layerSizes.get(l) + 1, true, data);
+        }
+        return new Network(matrices);
+    }
+
+    /**
+     * Command line interface to convert a text model to the binary model format.
+     *
+     * <pre>
+     *  Usage: MappedNetwork text-model binary-model
+     * </pre>
+     *
+     * @param args command line arguments
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: MappedNetwork text-model binary-model");
+            System.exit(1);
+        }
+        write(Network.loadModel(new File(args[0])), new File(args[1]));
+        FeatureHasher.copyMode(new File(args[0]), new File(args[1]));
+    }
+}
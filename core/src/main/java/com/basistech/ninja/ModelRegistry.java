@@ -0,0 +1,241 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.ninja;
+
+import com.basistech.ninja.ejml.ColVector;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.cache.Weigher;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code ModelRegistry} serves many models from one process. Models are
+ * registered by name and loaded on demand with {@link Network#loadModel(File)}.
+ * The total number of weights held in memory is bounded; when the bound is
+ * exceeded, the least recently used models are evicted and will be loaded
+ * again on their next use.
+ *
+ * <p>All inference runs on a single executor shared by every model.
+ * {@link #apply} and {@link #preload} load a missing model on that executor
+ * too, so their callers never block on file I/O; {@link #get} loads a missing
+ * model in the calling thread, so callers on a request path should
+ * {@link #preload} the models they need, or use {@link #apply}.
+ * Models whose file has changed are reloaded in the background; the previous
+ * version keeps serving requests until the new one is ready.
+ */
+public class ModelRegistry {
+    private final ConcurrentMap<String, File> files = new ConcurrentHashMap<>();
+    private final ListeningExecutorService executor;
+    private final LoadingCache<String, LoadedModel> cache;
+
+    /**
+     * Constructs a registry.
+     *
+     * @param maxWeights the maximum total number of weights to keep in memory
+     * @param reloadSeconds how often a model's file is checked for changes, in seconds;
+     *                      zero or less disables background reloading
+     * @param executor the executor used for loading and inference; the caller
+     *                 remains responsible for shutting it down
+     */
+    public ModelRegistry(long maxWeights, long reloadSeconds, ExecutorService executor) {
+        this.executor = MoreExecutors.listeningDecorator(executor);
+        // a single segment, so that the weight bound and LRU order are global
+        CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder()
+            .concurrencyLevel(1)
+            .maximumWeight(maxWeights);
+        if (reloadSeconds > 0) {
+            builder.refreshAfterWrite(reloadSeconds, TimeUnit.SECONDS);
+        }
+        cache = builder
+            .weigher(new Weigher<String, LoadedModel>() {
+                @Override
+                public int weigh(String name, LoadedModel model) {
+                    return (int) Math.min(Integer.MAX_VALUE, model.net.getNumWeights());
+                }
+            })
+            .build(new Loader());
+    }
+
+    private static final class LoadedModel {
+        final Network net;
+        final long lastModified;
+
+        LoadedModel(Network net, long lastModified) {
+            this.net = net;
+            this.lastModified = lastModified;
+        }
+    }
+
+    private final class Loader extends CacheLoader<String, LoadedModel> {
+        @Override
+        public LoadedModel load(String name) throws IOException {
+            File file = files.get(name);
+            if (file == null) {
+                throw new IllegalArgumentException("unknown model: " + name);
+            }
+            // read the timestamp first so that a concurrent rewrite triggers another reload
+            long lastModified = file.lastModified();
+            return new LoadedModel(Network.loadModel(file), lastModified);
+        }
+
+        @Override
+        public ListenableFuture<LoadedModel> reload(final String name, final LoadedModel old) {
+            File file = files.get(name);
+            if (file == null || file.lastModified() == old.lastModified) {
+                return Futures.immediateFuture(old);
+            }
+            ListenableFutureTask<LoadedModel> task = ListenableFutureTask.create(new Callable<LoadedModel>() {
+                @Override
+                public LoadedModel call() throws IOException {
+                    return load(name);
+                }
+            });
+            executor.execute(task);
+            return task;
+        }
+    }
+
+    /**
+     * Registers a model file under a name. The model is not loaded until it is
+     * first used. Registering a new file under an existing name replaces the model.
+     *
+     * @param name the model name
+     * @param file the model file
+     */
+    public void register(String name, File file) {
+        File previous = files.put(name, file);
+        if (previous != null && !previous.equals(file)) {
+            cache.invalidate(name);
+        }
+    }
+
+    /**
+     * Removes a model from the registry and releases its weights.
+     *
+     * @param name the model name
+     */
+    public void unregister(String name) {
+        files.remove(name);
+        cache.invalidate(name);
+    }
+
+    /**
+     * Returns the named model, loading it in the calling thread if it isn't in
+     * memory. Use {@link #preload} to keep the load off the caller's thread.
+     *
+     * @param name the model name
+     * @return the network
+     * @throws IOException if the model cannot be loaded
+     */
+    public Network get(String name) throws IOException {
+        try {
+            return cache.get(name).net;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * Asynchronously loads the named model so that later requests don't pay
+     * the load latency.
+     *
+     * @param name the model name
+     * @return a future that completes when the model is loaded
+     */
+    public ListenableFuture<Network> preload(final String name) {
+        return executor.submit(new Callable<Network>() {
+            @Override
+            public Network call() throws IOException {
+                return get(name);
+            }
+        });
+    }
+
+    /**
+     * Asynchronously checks the named model's file and reloads it if it has changed.
+     * Requests keep using the current version until the reload completes.
+     * Models that aren't in memory are left alone.
+     *
+     * @param name the model name
+     */
+    public void refresh(String name) {
+        if (isLoaded(name)) {
+            cache.refresh(name);
+        }
+    }
+
+    /**
+     * Applies the input to the named model on the shared executor.
+     *
+     * @param name the model name
+     * @param values the input values
+     * @return a future holding the network output
+     */
+    public ListenableFuture<ColVector> apply(final String name, final double... values) {
+        return executor.submit(new Callable<ColVector>() {
+            @Override
+            public ColVector call() throws IOException {
+                return get(name).apply(values);
+            }
+        });
+    }
+
+    /**
+     * Returns whether the named model is currently held in memory. Unlike
+     * {@link #get}, this doesn't count as a use of the model, so it doesn't
+     * change which model is evicted next.
+     *
+     * @param name the model name
+     * @return {@code true} if the model is loaded
+     */
+    public boolean isLoaded(String name) {
+        return cache.asMap().containsKey(name);
+    }
+
+    /**
+     * Returns the total number of weights currently held in memory.
+     *
+     * @return the number of weights
+     */
+    public long getLoadedWeights() {
+        long result = 0;
+        for (LoadedModel model : cache.asMap().values()) {
+            result += model.net.getNumWeights();
+        }
+        return result;
+    }
+}
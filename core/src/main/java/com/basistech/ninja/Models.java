@@ -0,0 +1,237 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.ninja;
+
+import com.basistech.ninja.ejml.ColVector;
+import com.google.common.base.Charsets;
+import com.google.common.base.Objects;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+
+/**
+ * {@code Models} loads and evaluates models of any supported kind.
+ */
+public final class Models {
+    private Models() {
+        // empty
+    }
+
+    /**
+     * Loads a model, choosing the implementation from the file format:
+     * a binary model is memory-mapped ({@link MappedNetwork}), float,
+     * quantized, sparse and ensemble models are loaded as a {@link FloatNetwork},
+     * {@link QuantizedNetwork}, {@link SparseNetwork} or {@link Ensemble}, and anything else
+     * is read as a text model and frozen (see {@link Network#freeze()}).
+     *
+     * @param file the model file
+     * @return the model
+     * @throws IOException
+     */
+    public static Model load(File file) throws IOException {
+        switch (readMagic(file)) {
+        case MappedNetwork.MAGIC:
+            return MappedNetwork.map(file);
+        case FloatNetwork.MAGIC:
+            return FloatNetwork.load(file);
+        case QuantizedNetwork.MAGIC:
+            return QuantizedNetwork.load(file);
+        case SparseNetwork.MAGIC:
+            return SparseNetwork.load(file);
+        case Ensemble.MAGIC:
+            return Ensemble.load(file);
+        default:
+            return Network.loadModel(file).freeze();
+        }
+    }
+
+    // returns the first four bytes as a little-endian int, or 0 for shorter files
+    static int readMagic(File file) throws IOException {
+        byte[] magic = new byte[4];
+        try (FileInputStream in = new FileInputStream(file)) {
+            if (in.read(magic) != magic.length) {
+                return 0;
+            }
+        }
+        return ByteBuffer.wrap(magic).order(ByteOrder.LITTLE_ENDIAN).getInt();
+    }
+
+    /**
+     * Returns the feature hasher to use with a model: the one it was trained
+     * with, if that was recorded, or else the one for the given mode.
+     *
+     * @param modelFile the model file
+     * @param inputNeurons the number of input units
+     * @param mode the mode given by the caller, or {@code null}; if the model's mode
+     *             was recorded, it must be the same
+     * @return the hasher, or {@code null} for integer features
+     * @throws IOException
+     */
+    static FeatureHasher featureHasher(File modelFile, int inputNeurons, String mode) throws IOException {
+        String recorded = FeatureHasher.readMode(modelFile);
+        if (recorded != null && mode != null && !recorded.equals(mode)) {
+            throw new IllegalArgumentException(String.format(
+                "%s was trained with --feature-hashing %s, not %s", modelFile, recorded, mode));
+        }
+        String effective = recorded != null ? recorded : mode;
+        return effective == null ? null : FeatureHasher.forMode(effective, inputNeurons);
+    }
+
+    /**
+     * Returns the feature hasher to use with models that read the same
+     * examples, which must all have been trained with the same hashing.
+     *
+     * @param modelFiles the model files
+     * @param inputNeurons the number of input units
+     * @return the hasher, or {@code null} for integer features
+     * @throws IOException
+     */
+    static FeatureHasher featureHasher(List<File> modelFiles, int inputNeurons) throws IOException {
+        String mode = FeatureHasher.readMode(modelFiles.get(0));
+        for (File modelFile : modelFiles) {
+            if (!Objects.equal(mode, FeatureHasher.readMode(modelFile))) {
+                throw new IllegalArgumentException(String.format(
+                    "%s and %s were trained with different feature hashing", modelFiles.get(0), modelFile));
+            }
+        }
+        return mode == null ? null : FeatureHasher.forMode(mode, inputNeurons);
+    }
+
+    /**
+     * Parses the features of an example, with feature hashing if a hasher is
+     * given. See {@link Predict} and {@link FeatureHasher} for the formats.
+     *
+     * @param fields the fields of the example line; the label is skipped
+     * @param inputNeurons the number of input units
+     * @param lineno the line number, for error messages
+     * @param hasher the feature hasher, or {@code null} for integer features
+     * @return the input vector
+     */
+    static ColVector parseFeatures(String[] fields, int inputNeurons, int lineno, FeatureHasher hasher) {
+        return hasher == null ? parseFeatures(fields, inputNeurons, lineno) : hasher.parseFeatures(fields);
+    }
+
+    /**
+     * Parses the features of an example. See {@link Predict} for the format.
+     *
+     * @param fields the fields of the example line; the label is skipped
+     * @param inputNeurons the number of input units
+     * @param lineno the line number, for error messages
+     * @return the input vector
+     */
+    static ColVector parseFeatures(String[] fields, int inputNeurons, int lineno) {
+        ColVector x = new ColVector(inputNeurons);
+        for (int i = 1; i < fields.length; i++) {
+            String[] feature = fields[i].split(":");
+            int index;
+            double value;
+            try {
+                index = Integer.parseInt(feature[0]);
+                value = Double.parseDouble(feature[1]);
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                throw new RuntimeException(String.format(
+                    "line %d: feature %s is not index:value; was the model trained with --feature-hashing?",
+                    lineno, fields[i]), e);
+            }
+            if (index < 0 || index >= inputNeurons) {
+                throw new RuntimeException(
+                    String.format(
+                        "line %d: index (%d) out of range [0, %d); wrong network architecture?",
+                        lineno,
+                        index,
+                        inputNeurons));
+            }
+            x.set(index, value);
+        }
+        return x;
+    }
+
+    /**
+     * Returns the fraction of examples whose label is the highest scoring output.
+     *
+     * @param model the model
+     * @param examplesFile the examples file
+     * @return the accuracy, from 0 to 1
+     * @throws IOException
+     */
+    public static double accuracy(Model model, File examplesFile) throws IOException {
+        return accuracy(model, examplesFile, null);
+    }
+
+    /**
+     * Returns the fraction of examples whose label is the highest scoring output,
+     * with feature hashing if a hasher is given.
+     *
+     * @param model the model
+     * @param examplesFile the examples file
+     * @param hasher the feature hasher, or {@code null} for integer features
+     * @return the accuracy, from 0 to 1
+     * @throws IOException
+     */
+    public static double accuracy(Model model, File examplesFile, FeatureHasher hasher) throws IOException {
+        int inputNeurons = model.getLayerSizes().get(0);
+        int correct = 0;
+        int lineno = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+            new FileInputStream(examplesFile), Charsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineno++;
+                String[] fields = line.split("\\s+");
+                ColVector x = parseFeatures(fields, inputNeurons, lineno, hasher);
+                if (Network.sort(model.apply(x.getData())).get(0).getIndex() == Integer.parseInt(fields[0])) {
+                    correct++;
+                }
+            }
+        }
+        return lineno == 0 ? 0.0 : (double) correct / lineno;
+    }
+
+    /**
+     * Command line interface to compare the accuracy of models on the same examples.
+     *
+     * <pre>
+     *  Usage: Models examples model [model ...]
+     * </pre>
+     *
+     * @param args command line arguments
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: Models examples model [model ...]");
+            System.exit(1);
+        }
+        File examplesFile = new File(args[0]);
+        for (int i = 1; i < args.length; i++) {
+            File modelFile = new File(args[i]);
+            Model model = load(modelFile);
+            FeatureHasher hasher = featureHasher(modelFile, model.getLayerSizes().get(0), null);
+            System.out.println(String.format("%s\t%s\t%d bytes\taccuracy %.4f", modelFile,
+                model.getClass().getSimpleName(), modelFile.length(), accuracy(model, examplesFile, hasher)));
+        }
+    }
+}
@@ -0,0 +1,524 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.ninja;
+
+import com.basistech.ninja.ejml.ColVector;
+import com.basistech.ninja.ejml.Kernels;
+import com.basistech.ninja.ejml.KernelsLoader;
+import com.basistech.ninja.ejml.NinjaMatrix;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.GnuParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.util.List;
+
+/**
+ * {@code MultiTaskNetwork} runs several classifiers over the same input with
+ * one shared trunk of hidden layers and an output head for each task. The
+ * trunk is computed once per input, and each head is applied to its output, so
+ * the cost of the lower layers is shared by all tasks. The trunk and the heads
+ * are {@link Network}s: the trunk's last layer is the input layer of every
+ * head.
+ *
+ * <p>The tasks are trained together: each example has a label for each task,
+ * and the trunk is trained on the sum of the heads' errors. A task's label may
+ * be missing, written {@code -}, in which case that head is not trained on the
+ * example and contributes nothing to the trunk. Examples look like this, with
+ * comma separated labels:
+ *
+ * <pre>
+ *  6,1 0:0.0 1:0.0 ...  99:0.09375000 ... 783:0.0
+ *  2,- 0:0.0 1:0.0 ... 151:0.26171875 ... 783:0.0
+ * </pre>
+ *
+ * <p>The multi-task model format is text: a line {@code num_tasks=N}, a line
+ * {@code trunk} followed by the trunk in the text model format, and for each
+ * task a line {@code head} followed by the head in the text model format.
+ */
+public class MultiTaskNetwork {
+    public static final String MISSING = "-";
+    private static final String TRUNK = "trunk";
+    private static final String HEAD = "head";
+    private final Network trunk;
+    private final Network[] heads;
+
+    /**
+     * Constructs a multi-task network from a trunk and heads.
+     *
+     * @param trunk the shared layers, with at least one hidden layer
+     * @param heads the heads, whose input layers are the size of the trunk's last layer
+     */
+    public MultiTaskNetwork(Network trunk, Network... heads) {
+        if (trunk.getNumLayers() < 2) {
+            throw new IllegalArgumentException("the trunk needs at least one hidden layer");
+        }
+        if (heads.length == 0) {
+            throw new IllegalArgumentException("a multi-task network needs at least one head");
+        }
+        int hidden = trunk.getNumUnits(trunk.getNumLayers() - 1);
+        for (int t = 0; t < heads.length; t++) {
+            if (heads[t].getNumUnits(0) != hidden) {
+                throw new IllegalArgumentException(String.format("head %d has %d inputs, but the trunk has %d outputs",
+                    t, heads[t].getNumUnits(0), hidden));
+            }
+        }
+        this.trunk = trunk;
+        this.heads = heads.clone();
+    }
+
+    /**
+     * Constructs a multi-task network with random weights and one layer per head.
+     *
+     * @param kernels the linear algebra backend
+     * @param trunkSizes the layer sizes of the trunk, including the input layer
+     * @param outputSizes the number of outputs of each task
+     */
+    public MultiTaskNetwork(Kernels kernels, List<Integer> trunkSizes, List<Integer> outputSizes) {
+        this(new Network(kernels, trunkSizes), heads(kernels, trunkSizes.get(trunkSizes.size() - 1), outputSizes));
+    }
+
+    private static Network[] heads(Kernels kernels, int hidden, List<Integer> outputSizes) {
+        Network[] heads = new Network[outputSizes.size()];
+        for (int t = 0; t < heads.length; t++) {
+            heads[t] = new Network(kernels, ImmutableList.of(hidden, outputSizes.get(t)));
+        }
+        return heads;
+    }
+
+    public int getNumTasks() {
+        return heads.length;
+    }
+
+    public Network getTrunk() {
+        return trunk;
+    }
+
+    public Network getHead(int task) {
+        return heads[task];
+    }
+
+    /**
+     * Applies the input to the trunk once and to every head.
+     *
+     * @param values the input values
+     * @return the output of each task
+     */
+    public ColVector[] applyAll(double... values) {
+        double[] hidden = trunk.apply(values).getData();
+        ColVector[] outputs = new ColVector[heads.length];
+        for (int t = 0; t < heads.length; t++) {
+            outputs[t] = heads[t].apply(hidden);
+        }
+        return outputs;
+    }
+
+    /**
+     * Returns a view of one task as a model, for tools that take a
+     * {@link Model}. Applying it computes the trunk and one head.
+     *
+     * @param task the task
+     * @return the model
+     */
+    public Model getTask(final int task) {
+        final List<Integer> layerSizes = ImmutableList.<Integer>builder()
+            .addAll(trunk.getLayerSizes())
+            .addAll(heads[task].getLayerSizes().subList(1, heads[task].getNumLayers()))
+            .build();
+        return new Model() {
+            @Override
+            public List<Integer> getLayerSizes() {
+                return layerSizes;
+            }
+
+            @Override
+            public ColVector apply(double... values) {
+                return heads[task].apply(trunk.apply(values).getData());
+            }
+        };
+    }
+
+    /**
+     * Updates the weights given a batch of training examples.
+     * Throws IllegalArgumentException if 'x' and 'labels' have different lengths.
+     *
+     * @param x a batch of inputs
+     * @param labels the label of each task for each input; negative if missing
+     * @param learningRate the learning rate to use during training
+     */
+    public void trainBatch(ColVector[] x, int[][] labels, double learningRate) {
+        if (x.length != labels.length) {
+            throw new IllegalArgumentException("x and labels must be the same length!");
+        }
+        TrainingListener.Span span = Profiler.ENABLED ? Profiler.batchStarted(x.length) : null;
+        Kernels kernels = trunk.getKernels();
+        int top = trunk.getNumLayers() - 1;
+        NinjaMatrix[] trunkGradient = zeros(trunk);
+        NinjaMatrix[][] headGradients = new NinjaMatrix[heads.length][];
+        for (int t = 0; t < heads.length; t++) {
+            headGradients[t] = zeros(heads[t]);
+        }
+
+        for (int i = 0; i < x.length; i++) {
+            Network.ForwardVectors fv = trunk.feedForward(x[i].getData());
+            ColVector hidden = fv.a[top];
+            // the error of the trunk's last layer, summed over the heads
+            double[] back = new double[hidden.numRows()];
+            for (int t = 0; t < heads.length; t++) {
+                int label = labels[i][t];
+                if (label < 0) {
+                    continue;
+                }
+                Network head = heads[t];
+                ColVector y = new ColVector(head.getNumUnits(head.getNumLayers() - 1));
+                y.set(label, 1.0);
+                Network.ForwardVectors headFv = head.feedForward(hidden.getData());
+                ColVector[] deltas = head.backprop(headFv, y);
+                for (int l = 0; l < headGradients[t].length; l++) {
+                    kernels.addOuterProduct(headGradients[t][l], deltas[l + 1], headFv.a[l]);
+                }
+                ColVector v = new ColVector(back.length + 1);
+                kernels.multTransA(head.weights(0), deltas[1], v);
+                // slot 0 is the bias unit, which doesn't depend on the trunk
+                for (int j = 0; j < back.length; j++) {
+                    back[j] += v.get(j + 1);
+                }
+            }
+            ColVector[] deltas = new ColVector[top + 1];
+            deltas[top] = new ColVector(back);
+            kernels.multSigmoidPrime(deltas[top], hidden);
+            trunk.backprop(fv, deltas, top - 1);
+            for (int l = 0; l < top; l++) {
+                kernels.addOuterProduct(trunkGradient[l], deltas[l + 1], fv.a[l]);
+            }
+        }
+
+        update(trunk, trunkGradient, x.length, learningRate);
+        for (int t = 0; t < heads.length; t++) {
+            update(heads[t], headGradients[t], x.length, learningRate);
+        }
+        if (Profiler.ENABLED) {
+            span.end();
+        }
+    }
+
+    private static NinjaMatrix[] zeros(Network net) {
+        NinjaMatrix[] gradient = new NinjaMatrix[net.getNumLayers() - 1];
+        for (int l = 0; l < gradient.length; l++) {
+            NinjaMatrix m = net.weights(l);
+            gradient[l] = new NinjaMatrix(m.numRows(), m.numCols());
+        }
+        return gradient;
+    }
+
+    private static void update(Network net, NinjaMatrix[] gradient, int numExamples, double learningRate) {
+        for (int l = 0; l < gradient.length; l++) {
+            gradient[l].divide(numExamples);
+            net.getKernels().addScaled(net.weights(l), -learningRate, gradient[l]);
+        }
+    }
+
+    /**
+     * Parses the comma separated labels of an example.
+     *
+     * @param field the first field of the example line
+     * @param lineno the line number, for error messages
+     * @return the label of each task, or -1 if missing
+     */
+    int[] parseLabels(String field, int lineno) {
+        String[] values = field.split(",");
+        if (values.length != heads.length) {
+            throw new RuntimeException(String.format("line %d: %d labels for %d tasks",
+                lineno, values.length, heads.length));
+        }
+        int[] labels = new int[values.length];
+        for (int t = 0; t < values.length; t++) {
+            if (MISSING.equals(values[t])) {
+                labels[t] = -1;
+                continue;
+            }
+            labels[t] = Integer.parseInt(values[t]);
+            int outputs = heads[t].getNumUnits(heads[t].getNumLayers() - 1);
+            if (labels[t] < 0 || labels[t] >= outputs) {
+                throw new RuntimeException(String.format(
+                    "line %d: label %d of task %d out of range [0, %d); wrong network architecture?",
+                    lineno, labels[t], t, outputs));
+            }
+        }
+        return labels;
+    }
+
+    /**
+     * Trains on an examples file.
+     *
+     * @param examplesFile the examples file
+     * @param batchSize the batch size
+     * @param epochs the number of epochs
+     * @param learningRate the learning rate
+     * @throws IOException
+     */
+    public void train(File examplesFile, int batchSize, int epochs, double learningRate) throws IOException {
+        train(examplesFile, null, batchSize, epochs, learningRate);
+    }
+
+    /**
+     * Trains on an examples file, with feature hashing if a hasher is given.
+     *
+     * @param examplesFile the examples file
+     * @param hasher the feature hasher, or {@code null} for integer features
+     * @param batchSize the batch size
+     * @param epochs the number of epochs
+     * @param learningRate the learning rate
+     * @throws IOException
+     */
+    public void train(File examplesFile, FeatureHasher hasher, int batchSize, int epochs, double learningRate)
+        throws IOException {
+        int inputNeurons = trunk.getNumUnits(0);
+        for (int i = 0; i < epochs; i++) {
+            TrainingListener.Span span = Profiler.ENABLED ? Profiler.epochStarted(i + 1) : null;
+            int lineno = 0;
+            for (List<String> batch : new ExamplesIterator(examplesFile, batchSize)) {
+                ColVector[] x = new ColVector[batch.size()];
+                int[][] labels = new int[batch.size()][];
+                for (int k = 0; k < batch.size(); k++) {
+                    lineno++;
+                    String[] fields = batch.get(k).split("\\s+");
+                    labels[k] = parseLabels(fields[0], lineno);
+                    x[k] = Models.parseFeatures(fields, inputNeurons, lineno, hasher);
+                }
+                trainBatch(x, labels, learningRate);
+            }
+            if (Profiler.ENABLED) {
+                span.end();
+            }
+        }
+    }
+
+    /**
+     * Returns the accuracy of each task on an examples file, counting only
+     * the examples that have a label for the task.
+     *
+     * @param examplesFile the examples file
+     * @return the accuracy of each task, from 0 to 1
+     * @throws IOException
+     */
+    public double[] accuracy(File examplesFile) throws IOException {
+        return accuracy(examplesFile, null);
+    }
+
+    /**
+     * Returns the accuracy of each task on an examples file, with feature
+     * hashing if a hasher is given.
+     *
+     * @param examplesFile the examples file
+     * @param hasher the feature hasher, or {@code null} for integer features
+     * @return the accuracy of each task, from 0 to 1
+     * @throws IOException
+     */
+    public double[] accuracy(File examplesFile, FeatureHasher hasher) throws IOException {
+        int inputNeurons = trunk.getNumUnits(0);
+        int[] correct = new int[heads.length];
+        int[] total = new int[heads.length];
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+            new FileInputStream(examplesFile), Charsets.UTF_8))) {
+            int lineno = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineno++;
+                String[] fields = line.split("\\s+");
+                int[] labels = parseLabels(fields[0], lineno);
+                ColVector[] outputs = applyAll(Models.parseFeatures(fields, inputNeurons, lineno, hasher).getData());
+                for (int t = 0; t < heads.length; t++) {
+                    if (labels[t] >= 0) {
+                        total[t]++;
+                        if (Network.sort(outputs[t]).get(0).getIndex() == labels[t]) {
+                            correct[t]++;
+                        }
+                    }
+                }
+            }
+        }
+        double[] accuracy = new double[heads.length];
+        for (int t = 0; t < heads.length; t++) {
+            accuracy[t] = total[t] == 0 ? 0.0 : (double) correct[t] / total[t];
+        }
+        return accuracy;
+    }
+
+    /**
+     * Writes the network in the multi-task model format.
+     *
+     * @param file the output file
+     * @throws IOException
+     */
+    public void writeModel(File file) throws IOException {
+        try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
+            new FileOutputStream(file), Charsets.UTF_8))) {
+            writer.write("num_tasks=" + heads.length);
+            writer.newLine();
+            writer.write(TRUNK);
+            writer.newLine();
+            trunk.writeModel(writer);
+            for (Network head : heads) {
+                writer.write(HEAD);
+                writer.newLine();
+                head.writeModel(writer);
+            }
+        }
+    }
+
+    /**
+     * Loads a network in the multi-task model format.
+     *
+     * @param file the model file
+     * @return a new network instance
+     * @throws IOException
+     */
+    public static MultiTaskNetwork loadModel(File file) throws IOException {
+        List<StringBuilder> sections = Lists.newArrayList();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+            new FileInputStream(file), Charsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String trimmed = line.trim();
+                if (TRUNK.equals(trimmed) || HEAD.equals(trimmed)) {
+                    sections.add(new StringBuilder());
+                } else if (!sections.isEmpty()) {
+                    sections.get(sections.size() - 1).append(line).append('\n');
+                }
+            }
+        }
+        if (sections.size() < 2) {
+            throw new IOException(file + ": not a multi-task model file");
+        }
+        Network trunk = Network.loadModel(new StringReader(sections.get(0).toString()));
+        Network[] heads = new Network[sections.size() - 1];
+        for (int t = 0; t < heads.length; t++) {
+            heads[t] = Network.loadModel(new StringReader(sections.get(t + 1).toString()));
+        }
+        return new MultiTaskNetwork(trunk, heads);
+    }
+
+    private static void usage(Options options) {
+        HelpFormatter formatter = new HelpFormatter();
+        formatter.setWidth(80);
+        formatter.printHelp("MultiTaskNetwork [options]", options);
+        System.out.println();
+    }
+
+    /**
+     * Command line interface to train a multi-task model.
+     *
+     * <pre>
+     *  usage: MultiTaskNetwork [options]
+     *  --batch-size <arg>      batch size (default = 10)
+     *  --epochs <arg>          epochs (default = 5)
+     *  --examples <arg>        input examples file (required)
+     *  --feature-hashing <arg> hash feature keys into the input layer: unsigned or signed
+     *  --layer-sizes <arg>     trunk layer sizes, including input, e.g. 784 100 (required)
+     *  --learning-rate <arg>   learning-rate (default = 0.7)
+     *  --model <arg>           output model file (required)
+     *  --outputs <arg>         number of outputs of each task, e.g. 10 2 (required)
+     *  --test <arg>            test examples file, to report the accuracy of each task
+     * </pre>
+     *
+     * @param args command line arguments
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+        String defaultBatchSize = "10";
+        String defaultEpochs = "5";
+        String defaultLearningRate = "0.7";
+
+        Options options = new Options();
+        Option option;
+        option = new Option(null, "examples", true, "input examples file (required)");
+        option.setRequired(true);
+        options.addOption(option);
+        option = new Option(null, "model", true, "output model file (required)");
+        option.setRequired(true);
+        options.addOption(option);
+        option = new Option(null, "layer-sizes", true, "trunk layer sizes, including input, e.g. 784 100 (required)");
+        option.setRequired(true);
+        option.setArgs(Option.UNLIMITED_VALUES);
+        options.addOption(option);
+        option = new Option(null, "outputs", true, "number of outputs of each task, e.g. 10 2 (required)");
+        option.setRequired(true);
+        option.setArgs(Option.UNLIMITED_VALUES);
+        options.addOption(option);
+        options.addOption(new Option(null, "batch-size", true,
+            String.format("batch size (default = %s)", defaultBatchSize)));
+        options.addOption(new Option(null, "epochs", true, String.format("epochs (default = %s)", defaultEpochs)));
+        options.addOption(new Option(null, "learning-rate", true,
+            String.format("learning-rate (default = %s)", defaultLearningRate)));
+        options.addOption(new Option(null, "test", true, "test examples file, to report the accuracy of each task"));
+        options.addOption(new Option(null, "feature-hashing", true,
+            "hash feature keys into the input layer: unsigned or signed"));
+
+        CommandLineParser parser = new GnuParser();
+        CommandLine cmdline = null;
+        try {
+            cmdline = parser.parse(options, args);
+        } catch (org.apache.commons.cli.ParseException e) {
+            System.err.println(e.getMessage());
+            usage(options);
+            System.exit(1);
+        }
+
+        List<Integer> trunkSizes = Lists.newArrayList();
+        for (String s : cmdline.getOptionValues("layer-sizes")) {
+            trunkSizes.add(Integer.parseInt(s));
+        }
+        List<Integer> outputSizes = Lists.newArrayList();
+        for (String s : cmdline.getOptionValues("outputs")) {
+            outputSizes.add(Integer.parseInt(s));
+        }
+        String hashing = cmdline.getOptionValue("feature-hashing");
+        FeatureHasher hasher = hashing == null ? null : FeatureHasher.forMode(hashing, trunkSizes.get(0));
+        MultiTaskNetwork net = new MultiTaskNetwork(KernelsLoader.get(), trunkSizes, outputSizes);
+        net.train(new File(cmdline.getOptionValue("examples")), hasher,
+            Integer.parseInt(cmdline.getOptionValue("batch-size", defaultBatchSize)),
+            Integer.parseInt(cmdline.getOptionValue("epochs", defaultEpochs)),
+            Double.parseDouble(cmdline.getOptionValue("learning-rate", defaultLearningRate)));
+        File modelFile = new File(cmdline.getOptionValue("model"));
+        net.writeModel(modelFile);
+        FeatureHasher.writeMode(hashing, modelFile);
+        if (cmdline.hasOption("test")) {
+            double[] accuracy = net.accuracy(new File(cmdline.getOptionValue("test")), hasher);
+            for (int t = 0; t < accuracy.length; t++) {
+                System.out.println(String.format("task %d: accuracy %.4f", t, accuracy[t]));
+            }
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.ninja;
+
+import com.basistech.ninja.ejml.ColVector;
+import com.basistech.ninja.ejml.Kernels;
+import com.basistech.ninja.ejml.NinjaMatrix;
+import com.google.common.collect.Maps;
+
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * {@code NegativeSampling} trains a {@link Network} with many output units
+ * (labels) without computing all of them. Each output unit is a sigmoid, so
+ * {@link Network#trainBatch} trains it as a separate yes/no classifier: the
+ * label's unit towards 1 and every other unit towards 0. Here each example
+ * trains its label's unit and a few other units picked at random, the negative
+ * samples, as in word2vec. Only those rows of the output weight matrix are
+ * computed and updated, so the cost of the output layer depends on the number
+ * of samples rather than the number of labels. The hidden layers are trained as
+ * usual. Labels are integers, not one-hot vectors.
+ *
+ * <p>Negative samples are drawn uniformly, without replacement, from the labels
+ * other than the correct one. With as many samples as there are other labels,
+ * the update is the same as {@link Network#trainBatch}. Prediction is
+ * unchanged: {@link Network#apply} computes every output unit.
+ */
+public class NegativeSampling {
+    private static final long SEED = 2908437751L;
+    private final Network net;
+    private final int negatives;
+    private final Random random;
+
+    /**
+     * Constructs a trainer for a network, with a fixed random seed.
+     *
+     * @param net the network, with at least two layers
+     * @param negatives the number of negative samples per example
+     */
+    public NegativeSampling(Network net, int negatives) {
+        this(net, negatives, new Random(SEED));
+    }
+
+    /**
+     * Constructs a trainer for a network.
+     *
+     * @param net the network, with at least two layers
+     * @param negatives the number of negative samples per example
+     * @param random the source of negative samples
+     */
+    public NegativeSampling(Network net, int negatives, Random random) {
+        if (negatives < 0) {
+            throw new IllegalArgumentException("negatives must not be negative: " + negatives);
+        }
+        this.net = net;
+        this.negatives = negatives;
+        this.random = random;
+    }
+
+    // the label followed by distinct negative samples
+    int[] sample(int label) {
+        int outputs = net.getNumUnits(net.getNumLayers() - 1);
+        int count = Math.min(negatives, outputs - 1);
+        int[] rows = new int[count + 1];
+        rows[0] = label;
+        if (count == outputs - 1) {
+            for (int i = 1; i <= count; i++) {
+                rows[i] = i <= label ? i - 1 : i;
+            }
+            return rows;
+        }
+        int n = 1;
+        while (n <= count) {
+            int candidate = random.nextInt(outputs);
+            boolean seen = false;
+            for (int i = 0; i < n && !seen; i++) {
+                seen = rows[i] == candidate;
+            }
+            if (!seen) {
+                rows[n++] = candidate;
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Updates the weights given a batch of training examples.
+     * Throws IllegalArgumentException if 'x' and 'labels' have different lengths.
+     *
+     * @param x a batch of inputs
+     * @param labels the correct output unit of each input
+     * @param learningRate the learning rate to use during training
+     */
+    public void trainBatch(ColVector[] x, int[] labels, double learningRate) {
+        if (x.length != labels.length) {
+            throw new IllegalArgumentException("x and labels must be the same length!");
+        }
+        TrainingListener.Span span = Profiler.ENABLED ? Profiler.batchStarted(x.length) : null;
+        Kernels kernels = net.getKernels();
+        int layers = net.getNumLayers();
+        int top = layers - 2;
+        NinjaMatrix out = net.weights(top);
+        int cols = out.numCols();
+        double[] outData = out.getData();
+
+        NinjaMatrix[] bigDelta = new NinjaMatrix[top];
+        for (int l = 0; l < top; l++) {
+            NinjaMatrix m = net.weights(l);
+            bigDelta[l] = new NinjaMatrix(m.numRows(), m.numCols());
+        }
+        // gradient rows of the output weight matrix, only for the rows used
+        Map<Integer, double[]> outGradient = Maps.newHashMap();
+
+        for (int i = 0; i < x.length; i++) {
+            Network.ForwardVectors fv = net.feedForward(x[i].getData(), layers - 1);
+            double[] h = fv.a[top].getData();
+            int[] rows = sample(labels[i]);
+            // the output deltas, pushed back through the rows used
+            ColVector v = new ColVector(cols);
+            double[] back = v.getData();
+            for (int r = 0; r < rows.length; r++) {
+                int offset = rows[r] * cols;
+                double sum = 0;
+                for (int j = 0; j < cols; j++) {
+                    sum += outData[offset + j] * h[j];
+                }
+                double target = r == 0 ? 1.0 : 0.0;
+                double delta = 1.0 / (1 + Math.exp(-sum)) - target;
+                double[] g = outGradient.get(rows[r]);
+                if (g == null) {
+                    g = new double[cols];
+                    outGradient.put(rows[r], g);
+                }
+                for (int j = 0; j < cols; j++) {
+                    g[j] += delta * h[j];
+                    back[j] += delta * outData[offset + j];
+                }
+            }
+            if (top > 0) {
+                ColVector[] deltas = new ColVector[layers];
+                kernels.multSigmoidPrime(v, fv.a[top]);
+                deltas[top] = Network.stripBiasUnit(v);
+                net.backprop(fv, deltas, top - 1);
+                for (int l = 0; l < top; l++) {
+                    kernels.addOuterProduct(bigDelta[l], deltas[l + 1], fv.a[l]);
+                }
+            }
+        }
+
+        for (int l = 0; l < top; l++) {
+            bigDelta[l].divide(x.length);
+            kernels.addScaled(net.weights(l), -learningRate, bigDelta[l]);
+        }
+        double scale = learningRate / x.length;
+        for (Map.Entry<Integer, double[]> entry : outGradient.entrySet()) {
+            int offset = entry.getKey() * cols;
+            double[] g = entry.getValue();
+            for (int j = 0; j < cols; j++) {
+                outData[offset + j] -= scale * g[j];
+            }
+        }
+        if (Profiler.ENABLED) {
+            span.end();
+        }
+    }
+}
@@ -20,6 +20,8 @@
 package com.basistech.ninja;
 
 import com.basistech.ninja.ejml.ColVector;
+import com.basistech.ninja.ejml.Kernels;
+import com.basistech.ninja.ejml.KernelsLoader;
 import com.basistech.ninja.ejml.NinjaMatrix;
 import com.google.common.base.Charsets;
 import com.google.common.base.Joiner;
@@ -35,6 +37,7 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.io.Reader;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Random;
@@ -44,11 +47,15 @@ import java.util.Random;
  * model and make predictions from a model. Currently, it implements a fully connected
  * feed forward network.
  */
-public class Network {
+public class Network implements Model {
     private static final Random RANDOM = new Random(8723643324L);
+    // the loss treats outputs as at least this far from 0 and 1
+    private static final double MIN_OUTPUT = 1e-15;
     private final List<Integer> layerSizes;
     private final NinjaMatrix[] w;
-    private final Function activationFunction = Functions.SIGMOID;
+    private final Kernels kernels;
+    // training keeps the activations of every this many layers; 1 keeps all
+    private int checkpointInterval = 1;
 
     /**
      * Constructs a network from weight matrices. The number of
@@ -59,6 +66,18 @@ public class Network {
      * @param w the weight matrices
      */
     public Network(NinjaMatrix ... w) {
+        this(KernelsLoader.get(), w);
+    }
+
+    /**
+     * Constructs a network from weight matrices, using the given
+     * linear algebra backend.
+     *
+     * @param kernels the linear algebra backend
+     * @param w the weight matrices
+     */
+    public Network(Kernels kernels, NinjaMatrix ... w) {
+        this.kernels = kernels;
         this.w = w;
         layerSizes = computeLayerSizes();
     }
@@ -70,12 +89,41 @@ public class Network {
      *                   bias unit
      */
     public Network(List<Integer> layerSizes) {
+        this(KernelsLoader.get(), layerSizes);
+    }
+
+    /**
+     * Constructs a randomly initialized network from a given architecture,
+     * using the given linear algebra backend.
+     *
+     * @param kernels the linear algebra backend
+     * @param layerSizes number of units in each layer, not including
+     *                   bias unit
+     */
+    public Network(Kernels kernels, List<Integer> layerSizes) {
+        this(kernels, layerSizes, RANDOM);
+    }
+
+    /**
+     * Constructs a network from a given architecture, initialized from the
+     * given random number generator, so that the weights don't depend on what
+     * other networks have been constructed.
+     *
+     * @param kernels the linear algebra backend
+     * @param layerSizes number of units in each layer, not including
+     *                   bias unit
+     * @param random the random number generator
+     */
+    public Network(Kernels kernels, List<Integer> layerSizes, Random random) {
+        this.kernels = kernels;
         this.layerSizes = layerSizes;
         w = new NinjaMatrix[layerSizes.size() - 1];
         for (int i = 0; i < w.length; i++) {
             w[i] = new NinjaMatrix(layerSizes.get(i + 1), layerSizes.get(i) + 1);
         }
-        randomInitialize();
+        for (int l = 0; l < w.length; l++) {
+            randomInitializeLayer(l, random);
+        }
     }
 
     private List<Integer> computeLayerSizes() {
@@ -105,7 +153,7 @@ public class Network {
         return result;
     }
 
-    private void randomInitializeLayer(int layer) {
+    private void randomInitializeLayer(int layer, Random random) {
         int inputSize = getNumUnits(layer);
         int outputSize = getNumUnits(layer + 1);
         double epsilon = Math.sqrt(6) / Math.sqrt(inputSize + outputSize);
@@ -113,7 +161,7 @@ public class Network {
         // TODO: Nielsen uses something different, and parameterizes the init function
         for (int i = 0; i < w[layer].numRows(); i++) {
             for (int j = 0; j < w[layer].numCols(); j++) {
-                double value = RANDOM.nextDouble() * 2 * epsilon - epsilon;
+                double value = random.nextDouble() * 2 * epsilon - epsilon;
                 w[layer].set(i, j, value);
             }
         }
@@ -126,8 +174,32 @@ public class Network {
     // TODO: think of a way to initialize during construction
     public void randomInitialize() {
         for (int l = 0; l < getNumLayers() - 1; l++) {
-            randomInitializeLayer(l);
+            randomInitializeLayer(l, RANDOM);
+        }
+    }
+
+    /**
+     * Keeps the activations of only every {@code interval} layers of each
+     * example during training, and recomputes the others during backprop. This
+     * saves memory on deep, wide networks at the cost of computing most layers
+     * twice; the weight updates don't change.
+     *
+     * @param interval the number of layers between kept activations; 1 keeps all
+     */
+    public void setCheckpointInterval(int interval) {
+        if (interval < 1) {
+            throw new IllegalArgumentException("interval must be positive: " + interval);
         }
+        checkpointInterval = interval;
+    }
+
+    /**
+     * Returns the linear algebra backend used by this network.
+     *
+     * @return the kernels
+     */
+    public Kernels getKernels() {
+        return kernels;
     }
 
     /**
@@ -149,6 +221,24 @@ public class Network {
         return layerSizes.get(layer);
     }
 
+    @Override
+    public List<Integer> getLayerSizes() {
+        return Collections.unmodifiableList(layerSizes);
+    }
+
+    /**
+     * Returns the total number of weights in the network, including bias weights.
+     *
+     * @return the number of weights
+     */
+    public long getNumWeights() {
+        long result = 0;
+        for (NinjaMatrix m : w) {
+            result += (long) m.numRows() * m.numCols();
+        }
+        return result;
+    }
+
     /**
      * Returns the weight matrix for the given layer.
      *
@@ -159,33 +249,51 @@ public class Network {
         return w[layer].copy();
     }
 
+    // the weight matrix itself, not a copy
+    NinjaMatrix weights(int layer) {
+        return w[layer];
+    }
+
     ForwardVectors feedForward(ColVector vec) {
         return feedForward(vec.getData());
     }
 
+    // backprop needs only the activations, not the weighted sums
     static class ForwardVectors {
-        ColVector[] z;
         ColVector[] a;
-        ForwardVectors(ColVector[] z, ColVector[] a) {
-            this.z = z;
+        ForwardVectors(ColVector[] a) {
             this.a = a;
         }
     }
 
-    // z[0] is always null
     ForwardVectors feedForward(double ... values) {
-        int layers = w.length + 1;
-        ColVector[] z = new ColVector[layers];
-        ColVector[] a = new ColVector[layers];
+        return feedForward(values, w.length + 1);
+    }
+
+    // computes only the first 'layers' layers; a hidden layer includes the bias unit
+    ForwardVectors feedForward(double[] values, int layers) {
+        ColVector[] a = new ColVector[w.length + 1];
         a[0] = Network.addBiasUnit(new ColVector(values));
         for (int l = 1; l < layers; l++) {
-            z[l] = ColVector.mult(w[l - 1], a[l - 1]);
-            a[l] = Functions.apply(activationFunction, z[l]);
-            if (l != layers - 1) {
-                a[l] = Network.addBiasUnit(a[l]);
-            }
+            a[l] = feedForward(l, a[l - 1]);
+        }
+        return new ForwardVectors(a);
+    }
+
+    // the activations of layer l given those of layer l - 1
+    private ColVector feedForward(int l, ColVector in) {
+        long start = Profiler.ENABLED ? System.nanoTime() : 0;
+        ColVector z = new ColVector(w[l - 1].numRows());
+        kernels.mult(w[l - 1], in, z);
+        ColVector a = new ColVector(z.numRows());
+        kernels.sigmoid(z, a);
+        if (l != w.length) {
+            a = Network.addBiasUnit(a);
+        }
+        if (Profiler.ENABLED) {
+            Profiler.record(Profiler.Operation.FEED_FORWARD, l - 1, start);
         }
-        return new ForwardVectors(z, a);
+        return a;
     }
 
     /**
@@ -195,6 +303,7 @@ public class Network {
      * @param values the input values
      * @return the network output for the given input
      */
+    @Override
     public ColVector apply(double... values) {
         return feedForward(values).a[getNumLayers() - 1];
     }
@@ -210,6 +319,22 @@ public class Network {
         return apply(input.getData());
     }
 
+    /**
+     * Returns an immutable copy of this network for prediction. The copy
+     * is faster than {@link #apply} and can be shared by any number of
+     * threads, even while this network is being trained.
+     *
+     * <p>Making the copy reads the weights without any locking, so it must
+     * not run while another thread is training this network, or the copy may
+     * mix weights from before and after an update. Freeze from the training
+     * thread between batches, as {@link OnlineTrainer} does.
+     *
+     * @return the frozen network
+     */
+    public FrozenNetwork freeze() {
+        return new FrozenNetwork(this);
+    }
+
     /**
      * Sorts the vector by value, retaining original index. Typically used
      * after calling 'apply' to get ordered predictions.
@@ -235,15 +360,23 @@ public class Network {
         // TODO: How to prevent copying without making it very hard to follow?
         deltas[layers - 1] = fv.a[layers - 1].copy();
         deltas[layers - 1].minus(y);
-        for (int l = deltas.length - 2; l >= 1; l--) {
-            // TODO: How to prevent copying? I don't think we can change w
-            NinjaMatrix t = w[l].copy();
-            t.transpose();
-            ColVector v = ColVector.mult(t, deltas[l + 1]);
-            v.elementMult(Functions.apply(Functions.SIGMOID_PRIME, Network.addBiasUnit(fv.z[l])));
+        backprop(fv, deltas, layers - 2);
+        return deltas;
+    }
+
+    // fills in deltas[layer] down to deltas[1], given deltas[layer + 1]
+    void backprop(ForwardVectors fv, ColVector[] deltas, int layer) {
+        for (int l = layer; l >= 1; l--) {
+            long start = Profiler.ENABLED ? System.nanoTime() : 0;
+            ColVector v = new ColVector(w[l].numCols());
+            kernels.multTransA(w[l], deltas[l + 1], v);
+            // sigmoid'(z) = a * (1 - a); slot 0 is the bias unit, which is stripped anyway
+            kernels.multSigmoidPrime(v, fv.a[l]);
             deltas[l] = Network.stripBiasUnit(v);
+            if (Profiler.ENABLED) {
+                Profiler.record(Profiler.Operation.BACKPROP, l, start);
+            }
         }
-        return deltas;
     }
 
     /**
@@ -258,36 +391,169 @@ public class Network {
         if (x.length != y.length) {
             throw new IllegalArgumentException("x and y must be the same length!");
         }
+        TrainingListener.Span span = Profiler.ENABLED ? Profiler.batchStarted(x.length) : null;
         // TODO: gradient checking
         NinjaMatrix[] grad = computeGradient(x, y);
         for (int i = 0; i < w.length; i++) {
-            grad[i].scale(learningRate);
-            w[i].minus(grad[i]);
+            kernels.addScaled(w[i], -learningRate, grad[i]);
+        }
+        if (Profiler.ENABLED) {
+            span.end();
         }
     }
 
     NinjaMatrix[] computeGradient(ColVector[] x, ColVector[] y) {
         int numExamples = x.length;
+        NinjaMatrix[] bigDelta = newGradient();
+        accumulateGradient(x, y, bigDelta);
 
+        for (int i = 0; i < getNumLayers() - 1; i++) {
+            // this is the gradient
+            bigDelta[i].divide(numExamples);
+        }
+
+        return bigDelta;
+    }
+
+    // zeroed buffers shaped like the weight matrices
+    NinjaMatrix[] newGradient() {
         NinjaMatrix[] bigDelta = new NinjaMatrix[getNumLayers() - 1];
         for (int l = 0; l < getNumLayers() - 1; l++) {
             bigDelta[l] = new NinjaMatrix(w[l].numRows(), w[l].numCols());
         }
+        return bigDelta;
+    }
+
+    // adds the gradients of the examples, not yet divided by their number, to bigDelta
+    void accumulateGradient(ColVector[] x, ColVector[] y, NinjaMatrix[] bigDelta) {
+        accumulateGradient(x, y, null, null, bigDelta);
+    }
 
-        for (int i = 0; i < numExamples; i++) {
-            ForwardVectors fv = feedForward(x[i]);
-            ColVector[] deltas = backprop(fv, y[i]);
-            for (int l = 0; l < bigDelta.length; l++) {
-                bigDelta[l].plus(deltas[l + 1].mult(fv.a[l].transpose()));
+    /*
+     * The same, but each gradient is multiplied by its weight, or 1 if weights
+     * is null, and if losses isn't null it gets the loss of each example. The
+     * loss takes two logs per output unit, so only callers that use it pay.
+     */
+    void accumulateGradient(ColVector[] x, ColVector[] y, double[] weights, double[] losses, NinjaMatrix[] bigDelta) {
+        if (x.length != y.length || weights != null && weights.length != x.length
+            || losses != null && losses.length != x.length) {
+            throw new IllegalArgumentException("x, y, weights and losses must be the same length!");
+        }
+        int top = w.length;
+        for (int i = 0; i < x.length; i++) {
+            double weight = weights == null ? 1.0 : weights[i];
+            ColVector output;
+            if (checkpointInterval > 1) {
+                output = accumulateCheckpointed(x[i], y[i], weight, bigDelta);
+            } else {
+                ForwardVectors fv = feedForward(x[i]);
+                ColVector[] deltas = new ColVector[top + 1];
+                deltas[top] = outputDelta(fv.a[top], y[i], weight);
+                backprop(fv, deltas, top - 1);
+                for (int l = 0; l < bigDelta.length; l++) {
+                    long start = Profiler.ENABLED ? System.nanoTime() : 0;
+                    kernels.addOuterProduct(bigDelta[l], deltas[l + 1], fv.a[l]);
+                    if (Profiler.ENABLED) {
+                        Profiler.record(Profiler.Operation.GRADIENT, l, start);
+                    }
+                }
+                output = fv.a[top];
+            }
+            if (losses != null) {
+                losses[i] = loss(output, y[i]);
             }
         }
+    }
 
-        for (int i = 0; i < getNumLayers() - 1; i++) {
-            // this is the gradient
-            bigDelta[i].divide(numExamples);
+    private static ColVector outputDelta(ColVector output, ColVector y, double weight) {
+        ColVector delta = output.copy();
+        delta.minus(y);
+        if (weight != 1.0) {
+            double[] data = delta.getData();
+            for (int j = 0; j < data.length; j++) {
+                data[j] *= weight;
+            }
         }
+        return delta;
+    }
 
-        return bigDelta;
+    /**
+     * Returns the cross-entropy loss of an output, which backprop minimizes:
+     * the sum over the output units of {@code -y log a - (1 - y) log(1 - a)}.
+     *
+     * @param output the network output
+     * @param y the correct output
+     * @return the loss
+     */
+    double loss(ColVector output, ColVector y) {
+        double loss = 0;
+        for (int j = 0; j < output.numRows(); j++) {
+            // keeps a saturated unit from making the loss infinite
+            double a = Math.min(Math.max(output.get(j), MIN_OUTPUT), 1 - MIN_OUTPUT);
+            loss -= y.get(j) * Math.log(a) + (1 - y.get(j)) * Math.log(1 - a);
+        }
+        return loss;
+    }
+
+    /*
+     * The same as the loop in accumulateGradient for one example, but the
+     * forward pass keeps only the activations of the checkpoint layers, the
+     * multiples of checkpointInterval, and of the output layer. Backprop goes
+     * down one segment between checkpoints at a time, recomputing its
+     * activations from the checkpoint below it and dropping them when it's
+     * done, and keeps only the current delta. Returns the output.
+     */
+    private ColVector accumulateCheckpointed(ColVector x, ColVector y, double weight, NinjaMatrix[] bigDelta) {
+        int top = w.length;
+        ColVector[] a = new ColVector[top + 1];
+        a[0] = Network.addBiasUnit(x);
+        ColVector current = a[0];
+        for (int l = 1; l <= top; l++) {
+            current = feedForward(l, current);
+            if (l % checkpointInterval == 0 || l == top) {
+                a[l] = current;
+            }
+        }
+        // the delta of layer l + 1
+        ColVector delta = outputDelta(a[top], y, weight);
+        int end = top - 1;
+        while (end >= 0) {
+            int checkpoint = end - end % checkpointInterval;
+            for (int l = checkpoint + 1; l <= end; l++) {
+                a[l] = feedForward(l, a[l - 1]);
+            }
+            for (int l = end; l >= checkpoint; l--) {
+                long start = Profiler.ENABLED ? System.nanoTime() : 0;
+                kernels.addOuterProduct(bigDelta[l], delta, a[l]);
+                if (Profiler.ENABLED) {
+                    Profiler.record(Profiler.Operation.GRADIENT, l, start);
+                }
+                if (l >= 1) {
+                    start = Profiler.ENABLED ? System.nanoTime() : 0;
+                    ColVector v = new ColVector(w[l].numCols());
+                    kernels.multTransA(w[l], delta, v);
+                    kernels.multSigmoidPrime(v, a[l]);
+                    delta = Network.stripBiasUnit(v);
+                    if (Profiler.ENABLED) {
+                        Profiler.record(Profiler.Operation.BACKPROP, l, start);
+                    }
+                }
+            }
+            for (int l = checkpoint + 1; l <= end; l++) {
+                a[l] = null;
+            }
+            end = checkpoint - 1;
+        }
+        return a[top];
+    }
+
+    // takes a step along the accumulated gradient of numExamples examples, and zeroes it for reuse
+    void applyGradient(NinjaMatrix[] bigDelta, int numExamples, double learningRate) {
+        for (int l = 0; l < bigDelta.length; l++) {
+            bigDelta[l].divide(numExamples);
+            kernels.addScaled(w[l], -learningRate, bigDelta[l]);
+            Arrays.fill(bigDelta[l].getData(), 0.0);
+        }
     }
 
     /**
@@ -0,0 +1,292 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.ninja;
+
+import com.basistech.ninja.ejml.ColVector;
+import com.basistech.ninja.ejml.NinjaMatrix;
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code OnlineTrainer} keeps training a network on examples appended to a
+ * file while the network is used for prediction. It trains a private copy of
+ * the network, so training never changes weights that are being read, and
+ * publishes an immutable {@link FrozenNetwork} snapshot of it after every
+ * {@code publishBatches} batches, and whenever it has caught up with the end
+ * of the file. Calls to {@link #apply(double...)} never wait: they use the
+ * latest snapshot, in which all layers come from the same point in training.
+ *
+ * <p>The file is tailed in a background thread: only complete lines are
+ * read, so a writer may append a line in several writes. If the file gets
+ * shorter, it is assumed to have been replaced, and is read from the start.
+ * Lines that can't be parsed are logged and skipped. Examples that don't fill
+ * a batch wait for more examples.
+ */
+public class OnlineTrainer implements Model, Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(OnlineTrainer.class);
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private final Network net;
+    private final File examplesFile;
+    private final int batchSize;
+    private final double learningRate;
+    private final int publishBatches;
+    // non-null with feature hashing
+    private final FeatureHasher hasher;
+    private final ScheduledExecutorService scheduler;
+    private final ByteArrayOutputStream partialLine = new ByteArrayOutputStream();
+    private final List<String> batch = Lists.newArrayList();
+    private final List<Long> batchLinenos = Lists.newArrayList();
+    private long position;
+    private long lineno;
+    private int unpublishedBatches;
+    private volatile FrozenNetwork current;
+    private volatile long version;
+    private volatile long examplesTrained;
+
+    /**
+     * Starts training on the examples file. The given network is copied, and
+     * is not changed.
+     *
+     * @param initial the network to start from
+     * @param examplesFile the examples file, which may grow
+     * @param batchSize the batch size
+     * @param learningRate the learning rate
+     * @param publishBatches the most batches to train before publishing a snapshot
+     * @param pollMillis how often to check the file for new examples, in milliseconds;
+     *                   zero or less disables the background thread, so that only
+     *                   explicit calls to {@link #poll()} train
+     */
+    public OnlineTrainer(Network initial, File examplesFile, int batchSize, double learningRate,
+        int publishBatches, long pollMillis) {
+        this(initial, examplesFile, null, batchSize, learningRate, publishBatches, pollMillis);
+    }
+
+    /**
+     * Starts training on an examples file with hashed features; see
+     * {@link FeatureHasher} for the format.
+     *
+     * @param initial the network to start from
+     * @param examplesFile the examples file, which may grow
+     * @param hasher the feature hasher, or {@code null} for integer features
+     * @param batchSize the batch size
+     * @param learningRate the learning rate
+     * @param publishBatches the most batches to train before publishing a snapshot
+     * @param pollMillis how often to check the file for new examples, in milliseconds,
+     *                   or zero or less to train only on explicit calls to {@link #poll()}
+     */
+    public OnlineTrainer(Network initial, File examplesFile, FeatureHasher hasher, int batchSize,
+        double learningRate, int publishBatches, long pollMillis) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+        }
+        if (publishBatches <= 0) {
+            throw new IllegalArgumentException("publishBatches must be positive: " + publishBatches);
+        }
+        NinjaMatrix[] w = new NinjaMatrix[initial.getNumLayers() - 1];
+        for (int l = 0; l < w.length; l++) {
+            w[l] = initial.getWeightMatrix(l);
+        }
+        net = new Network(initial.getKernels(), w);
+        this.examplesFile = examplesFile;
+        this.batchSize = batchSize;
+        this.learningRate = learningRate;
+        this.publishBatches = publishBatches;
+        this.hasher = hasher;
+        current = net.freeze();
+        if (pollMillis > 0) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("ninja-online-%d").setDaemon(true).build());
+            scheduler.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        poll();
+                    } catch (IOException | RuntimeException e) {
+                        LOG.warn("Failed to read {}; trying again later", OnlineTrainer.this.examplesFile, e);
+                    }
+                }
+            }, 0, pollMillis, TimeUnit.MILLISECONDS);
+        } else {
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Returns the latest snapshot. Callers that make several related calls
+     * should hold on to the returned instance so that they all see the same
+     * weights.
+     *
+     * @return the latest snapshot
+     */
+    public FrozenNetwork get() {
+        return current;
+    }
+
+    @Override
+    public List<Integer> getLayerSizes() {
+        return current.getLayerSizes();
+    }
+
+    /**
+     * Applies the input to the latest snapshot.
+     *
+     * @param values the input values
+     * @return the network output for the given input
+     */
+    @Override
+    public ColVector apply(double... values) {
+        return current.apply(values);
+    }
+
+    /**
+     * Returns the number of snapshots published since construction.
+     *
+     * @return the snapshot version, starting at 0 for the initial network
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the number of examples trained so far, including those not yet
+     * in a published snapshot.
+     *
+     * @return the number of examples
+     */
+    public long getExamplesTrained() {
+        return examplesTrained;
+    }
+
+    /**
+     * Reads the complete lines appended to the file since the last call,
+     * trains on each full batch, and publishes a snapshot if anything was
+     * trained since the last one.
+     *
+     * @return the number of examples trained
+     * @throws IOException if the file can't be read
+     */
+    public synchronized int poll() throws IOException {
+        long before = examplesTrained;
+        try (FileInputStream in = new FileInputStream(examplesFile)) {
+            FileChannel channel = in.getChannel();
+            if (channel.size() < position) {
+                LOG.info("{} got shorter; reading it from the start", examplesFile);
+                position = 0;
+                lineno = 0;
+                partialLine.reset();
+                batch.clear();
+                batchLinenos.clear();
+            }
+            channel.position(position);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                position += n;
+                int start = 0;
+                for (int i = 0; i < n; i++) {
+                    if (buffer[i] == '\n') {
+                        partialLine.write(buffer, start, i - start);
+                        addLine(new String(partialLine.toByteArray(), Charsets.UTF_8));
+                        partialLine.reset();
+                        start = i + 1;
+                    }
+                }
+                partialLine.write(buffer, start, n - start);
+            }
+        }
+        if (unpublishedBatches > 0) {
+            publish();
+        }
+        return (int) (examplesTrained - before);
+    }
+
+    private void addLine(String line) {
+        lineno++;
+        if (!line.trim().isEmpty()) {
+            batch.add(line);
+            batchLinenos.add(lineno);
+        }
+        if (batch.size() == batchSize) {
+            trainBatch();
+            batch.clear();
+            batchLinenos.clear();
+            if (++unpublishedBatches >= publishBatches) {
+                publish();
+            }
+        }
+    }
+
+    private void trainBatch() {
+        int inputNeurons = net.getNumUnits(0);
+        int outputNeurons = net.getNumUnits(net.getNumLayers() - 1);
+        List<ColVector> x = Lists.newArrayList();
+        List<ColVector> y = Lists.newArrayList();
+        for (int i = 0; i < batch.size(); i++) {
+            String[] fields = batch.get(i).trim().split("\\s+");
+            try {
+                int label = Integer.parseInt(fields[0]);
+                if (label < 0 || label >= outputNeurons) {
+                    throw new IllegalArgumentException(String.format("yval (%d) out of range [0, %d)",
+                        label, outputNeurons));
+                }
+                ColVector output = new ColVector(outputNeurons);
+                output.set(label, 1.0);
+                x.add(Models.parseFeatures(fields, inputNeurons, batchLinenos.get(i).intValue(), hasher));
+                y.add(output);
+            } catch (RuntimeException e) {
+                LOG.warn("{}: skipping line {}: {}", examplesFile, batchLinenos.get(i), e.getMessage());
+            }
+        }
+        if (!x.isEmpty()) {
+            net.trainBatch(x.toArray(new ColVector[x.size()]), y.toArray(new ColVector[y.size()]), learningRate);
+            examplesTrained += x.size();
+        }
+    }
+
+    private void publish() {
+        current = net.freeze();
+        version++;
+        unpublishedBatches = 0;
+    }
+
+    /**
+     * Stops training. The latest snapshot remains usable.
+     */
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+}
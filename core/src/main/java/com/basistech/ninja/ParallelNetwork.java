@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.ninja;
+
+import com.basistech.ninja.ejml.ColVector;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * {@code ParallelNetwork} lowers the latency of a single prediction by
+ * computing each large layer of a {@link FrozenNetwork} on several cores. The
+ * rows of the layer's weight matrix are split into contiguous blocks; the
+ * calling thread computes one block and a pool of worker threads computes the
+ * others, and the next layer starts when all of them are done. Each block
+ * writes its own part of the layer's output, so no locks are needed.
+ *
+ * <p>Handing work to another thread costs tens of microseconds, more than a
+ * small layer takes on its own, so a layer is only split into as many blocks
+ * as have at least {@code minWeightsPerTask} weights each; smaller layers are
+ * computed by the calling thread alone. For throughput over many requests,
+ * applying a {@link FrozenNetwork} to different requests in different threads
+ * is better: this is for requests that can't wait.
+ *
+ * <p>Like {@link FrozenNetwork}, an instance may be shared by any number of
+ * threads. They share the worker pool.
+ */
+public class ParallelNetwork implements Model, Closeable {
+    /**
+     * The default smallest number of weights worth handing to another thread.
+     */
+    public static final long DEFAULT_MIN_WEIGHTS_PER_TASK = 64 * 1024;
+    // blocks are a multiple of the rows that FrozenNetwork computes together
+    private static final int ROW_ALIGNMENT = 4;
+    private final FrozenNetwork net;
+    private final int threads;
+    private final long minWeightsPerTask;
+    private final ExecutorService executor;
+
+    /**
+     * Constructs a parallel network with the default threshold.
+     *
+     * @param net the network
+     * @param threads the most threads to use for one layer, including the calling thread
+     */
+    public ParallelNetwork(FrozenNetwork net, int threads) {
+        this(net, threads, DEFAULT_MIN_WEIGHTS_PER_TASK);
+    }
+
+    /**
+     * Constructs a parallel network.
+     *
+     * @param net the network
+     * @param threads the most threads to use for one layer, including the calling thread
+     * @param minWeightsPerTask the smallest number of weights to give a thread;
+     *                          layers with fewer than twice as many are not split
+     */
+    public ParallelNetwork(FrozenNetwork net, int threads, long minWeightsPerTask) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be positive: " + threads);
+        }
+        this.net = net;
+        this.threads = threads;
+        this.minWeightsPerTask = Math.max(1, minWeightsPerTask);
+        executor = threads == 1 ? null : Executors.newFixedThreadPool(threads - 1,
+            new ThreadFactoryBuilder().setNameFormat("ninja-parallel-%d").setDaemon(true).build());
+    }
+
+    @Override
+    public List<Integer> getLayerSizes() {
+        return net.getLayerSizes();
+    }
+
+    /**
+     * Applies the input to the network. Safe to call from multiple threads.
+     *
+     * @param values the input values
+     * @return the network output for the given input
+     */
+    @Override
+    public ColVector apply(double... values) {
+        List<Integer> layerSizes = net.getLayerSizes();
+        if (values.length != layerSizes.get(0)) {
+            throw new IllegalArgumentException(
+                String.format("expected %d input values, got %d", layerSizes.get(0), values.length));
+        }
+        double[] a = values;
+        for (int l = 0; l < net.getNumMatrices(); l++) {
+            double[] next = new double[layerSizes.get(l + 1)];
+            layer(l, a, next);
+            a = next;
+        }
+        return new ColVector(a);
+    }
+
+    private void layer(final int l, final double[] in, final double[] out) {
+        int rows = out.length;
+        int tasks = tasks(rows, in.length);
+        if (tasks == 1) {
+            net.layer(l, in, out, 0, rows);
+            return;
+        }
+        int blockRows = blockRows(rows, tasks);
+        List<Future<?>> futures = Lists.newArrayListWithCapacity(tasks - 1);
+        for (int from = blockRows; from < rows; from += blockRows) {
+            final int start = from;
+            final int end = Math.min(from + blockRows, rows);
+            futures.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    net.layer(l, in, out, start, end);
+                }
+            }));
+        }
+        net.layer(l, in, out, 0, Math.min(blockRows, rows));
+        // waiting for the futures also makes their writes to 'out' visible here
+        for (Future<?> future : futures) {
+            Futures.getUnchecked(future);
+        }
+    }
+
+    // the number of blocks to split a layer into
+    int tasks(int rows, int cols) {
+        long byWeights = (long) rows * cols / minWeightsPerTask;
+        long byRows = (rows + ROW_ALIGNMENT - 1) / ROW_ALIGNMENT;
+        return (int) Math.max(1, Math.min(threads, Math.min(byWeights, byRows)));
+    }
+
+    static int blockRows(int rows, int tasks) {
+        int blockRows = (rows + tasks - 1) / tasks;
+        return (blockRows + ROW_ALIGNMENT - 1) / ROW_ALIGNMENT * ROW_ALIGNMENT;
+    }
+
+    /**
+     * Stops the worker threads. The network can't be used afterwards.
+     */
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -53,14 +53,14 @@ import java.util.List;
  * </pre>
  */
 public class Predict {
-    Network net;
+    Model net;
 
-    Predict(Network net) {
+    Predict(Model net) {
         this.net = net;
     }
 
     List<Result> predict(ColVector x) {
-        ColVector outVector = net.apply(x);
+        ColVector outVector = net.apply(x.getData());
         return Network.sort(outVector);
     }
 
@@ -68,25 +68,45 @@ public class Predict {
      * Command line interface to make predictions.
      *
      * <pre>
-     *  Usage: Predict model examples response [--verbose]
+     *  Usage: Predict model examples response [--verbose] [--feature-hashing unsigned|signed]
      * </pre>
      *
+     * The model may be a text model, a binary model (see {@link MappedNetwork}),
+     * or a float model (see {@link FloatNetwork}). Features of models trained with
+     * {@code --feature-hashing} are hashed the same way, as recorded beside the
+     * model; the option is only needed for models without that record. See
+     * {@link FeatureHasher}.
+     *
      * @param args command line arguments
      * @throws IOException
      */
     public static void main(String[] args) throws IOException {
-        if (args.length != 3 && args.length != 4) {
-            System.err.println("Usage: Predict model examples response [--verbose]");
+        String usage = "Usage: Predict model examples response [--verbose] [--feature-hashing unsigned|signed]";
+        if (args.length < 3) {
+            System.err.println(usage);
             System.exit(1);
         }
+        boolean verbose = false;
+        String hashing = null;
+        for (int i = 3; i < args.length; i++) {
+            if (args[i].equalsIgnoreCase("--verbose")) {
+                verbose = true;
+            } else if (args[i].equals("--feature-hashing") && i + 1 < args.length) {
+                hashing = args[++i];
+            } else {
+                System.err.println(usage);
+                System.exit(1);
+            }
+        }
 
-        Network net = Network.loadModel(new File(args[0]));
+        File modelFile = new File(args[0]);
+        Model net = Models.load(modelFile);
         File examplesFile = new File(args[1]);
         File responseFile = new File(args[2]);
-        boolean verbose = args.length == 4 && args[3].equalsIgnoreCase("--verbose");
         Predict that = new Predict(net);
 
-        int inputNeurons = net.getNumUnits(0);
+        int inputNeurons = net.getLayerSizes().get(0);
+        FeatureHasher hasher = Models.featureHasher(modelFile, inputNeurons, hashing);
 
         try (BufferedReader reader = new BufferedReader(new InputStreamReader(
             new FileInputStream(examplesFile), Charsets.UTF_8));
@@ -98,21 +118,7 @@ public class Predict {
             while ((line = reader.readLine()) != null) {
                 // 1 1:1 2:1 5:1
                 String[] fields = line.split("\\s+");
-                ColVector x = new ColVector(inputNeurons);
-                for (int i = 1; i < fields.length; i++) {
-                    String[] feature = fields[i].split(":");
-                    int index = Integer.parseInt(feature[0]);
-                    double value = Double.parseDouble(feature[1]);
-                    if (index < 0 || index >= inputNeurons) {
-                        throw new RuntimeException(
-                            String.format(
-                                "line %d: index (%d) out of range [0, %d); wrong network architecture?",
-                                lineno + 1,
-                                index,
-                                inputNeurons));
-                    }
-                    x.set(index, value);
-                }
+                ColVector x = Models.parseFeatures(fields, inputNeurons, lineno + 1, hasher);
 
                 List<Result> results = that.predict(x);
                 String prediction = String.valueOf(results.get(0).getIndex());
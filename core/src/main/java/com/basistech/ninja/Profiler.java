@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.ninja;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.PrintStream;
+import java.util.Iterator;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * {@code Profiler} records how long each layer takes in {@link Network}'s
+ * forward pass, backpropagation and gradient computation, and tells a
+ * {@link TrainingListener} about batches and epochs.
+ *
+ * <p>It is off unless the system property {@code ninja.profile} is
+ * {@code true}. Every call site checks {@link #ENABLED} first; since it is a
+ * static final field, the JIT compiler treats it as a constant and removes the
+ * checks and the profiling code entirely when it is false.
+ *
+ * <p>Durations go into a {@link LatencyHistogram} per operation and weight
+ * matrix; weight matrix {@code l} connects layer {@code l} to layer
+ * {@code l + 1}. Weight matrices from {@code MAX_LAYERS - 1} on share the last
+ * histogram.
+ */
+public final class Profiler {
+    public static final String PROPERTY = "ninja.profile";
+    public static final boolean ENABLED = Boolean.getBoolean(PROPERTY);
+    // histograms per operation; deeper weight matrices share the last one
+    static final int MAX_LAYERS = 256;
+    private static final Logger LOG = LoggerFactory.getLogger(Profiler.class);
+    private static final TrainingListener.Span NO_SPAN = new TrainingListener.Span() {
+        @Override
+        public void end() {
+            // empty
+        }
+    };
+    private static final TrainingListener LISTENER = ENABLED ? loadListener() : null;
+    private static final AtomicReferenceArray<LatencyHistogram> HISTOGRAMS =
+        new AtomicReferenceArray<>(Operation.values().length * MAX_LAYERS);
+
+    /**
+     * The profiled operations.
+     */
+    public enum Operation {
+        FEED_FORWARD("feedForward"),
+        BACKPROP("backprop"),
+        GRADIENT("computeGradient");
+
+        private final String label;
+
+        Operation(String label) {
+            this.label = label;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    private Profiler() {
+        // empty
+    }
+
+    private static TrainingListener loadListener() {
+        Iterator<TrainingListener> it = ServiceLoader.load(TrainingListener.class).iterator();
+        while (it.hasNext()) {
+            try {
+                return it.next();
+            } catch (ServiceConfigurationError | LinkageError e) {
+                LOG.debug("Skipping training listener that can't be loaded", e);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Records the time since {@code startNanos} for an operation on a weight matrix.
+     *
+     * @param operation the operation
+     * @param layer the weight matrix
+     * @param startNanos the start, from {@link System#nanoTime()}
+     */
+    public static void record(Operation operation, int layer, long startNanos) {
+        long nanos = System.nanoTime() - startNanos;
+        int index = index(operation, layer);
+        LatencyHistogram histogram = HISTOGRAMS.get(index);
+        if (histogram == null) {
+            HISTOGRAMS.compareAndSet(index, null, new LatencyHistogram());
+            histogram = HISTOGRAMS.get(index);
+        }
+        histogram.record(nanos);
+    }
+
+    /**
+     * Returns the histogram for an operation on a weight matrix.
+     *
+     * @param operation the operation
+     * @param layer the weight matrix
+     * @return the histogram, or {@code null} if nothing was recorded
+     */
+    public static LatencyHistogram getHistogram(Operation operation, int layer) {
+        return HISTOGRAMS.get(index(operation, layer));
+    }
+
+    private static int index(Operation operation, int layer) {
+        if (layer < 0) {
+            throw new IllegalArgumentException("layer must not be negative: " + layer);
+        }
+        return operation.ordinal() * MAX_LAYERS + Math.min(layer, MAX_LAYERS - 1);
+    }
+
+    /**
+     * Discards everything recorded so far.
+     */
+    public static void reset() {
+        for (int i = 0; i < HISTOGRAMS.length(); i++) {
+            HISTOGRAMS.set(i, null);
+        }
+    }
+
+    /**
+     * Tells the listener, if there is one, that a batch started.
+     *
+     * @param examples the number of examples in the batch
+     * @return the span to end when the batch has been trained
+     */
+    public static TrainingListener.Span batchStarted(int examples) {
+        return LISTENER == null ? NO_SPAN : LISTENER.batchStarted(examples);
+    }
+
+    /**
+     * Tells the listener, if there is one, that an epoch started.
+     *
+     * @param epoch the epoch number, starting at 1
+     * @return the span to end when the epoch has been trained
+     */
+    public static TrainingListener.Span epochStarted(int epoch) {
+        return LISTENER == null ? NO_SPAN : LISTENER.epochStarted(epoch);
+    }
+
+    /**
+     * Prints the count, median, 99th percentile and maximum, in microseconds,
+     * of every operation and weight matrix with recorded durations. The
+     * shared histogram of the deepest weight matrices is labeled {@code 255+}.
+     *
+     * @param out the output stream
+     */
+    public static void report(PrintStream out) {
+        out.println("operation\tweights\tcount\tp50 us\tp99 us\tmax us");
+        for (Operation operation : Operation.values()) {
+            for (int l = 0; l < MAX_LAYERS; l++) {
+                LatencyHistogram histogram = getHistogram(operation, l);
+                if (histogram != null) {
+                    String weights = l == MAX_LAYERS - 1 ? l + "+" : l + "-" + (l + 1);
+                    out.println(String.format("%s\t%s\t%d\t%.1f\t%.1f\t%.1f", operation, weights,
+                        histogram.getCount(), histogram.getPercentile(50) / 1000.0,
+                        histogram.getPercentile(99) / 1000.0, histogram.getMax() / 1000.0));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,309 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.ninja;
+
+import com.basistech.ninja.ejml.NinjaMatrix;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.GnuParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * {@code Pruner} does magnitude pruning: it sets the weights with the smallest
+ * absolute values to zero. Bias weights are never pruned. Pruned weights stay
+ * zero if the network is fine-tuned with {@link #fineTune}. Use
+ * {@link SparseNetwork} to make predictions with the pruned network.
+ */
+public class Pruner {
+    private static final double[] REPORT_SPARSITIES = {0, 0.5, 0.75, 0.9, 0.95, 0.98, 0.99};
+    private final Network net;
+    // true for pruned weights
+    private final boolean[][] pruned;
+    // non-null if the network was trained with feature hashing
+    private FeatureHasher hasher;
+
+    /**
+     * Constructs a pruner that modifies the given network.
+     *
+     * @param net the network
+     */
+    public Pruner(Network net) {
+        this.net = net;
+        pruned = new boolean[net.getNumLayers() - 1][];
+        for (int l = 0; l < pruned.length; l++) {
+            NinjaMatrix m = net.weights(l);
+            pruned[l] = new boolean[m.numRows() * m.numCols()];
+        }
+    }
+
+    /**
+     * Sets the feature hasher that {@link #fineTune} parses examples with.
+     *
+     * @param hasher the feature hasher, or {@code null} for integer features
+     */
+    void setFeatureHasher(FeatureHasher hasher) {
+        this.hasher = hasher;
+    }
+
+    /**
+     * Prunes the weights whose absolute value is below the threshold.
+     *
+     * @param threshold the threshold
+     */
+    public void pruneBelow(double threshold) {
+        for (int l = 0; l < pruned.length; l++) {
+            pruneBelow(l, threshold);
+        }
+    }
+
+    private void pruneBelow(int layer, double threshold) {
+        NinjaMatrix m = net.weights(layer);
+        int cols = m.numCols();
+        double[] data = m.getData();
+        for (int k = 0; k < data.length; k++) {
+            // column 0 holds the bias weights
+            if (k % cols != 0 && Math.abs(data[k]) < threshold) {
+                data[k] = 0.0;
+                pruned[layer][k] = true;
+            }
+        }
+    }
+
+    /**
+     * Prunes the weights with the smallest absolute values in each layer,
+     * so that each layer has the target sparsity. Weights with the same
+     * absolute value are pruned together, so the sparsity may be a little lower.
+     *
+     * @param sparsity the fraction of weights to prune, from 0 to 1
+     */
+    public void pruneToSparsity(double sparsity) {
+        if (sparsity < 0 || sparsity > 1) {
+            throw new IllegalArgumentException("sparsity must be from 0 to 1: " + sparsity);
+        }
+        for (int l = 0; l < pruned.length; l++) {
+            NinjaMatrix m = net.weights(l);
+            int cols = m.numCols();
+            double[] data = m.getData();
+            double[] magnitudes = new double[m.numRows() * (cols - 1)];
+            int n = 0;
+            for (int k = 0; k < data.length; k++) {
+                if (k % cols != 0) {
+                    magnitudes[n++] = Math.abs(data[k]);
+                }
+            }
+            Arrays.sort(magnitudes);
+            int count = (int) Math.round(sparsity * magnitudes.length);
+            if (count == magnitudes.length) {
+                pruneBelow(l, Double.POSITIVE_INFINITY);
+            } else if (count > 0) {
+                pruneBelow(l, magnitudes[count]);
+            }
+        }
+    }
+
+    /**
+     * Returns the fraction of weights that are zero, not counting bias weights.
+     *
+     * @return the sparsity, from 0 to 1
+     */
+    public double getSparsity() {
+        long total = 0;
+        long zero = 0;
+        for (int l = 0; l < pruned.length; l++) {
+            NinjaMatrix m = net.weights(l);
+            int cols = m.numCols();
+            double[] data = m.getData();
+            for (int k = 0; k < data.length; k++) {
+                if (k % cols != 0) {
+                    total++;
+                    if (data[k] == 0.0) {
+                        zero++;
+                    }
+                }
+            }
+        }
+        return total == 0 ? 0.0 : (double) zero / total;
+    }
+
+    /**
+     * Trains the network further, keeping the pruned weights at zero.
+     *
+     * @param examplesFile the training examples
+     * @param batchSize the batch size
+     * @param epochs the number of epochs
+     * @param learningRate the learning rate
+     * @throws IOException
+     */
+    public void fineTune(File examplesFile, int batchSize, int epochs, double learningRate) throws IOException {
+        Train train = new Train(net, examplesFile);
+        train.setFeatureHasher(hasher);
+        for (int i = 0; i < epochs; i++) {
+            TrainingListener.Span span = Profiler.ENABLED ? Profiler.epochStarted(i + 1) : null;
+            for (List<String> batch : new ExamplesIterator(examplesFile, batchSize)) {
+                train.trainBatch(batch, learningRate);
+                applyMask();
+            }
+            if (Profiler.ENABLED) {
+                span.end();
+            }
+        }
+    }
+
+    private void applyMask() {
+        for (int l = 0; l < pruned.length; l++) {
+            double[] data = net.weights(l).getData();
+            for (int k = 0; k < data.length; k++) {
+                if (pruned[l][k]) {
+                    data[k] = 0.0;
+                }
+            }
+        }
+    }
+
+    private static void usage(Options options) {
+        HelpFormatter formatter = new HelpFormatter();
+        formatter.setWidth(80);
+        formatter.printHelp("Pruner [options]", options);
+        System.out.println();
+    }
+
+    /**
+     * Command line interface to prune a model.
+     *
+     * <pre>
+     *  usage: Pruner [options]
+     *  --batch-size <arg>      fine-tuning batch size (default = 10)
+     *  --epochs <arg>          fine-tuning epochs (default = 1)
+     *  --examples <arg>        training examples file, to fine-tune after pruning
+     *  --learning-rate <arg>   fine-tuning learning-rate (default = 0.3)
+     *  --model <arg>           input text model file (required)
+     *  --output <arg>          output sparse model file
+     *  --report                report accuracy and model size at several sparsities
+     *  --sparsity <arg>        fraction of weights to prune in each layer
+     *  --test <arg>            test examples file, to report accuracy
+     *  --threshold <arg>       prune weights whose absolute value is below this
+     * </pre>
+     *
+     * Either {@code --output} and one of {@code --sparsity} or {@code --threshold},
+     * or {@code --report} and {@code --test}, are required.
+     *
+     * @param args command line arguments
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+        String defaultBatchSize = "10";
+        String defaultEpochs = "1";
+        String defaultLearningRate = "0.3";
+
+        Options options = new Options();
+        Option option;
+        option = new Option(null, "model", true, "input text model file (required)");
+        option.setRequired(true);
+        options.addOption(option);
+        options.addOption(new Option(null, "output", true, "output sparse model file"));
+        options.addOption(new Option(null, "sparsity", true, "fraction of weights to prune in each layer"));
+        options.addOption(new Option(null, "threshold", true, "prune weights whose absolute value is below this"));
+        options.addOption(new Option(null, "examples", true, "training examples file, to fine-tune after pruning"));
+        options.addOption(new Option(null, "batch-size", true,
+            String.format("fine-tuning batch size (default = %s)", defaultBatchSize)));
+        options.addOption(new Option(null, "epochs", true,
+            String.format("fine-tuning epochs (default = %s)", defaultEpochs)));
+        options.addOption(new Option(null, "learning-rate", true,
+            String.format("fine-tuning learning-rate (default = %s)", defaultLearningRate)));
+        options.addOption(new Option(null, "test", true, "test examples file, to report accuracy"));
+        options.addOption(new Option(null, "report", false, "report accuracy and model size at several sparsities"));
+
+        CommandLineParser parser = new GnuParser();
+        CommandLine cmdline = null;
+        try {
+            cmdline = parser.parse(options, args);
+        } catch (org.apache.commons.cli.ParseException e) {
+            System.err.println(e.getMessage());
+            usage(options);
+            System.exit(1);
+        }
+        boolean report = cmdline.hasOption("report");
+        boolean valid = report
+            ? cmdline.hasOption("test")
+            : cmdline.hasOption("output") && cmdline.hasOption("sparsity") != cmdline.hasOption("threshold");
+        if (!valid) {
+            usage(options);
+            System.exit(1);
+        }
+
+        File modelFile = new File(cmdline.getOptionValue("model"));
+        File examplesFile = cmdline.hasOption("examples") ? new File(cmdline.getOptionValue("examples")) : null;
+        File testFile = cmdline.hasOption("test") ? new File(cmdline.getOptionValue("test")) : null;
+        int batchSize = Integer.parseInt(cmdline.getOptionValue("batch-size", defaultBatchSize));
+        int epochs = Integer.parseInt(cmdline.getOptionValue("epochs", defaultEpochs));
+        double learningRate = Double.parseDouble(cmdline.getOptionValue("learning-rate", defaultLearningRate));
+
+        if (report) {
+            System.out.println("sparsity\taccuracy\tbytes");
+            for (double sparsity : REPORT_SPARSITIES) {
+                Network net = Network.loadModel(modelFile);
+                FeatureHasher hasher = Models.featureHasher(modelFile, net.getNumUnits(0), null);
+                Pruner pruner = new Pruner(net);
+                pruner.setFeatureHasher(hasher);
+                pruner.pruneToSparsity(sparsity);
+                if (examplesFile != null && sparsity > 0) {
+                    pruner.fineTune(examplesFile, batchSize, epochs, learningRate);
+                }
+                SparseNetwork sparse = new SparseNetwork(net);
+                System.out.println(String.format("%.4f\t%.4f\t%d", sparse.getSparsity(),
+                    Models.accuracy(sparse, testFile, hasher), sparse.getFileSize()));
+            }
+            return;
+        }
+
+        Network net = Network.loadModel(modelFile);
+        FeatureHasher hasher = Models.featureHasher(modelFile, net.getNumUnits(0), null);
+        if (testFile != null) {
+            System.out.println(String.format("accuracy before pruning: %.4f",
+                Models.accuracy(net, testFile, hasher)));
+        }
+        Pruner pruner = new Pruner(net);
+        pruner.setFeatureHasher(hasher);
+        if (cmdline.hasOption("sparsity")) {
+            pruner.pruneToSparsity(Double.parseDouble(cmdline.getOptionValue("sparsity")));
+        } else {
+            pruner.pruneBelow(Double.parseDouble(cmdline.getOptionValue("threshold")));
+        }
+        if (examplesFile != null) {
+            pruner.fineTune(examplesFile, batchSize, epochs, learningRate);
+        }
+        SparseNetwork sparse = new SparseNetwork(net);
+        System.out.println(String.format("sparsity: %.4f", sparse.getSparsity()));
+        if (testFile != null) {
+            System.out.println(String.format("accuracy after pruning: %.4f",
+                Models.accuracy(sparse, testFile, hasher)));
+        }
+        File outputFile = new File(cmdline.getOptionValue("output"));
+        sparse.write(outputFile);
+        FeatureHasher.copyMode(modelFile, outputFile);
+    }
+}
@@ -0,0 +1,327 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.ninja;
+
+import com.basistech.ninja.ejml.ColVector;
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * {@code QuantizedNetwork} is a read-only network with 8-bit weights, for
+ * prediction. Each row of a weight matrix has its own scale, so that
+ * {@code weight = scale * q} with {@code q} from -127 to 127. The bias
+ * weights are kept as floats. The inputs to each layer are quantized the same
+ * way, with a scale found by calibrating on sample examples, so that the
+ * matrix-vector products are integer dot products. The results are
+ * dequantized before the activation function is applied.
+ *
+ * <p>The quantized model format is little-endian:
+ * <pre>
+ *  int     magic (0x4E4A5131, "NJQ1")
+ *  int     number of layers
+ *  int[]   layer sizes, not including bias units
+ *  for each layer:
+ *   float   input scale
+ *   float[] row scales
+ *   float[] bias weights
+ *   byte[]  row-major weights, without the bias column
+ * </pre>
+ */
+public class QuantizedNetwork implements Model {
+    static final int MAGIC = 0x4E4A5131;
+    private static final int MAX_Q = 127;
+    // each term is at most 127 * 127, so an int holds the sum of this many terms
+    private static final int MAX_INT_TERMS = Integer.MAX_VALUE / (MAX_Q * MAX_Q);
+    private final List<Integer> layerSizes;
+    private final float[] inputScales;
+    private final float[][] rowScales;
+    private final float[][] bias;
+    private final byte[][] w;
+    private final Function activationFunction = Functions.SIGMOID;
+
+    QuantizedNetwork(List<Integer> layerSizes, float[] inputScales, float[][] rowScales,
+                     float[][] bias, byte[][] w) {
+        this.layerSizes = layerSizes;
+        this.inputScales = inputScales;
+        this.rowScales = rowScales;
+        this.bias = bias;
+        this.w = w;
+    }
+
+    /**
+     * Quantizes a network. The range of the inputs to each layer is
+     * measured by applying the network to the calibration examples.
+     *
+     * @param net the network
+     * @param calibrationFile examples file, in the format described in {@link Predict}
+     * @return the quantized network
+     * @throws IOException
+     */
+    public static QuantizedNetwork quantize(Network net, File calibrationFile) throws IOException {
+        return quantize(net, calibrationFile, null);
+    }
+
+    /**
+     * Quantizes a network trained with feature hashing.
+     *
+     * @param net the network
+     * @param calibrationFile examples file, in the format described in {@link FeatureHasher}
+     * @param hasher the feature hasher, or {@code null} for integer features
+     * @return the quantized network
+     * @throws IOException
+     */
+    public static QuantizedNetwork quantize(Network net, File calibrationFile, FeatureHasher hasher)
+        throws IOException {
+        return quantize(net, calibrate(net, calibrationFile, hasher));
+    }
+
+    // returns the largest absolute value of the inputs to each layer
+    static double[] calibrate(Network net, File calibrationFile, FeatureHasher hasher) throws IOException {
+        int inputNeurons = net.getNumUnits(0);
+        double[] maxAbs = new double[net.getNumLayers() - 1];
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+            new FileInputStream(calibrationFile), Charsets.UTF_8))) {
+            int lineno = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineno++;
+                ColVector x = Models.parseFeatures(line.split("\\s+"), inputNeurons, lineno, hasher);
+                Network.ForwardVectors fv = net.feedForward(x);
+                for (int l = 0; l < maxAbs.length; l++) {
+                    // skip the bias unit
+                    for (int i = 1; i < fv.a[l].numRows(); i++) {
+                        maxAbs[l] = Math.max(maxAbs[l], Math.abs(fv.a[l].get(i)));
+                    }
+                }
+            }
+        }
+        return maxAbs;
+    }
+
+    /**
+     * Quantizes a network, given the largest absolute value expected in the
+     * inputs to each layer. Larger values are clipped.
+     *
+     * @param net the network
+     * @param inputMaxAbs the range of the inputs, for each weight matrix
+     * @return the quantized network
+     */
+    public static QuantizedNetwork quantize(Network net, double[] inputMaxAbs) {
+        List<Integer> layerSizes = Lists.newArrayList(net.getLayerSizes());
+        int numMatrices = layerSizes.size() - 1;
+        float[] inputScales = new float[numMatrices];
+        float[][] rowScales = new float[numMatrices][];
+        float[][] bias = new float[numMatrices][];
+        byte[][] w = new byte[numMatrices][];
+        for (int l = 0; l < numMatrices; l++) {
+            inputScales[l] = scale(inputMaxAbs[l]);
+            int rows = layerSizes.get(l + 1);
+            int cols = layerSizes.get(l);
+            double[] data = net.getWeightMatrix(l).getData();
+            rowScales[l] = new float[rows];
+            bias[l] = new float[rows];
+            w[l] = new byte[rows * cols];
+            for (int i = 0; i < rows; i++) {
+                int offset = i * (cols + 1);
+                bias[l][i] = (float) data[offset];
+                double max = 0;
+                for (int j = 1; j <= cols; j++) {
+                    max = Math.max(max, Math.abs(data[offset + j]));
+                }
+                rowScales[l][i] = scale(max);
+                for (int j = 0; j < cols; j++) {
+                    w[l][i * cols + j] = quantize(data[offset + j + 1], rowScales[l][i]);
+                }
+            }
+        }
+        return new QuantizedNetwork(layerSizes, inputScales, rowScales, bias, w);
+    }
+
+    private static float scale(double maxAbs) {
+        // an all-zero range still needs a usable scale
+        return maxAbs == 0 ? 1.0f / MAX_Q : (float) (maxAbs / MAX_Q);
+    }
+
+    private static byte quantize(double value, float scale) {
+        long q = Math.round(value / scale);
+        return (byte) Math.max(-MAX_Q, Math.min(MAX_Q, q));
+    }
+
+    @Override
+    public List<Integer> getLayerSizes() {
+        return Collections.unmodifiableList(layerSizes);
+    }
+
+    /**
+     * Applies the input to the network. Safe to call from multiple threads.
+     *
+     * @param values the input values
+     * @return the network output for the given input
+     */
+    @Override
+    public ColVector apply(double... values) {
+        double[] a = values;
+        for (int l = 0; l < w.length; l++) {
+            int rows = layerSizes.get(l + 1);
+            int cols = layerSizes.get(l);
+            float inputScale = inputScales[l];
+            byte[] q = new byte[cols];
+            for (int j = 0; j < cols; j++) {
+                q[j] = quantize(a[j], inputScale);
+            }
+            byte[] m = w[l];
+            double[] next = new double[rows];
+            for (int i = 0; i < rows; i++) {
+                int offset = i * cols;
+                // wide rows are summed in chunks that can't overflow an int
+                long sum = 0;
+                for (int start = 0; start < cols; start += MAX_INT_TERMS) {
+                    int end = Math.min(cols, start + MAX_INT_TERMS);
+                    int partial = 0;
+                    for (int j = start; j < end; j++) {
+                        partial += m[offset + j] * q[j];
+                    }
+                    sum += partial;
+                }
+                next[i] = activationFunction.apply((double) sum * rowScales[l][i] * inputScale + bias[l][i]);
+            }
+            a = next;
+        }
+        return new ColVector(a);
+    }
+
+    /**
+     * Loads a model in the quantized model format.
+     *
+     * @param file the model file
+     * @return a new network instance
+     * @throws IOException
+     */
+    public static QuantizedNetwork load(File file) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            if (in.getInt() != MAGIC) {
+                throw new IOException(file + ": not a quantized model file");
+            }
+            int numLayers = in.getInt();
+            List<Integer> layerSizes = Lists.newArrayList();
+            for (int l = 0; l < numLayers; l++) {
+                layerSizes.add(in.getInt());
+            }
+            float[] inputScales = new float[numLayers - 1];
+            float[][] rowScales = new float[numLayers - 1][];
+            float[][] bias = new float[numLayers - 1][];
+            byte[][] w = new byte[numLayers - 1][];
+            for (int l = 0; l < numLayers - 1; l++) {
+                int rows = layerSizes.get(l + 1);
+                inputScales[l] = in.getFloat();
+                rowScales[l] = new float[rows];
+                bias[l] = new float[rows];
+                w[l] = new byte[rows * layerSizes.get(l)];
+                for (int i = 0; i < rows; i++) {
+                    rowScales[l][i] = in.getFloat();
+                }
+                for (int i = 0; i < rows; i++) {
+                    bias[l][i] = in.getFloat();
+                }
+                in.get(w[l]);
+            }
+            return new QuantizedNetwork(layerSizes, inputScales, rowScales, bias, w);
+        } catch (BufferUnderflowException e) {
+            throw new IOException(file + ": truncated quantized model file", e);
+        }
+    }
+
+    /**
+     * Writes the network in the quantized model format.
+     *
+     * @param file the output file
+     * @throws IOException
+     */
+    public void write(File file) throws IOException {
+        int size = 4 * (2 + layerSizes.size());
+        for (int l = 0; l < w.length; l++) {
+            size += 4 + 8 * rowScales[l].length + w[l].length;
+        }
+        ByteBuffer out = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(MAGIC);
+        out.putInt(layerSizes.size());
+        for (int layerSize : layerSizes) {
+            out.putInt(layerSize);
+        }
+        for (int l = 0; l < w.length; l++) {
+            out.putFloat(inputScales[l]);
+            for (float scale : rowScales[l]) {
+                out.putFloat(scale);
+            }
+            for (float b : bias[l]) {
+                out.putFloat(b);
+            }
+            out.put(w[l]);
+        }
+        Files.write(file.toPath(), out.array());
+    }
+
+    /**
+     * Command line interface to quantize a model. Reports the accuracy of the
+     * original and quantized models on the test examples.
+     *
+     * <pre>
+     *  Usage: QuantizedNetwork model calibration-examples test-examples quantized-model
+     * </pre>
+     *
+     * @param args command line arguments
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 4) {
+            System.err.println("Usage: QuantizedNetwork model calibration-examples test-examples quantized-model");
+            System.exit(1);
+        }
+        File modelFile = new File(args[0]);
+        File testFile = new File(args[2]);
+        File quantizedFile = new File(args[3]);
+        Network net = Network.loadModel(modelFile);
+        FeatureHasher hasher = Models.featureHasher(modelFile, net.getNumUnits(0), null);
+        QuantizedNetwork quantized = quantize(net, new File(args[1]), hasher);
+        quantized.write(quantizedFile);
+        FeatureHasher.copyMode(modelFile, quantizedFile);
+
+        double before = Models.accuracy(net, testFile, hasher);
+        double after = Models.accuracy(quantized, testFile, hasher);
+        System.out.println(String.format("full precision: %d bytes, accuracy %.4f",
+            8 * net.getNumWeights(), before));
+        System.out.println(String.format("quantized:      %d bytes, accuracy %.4f",
+            quantizedFile.length(), after));
+        System.out.println(String.format("accuracy delta: %+.4f", after - before));
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.ninja;
+
+import com.basistech.ninja.ejml.ColVector;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code ReloadingNetwork} holds a model loaded from a file and replaces it
+ * when the file changes, without restarting the process. The file is polled in
+ * a background thread; a new version is loaded there, checked to have the same
+ * layer sizes as the current one, and then swapped in atomically. Calls to
+ * {@link #apply(double...)} never wait: calls in flight finish on the network
+ * they started with, and later calls see the new one.
+ *
+ * <p>To avoid loading a half-written file, writers should write to a temporary
+ * file and rename it over the model file. A version that fails to load or has
+ * the wrong architecture is logged and ignored, and the current model is kept.
+ */
+public class ReloadingNetwork implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(ReloadingNetwork.class);
+    private final File file;
+    private final List<Integer> layerSizes;
+    private final ScheduledExecutorService scheduler;
+    private volatile Network current;
+    private long lastModified;
+
+    /**
+     * Loads the model and starts watching its file.
+     *
+     * @param file the model file
+     * @param pollMillis how often to check the file for changes, in milliseconds;
+     *                   zero or less disables the background check, so that only
+     *                   explicit calls to {@link #reload()} replace the model
+     * @throws IOException if the initial model cannot be loaded
+     */
+    public ReloadingNetwork(File file, long pollMillis) throws IOException {
+        this.file = file;
+        lastModified = file.lastModified();
+        current = Network.loadModel(file);
+        layerSizes = current.getLayerSizes();
+        if (pollMillis > 0) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("ninja-reload-%d").setDaemon(true).build());
+            scheduler.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        reload();
+                    } catch (IOException | RuntimeException e) {
+                        LOG.warn("Failed to reload {}; keeping the current model", ReloadingNetwork.this.file, e);
+                    }
+                }
+            }, pollMillis, pollMillis, TimeUnit.MILLISECONDS);
+        } else {
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Returns the network currently being served. Callers that make several
+     * related calls should hold on to the returned instance so that they all
+     * see the same weights.
+     *
+     * @return the current network
+     */
+    public Network get() {
+        return current;
+    }
+
+    /**
+     * Applies the input to the current network.
+     *
+     * @param values the input values
+     * @return the network output for the given input
+     */
+    public ColVector apply(double... values) {
+        return current.apply(values);
+    }
+
+    /**
+     * Applies the input to the current network.
+     *
+     * @param input the input vector
+     * @return the network output for the given input
+     */
+    public ColVector apply(ColVector input) {
+        return current.apply(input);
+    }
+
+    /**
+     * Reloads the model if its file has changed since it was last loaded.
+     * Throws IllegalStateException if the new model's layer sizes differ from
+     * the original ones; the current model is kept in that case.
+     *
+     * @return {@code true} if a new model was swapped in
+     * @throws IOException if the new model cannot be read
+     */
+    public synchronized boolean reload() throws IOException {
+        long modified = file.lastModified();
+        if (modified == lastModified) {
+            return false;
+        }
+        Network next = Network.loadModel(file);
+        if (file.lastModified() != modified) {
+            // still being written; pick it up on the next check
+            return false;
+        }
+        lastModified = modified;
+        if (!layerSizes.equals(next.getLayerSizes())) {
+            throw new IllegalStateException(String.format(
+                "%s: layer sizes changed from %s to %s", file, layerSizes, next.getLayerSizes()));
+        }
+        current = next;
+        LOG.info("Reloaded {}", file);
+        return true;
+    }
+
+    /**
+     * Stops watching the model file. The current model remains usable.
+     */
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.ninja;
+
+import com.basistech.ninja.ejml.ColVector;
+import com.basistech.ninja.ejml.NinjaMatrix;
+import com.google.common.collect.Lists;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * {@code SparseNetwork} is a read-only network for prediction with a pruned
+ * model (see {@link Pruner}). The weight matrices are stored in compressed
+ * sparse row (CSR) form, so prediction only touches the weights that are not
+ * zero. Bias weights are kept in a dense array.
+ *
+ * <p>The sparse model format is little-endian:
+ * <pre>
+ *  int     magic (0x4E4A5331, "NJS1")
+ *  int     number of layers
+ *  int[]   layer sizes, not including bias units
+ *  for each layer:
+ *   int      number of non-zero weights, not including bias weights
+ *   double[] bias weights
+ *   int[]    start of each row in the arrays below, and their length
+ *   int[]    input unit of each weight, starting at 0
+ *   double[] weights
+ * </pre>
+ */
+public class SparseNetwork implements Model {
+    static final int MAGIC = 0x4E4A5331;
+    private final List<Integer> layerSizes;
+    private final double[][] bias;
+    private final int[][] rowStart;
+    private final int[][] columns;
+    private final double[][] weights;
+    private final Function activationFunction = Functions.SIGMOID;
+
+    SparseNetwork(List<Integer> layerSizes, double[][] bias, int[][] rowStart, int[][] columns,
+                  double[][] weights) {
+        this.layerSizes = layerSizes;
+        this.bias = bias;
+        this.rowStart = rowStart;
+        this.columns = columns;
+        this.weights = weights;
+    }
+
+    /**
+     * Constructs a sparse network with the non-zero weights of a network.
+     *
+     * @param net the network
+     */
+    public SparseNetwork(Network net) {
+        layerSizes = Lists.newArrayList(net.getLayerSizes());
+        int numMatrices = layerSizes.size() - 1;
+        bias = new double[numMatrices][];
+        rowStart = new int[numMatrices][];
+        columns = new int[numMatrices][];
+        weights = new double[numMatrices][];
+        for (int l = 0; l < numMatrices; l++) {
+            NinjaMatrix m = net.weights(l);
+            int rows = m.numRows();
+            int cols = m.numCols();
+            double[] data = m.getData();
+            int nonZero = 0;
+            for (int i = 0; i < rows; i++) {
+                for (int j = 1; j < cols; j++) {
+                    if (data[i * cols + j] != 0.0) {
+                        nonZero++;
+                    }
+                }
+            }
+            bias[l] = new double[rows];
+            rowStart[l] = new int[rows + 1];
+            columns[l] = new int[nonZero];
+            weights[l] = new double[nonZero];
+            int k = 0;
+            for (int i = 0; i < rows; i++) {
+                bias[l][i] = data[i * cols];
+                rowStart[l][i] = k;
+                for (int j = 1; j < cols; j++) {
+                    double value = data[i * cols + j];
+                    if (value != 0.0) {
+                        columns[l][k] = j - 1;
+                        weights[l][k] = value;
+                        k++;
+                    }
+                }
+            }
+            rowStart[l][rows] = k;
+        }
+    }
+
+    @Override
+    public List<Integer> getLayerSizes() {
+        return Collections.unmodifiableList(layerSizes);
+    }
+
+    /**
+     * Returns the fraction of weights that are zero, not counting bias weights.
+     *
+     * @return the sparsity, from 0 to 1
+     */
+    public double getSparsity() {
+        long total = 0;
+        long nonZero = 0;
+        for (int l = 0; l < weights.length; l++) {
+            total += (long) layerSizes.get(l) * layerSizes.get(l + 1);
+            nonZero += weights[l].length;
+        }
+        return total == 0 ? 0.0 : 1.0 - (double) nonZero / total;
+    }
+
+    /**
+     * Applies the input to the network. Safe to call from multiple threads.
+     *
+     * @param values the input values
+     * @return the network output for the given input
+     */
+    @Override
+    public ColVector apply(double... values) {
+        double[] a = values;
+        for (int l = 0; l < weights.length; l++) {
+            double[] b = bias[l];
+            int[] start = rowStart[l];
+            int[] index = columns[l];
+            double[] v = weights[l];
+            double[] next = new double[b.length];
+            for (int i = 0; i < next.length; i++) {
+                double sum = b[i];
+                for (int k = start[i]; k < start[i + 1]; k++) {
+                    sum += v[k] * a[index[k]];
+                }
+                next[i] = activationFunction.apply(sum);
+            }
+            a = next;
+        }
+        return new ColVector(a);
+    }
+
+    /**
+     * Returns the size of the network in the sparse model format.
+     *
+     * @return the number of bytes
+     */
+    public long getFileSize() {
+        long size = 4 * (2 + layerSizes.size());
+        for (int l = 0; l < weights.length; l++) {
+            size += 4 + 8 * bias[l].length + 4 * rowStart[l].length + 12L * weights[l].length;
+        }
+        return size;
+    }
+
+    /**
+     * Loads a model in the sparse model format.
+     *
+     * @param file the model file
+     * @return a new network instance
+     * @throws IOException
+     */
+    public static SparseNetwork load(File file) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            if (in.getInt() != MAGIC) {
+                throw new IOException(file + ": not a sparse model file");
+            }
+            int numLayers = in.getInt();
+            List<Integer> layerSizes = Lists.newArrayList();
+            for (int l = 0; l < numLayers; l++) {
+                layerSizes.add(in.getInt());
+            }
+            double[][] bias = new double[numLayers - 1][];
+            int[][] rowStart = new int[numLayers - 1][];
+            int[][] columns = new int[numLayers - 1][];
+            double[][] weights = new double[numLayers - 1][];
+            for (int l = 0; l < numLayers - 1; l++) {
+                int rows = layerSizes.get(l + 1);
+                int nonZero = in.getInt();
+                bias[l] = new double[rows];
+                rowStart[l] = new int[rows + 1];
+                columns[l] = new int[nonZero];
+                weights[l] = new double[nonZero];
+                in.asDoubleBuffer().get(bias[l]);
+                in.position(in.position() + 8 * rows);
+                in.asIntBuffer().get(rowStart[l]);
+                in.position(in.position() + 4 * (rows + 1));
+                in.asIntBuffer().get(columns[l]);
+                in.position(in.position() + 4 * nonZero);
+                in.asDoubleBuffer().get(weights[l]);
+                in.position(in.position() + 8 * nonZero);
+            }
+            return new SparseNetwork(layerSizes, bias, rowStart, columns, weights);
+        } catch (BufferUnderflowException e) {
+            throw new IOException(file + ": truncated sparse model file", e);
+        }
+    }
+
+    /**
+     * Writes the network in the sparse model format.
+     *
+     * @param file the output file
+     * @throws IOException
+     */
+    public void write(File file) throws IOException {
+        ByteBuffer out = ByteBuffer.allocate((int) getFileSize()).order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(MAGIC);
+        out.putInt(layerSizes.size());
+        for (int layerSize : layerSizes) {
+            out.putInt(layerSize);
+        }
+        for (int l = 0; l < weights.length; l++) {
+            out.putInt(weights[l].length);
+            out.asDoubleBuffer().put(bias[l]);
+            out.position(out.position() + 8 * bias[l].length);
+            out.asIntBuffer().put(rowStart[l]);
+            out.position(out.position() + 4 * rowStart[l].length);
+            out.asIntBuffer().put(columns[l]);
+            out.position(out.position() + 4 * columns[l].length);
+            out.asDoubleBuffer().put(weights[l]);
+            out.position(out.position() + 8 * weights[l].length);
+        }
+        Files.write(file.toPath(), out.array());
+    }
+}
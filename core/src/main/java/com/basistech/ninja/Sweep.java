@@ -0,0 +1,346 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.ninja;
+
+import com.basistech.ninja.ejml.KernelsLoader;
+import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.GnuParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * {@code Sweep} trains networks with many combinations of hyperparameters at
+ * the same time, and ranks them by accuracy on validation examples. The
+ * examples files are parsed once, into a {@link Dataset} that all of the
+ * training threads share.
+ *
+ * <p>Each network is constructed by the thread that trains it, from a random
+ * number generator seeded with the position of its configuration, so the
+ * results are repeatable. Only the best network is kept; the other outcomes
+ * keep just their accuracy and time, so memory grows with the number of
+ * threads, not the number of configurations.
+ */
+public class Sweep {
+    // the seed of the first configuration's network; the others add their position
+    private static final long SEED = 8723643324L;
+    private final Dataset train;
+    private final Dataset validation;
+    private final int epochs;
+    private final Object bestLock = new Object();
+    private Outcome best;
+    private Network bestNetwork;
+
+    /**
+     * One combination of hyperparameters.
+     */
+    public static final class Config {
+        private final List<Integer> layerSizes;
+        private final int batchSize;
+        private final double learningRate;
+
+        public Config(List<Integer> layerSizes, int batchSize, double learningRate) {
+            this.layerSizes = layerSizes;
+            this.batchSize = batchSize;
+            this.learningRate = learningRate;
+        }
+
+        public List<Integer> getLayerSizes() {
+            return layerSizes;
+        }
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public double getLearningRate() {
+            return learningRate;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("layer-sizes %s, batch-size %d, learning-rate %s",
+                Joiner.on(' ').join(layerSizes), batchSize, learningRate);
+        }
+    }
+
+    /**
+     * The validation accuracy and training time of a {@link Config}, and its
+     * trained network if it was the best.
+     */
+    public static final class Outcome implements Comparable<Outcome> {
+        private final Config config;
+        private final int index;
+        private final Network net;
+        private final double accuracy;
+        private final long millis;
+
+        Outcome(Config config, int index, Network net, double accuracy, long millis) {
+            this.config = config;
+            this.index = index;
+            this.net = net;
+            this.accuracy = accuracy;
+            this.millis = millis;
+        }
+
+        public Config getConfig() {
+            return config;
+        }
+
+        /**
+         * Returns the trained network of the best outcome.
+         *
+         * @return the network, or {@code null} if this isn't the best outcome
+         */
+        public Network getNetwork() {
+            return net;
+        }
+
+        public double getAccuracy() {
+            return accuracy;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+
+        // higher accuracy is better, then the earlier configuration
+        @Override
+        public int compareTo(Outcome other) {
+            int result = Double.compare(accuracy, other.accuracy);
+            return result != 0 ? result : Integer.compare(other.index, index);
+        }
+    }
+
+    public Sweep(Dataset train, Dataset validation, int epochs) {
+        this.train = train;
+        this.validation = validation;
+        this.epochs = epochs;
+    }
+
+    Outcome run(Config config, int index) {
+        long start = System.nanoTime();
+        Network net = new Network(KernelsLoader.get(), config.getLayerSizes(), new Random(SEED + index));
+        for (int i = 0; i < epochs; i++) {
+            TrainingListener.Span span = Profiler.ENABLED ? Profiler.epochStarted(i + 1) : null;
+            train.trainEpoch(net, config.getBatchSize(), config.getLearningRate());
+            if (Profiler.ENABLED) {
+                span.end();
+            }
+        }
+        double accuracy = validation.accuracy(net.freeze());
+        Outcome outcome = new Outcome(config, index, null, accuracy, (System.nanoTime() - start) / 1000000);
+        synchronized (bestLock) {
+            if (best == null || outcome.compareTo(best) > 0) {
+                best = outcome;
+                bestNetwork = net;
+            }
+        }
+        return outcome;
+    }
+
+    /**
+     * Trains and evaluates a network for each configuration.
+     *
+     * @param configs the configurations
+     * @param threads the number of networks to train at the same time
+     * @return the outcomes, best first; only the first has a network
+     * @throws InterruptedException
+     * @throws ExecutionException
+     */
+    public List<Outcome> run(List<Config> configs, int threads) throws InterruptedException, ExecutionException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads,
+            new ThreadFactoryBuilder().setNameFormat("sweep-%d").setDaemon(true).build());
+        try {
+            synchronized (bestLock) {
+                best = null;
+                bestNetwork = null;
+            }
+            List<Future<Outcome>> futures = Lists.newArrayList();
+            for (int i = 0; i < configs.size(); i++) {
+                final Config config = configs.get(i);
+                final int index = i;
+                futures.add(executor.submit(new Callable<Outcome>() {
+                    @Override
+                    public Outcome call() {
+                        return run(config, index);
+                    }
+                }));
+            }
+            List<Outcome> outcomes = Lists.newArrayList();
+            for (Future<Outcome> future : futures) {
+                outcomes.add(future.get());
+            }
+            Collections.sort(outcomes, Collections.reverseOrder());
+            synchronized (bestLock) {
+                if (!outcomes.isEmpty()) {
+                    Outcome first = outcomes.get(0);
+                    outcomes.set(0, new Outcome(first.config, first.index, bestNetwork, first.accuracy, first.millis));
+                }
+                best = null;
+                bestNetwork = null;
+            }
+            return outcomes;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void usage(Options options) {
+        HelpFormatter formatter = new HelpFormatter();
+        formatter.setWidth(80);
+        formatter.printHelp("Sweep [options]", options);
+        System.out.println();
+    }
+
+    /**
+     * Command line interface to run a sweep. Every combination of the given
+     * layer sizes, batch sizes and learning rates is trained.
+     *
+     * <pre>
+     *  usage: Sweep [options]
+     *  --batch-size <arg>      batch sizes (default = 10)
+     *  --best-model <arg>      output file for the best model
+     *  --epochs <arg>          epochs (default = 5)
+     *  --examples <arg>        input examples file (required)
+     *  --feature-hashing <arg> hash feature keys into the input layer: unsigned or signed
+     *  --layer-sizes <arg>     comma-separated layer sizes, e.g. 784,30,10 784,100,10 (required)
+     *  --learning-rate <arg>   learning rates (default = 0.7)
+     *  --threads <arg>         number of networks to train at once (default = processors)
+     *  --validation <arg>      validation examples file (required)
+     * </pre>
+     *
+     * @param args command line arguments
+     * @throws IOException
+     * @throws InterruptedException
+     * @throws ExecutionException
+     */
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+        String defaultBatchSize = "10";
+        String defaultEpochs = "5";
+        String defaultLearningRate = "0.7";
+        String defaultThreads = String.valueOf(Runtime.getRuntime().availableProcessors());
+
+        Options options = new Options();
+        Option option;
+        option = new Option(null, "examples", true, "input examples file (required)");
+        option.setRequired(true);
+        options.addOption(option);
+        option = new Option(null, "validation", true, "validation examples file (required)");
+        option.setRequired(true);
+        options.addOption(option);
+        option = new Option(null, "layer-sizes", true,
+            "comma-separated layer sizes, e.g. 784,30,10 784,100,10 (required)");
+        option.setRequired(true);
+        option.setArgs(Option.UNLIMITED_VALUES);
+        options.addOption(option);
+        option = new Option(null, "batch-size", true,
+            String.format("batch sizes (default = %s)", defaultBatchSize));
+        option.setArgs(Option.UNLIMITED_VALUES);
+        options.addOption(option);
+        option = new Option(null, "learning-rate", true,
+            String.format("learning rates (default = %s)", defaultLearningRate));
+        option.setArgs(Option.UNLIMITED_VALUES);
+        options.addOption(option);
+        options.addOption(new Option(null, "epochs", true,
+            String.format("epochs (default = %s)", defaultEpochs)));
+        options.addOption(new Option(null, "threads", true,
+            "number of networks to train at once (default = processors)"));
+        options.addOption(new Option(null, "best-model", true, "output file for the best model"));
+        options.addOption(new Option(null, "feature-hashing", true,
+            "hash feature keys into the input layer: unsigned or signed"));
+
+        CommandLineParser parser = new GnuParser();
+        CommandLine cmdline = null;
+        try {
+            cmdline = parser.parse(options, args);
+        } catch (org.apache.commons.cli.ParseException e) {
+            System.err.println(e.getMessage());
+            usage(options);
+            System.exit(1);
+        }
+
+        List<List<Integer>> architectures = Lists.newArrayList();
+        for (String value : cmdline.getOptionValues("layer-sizes")) {
+            List<Integer> layerSizes = Lists.newArrayList();
+            for (String s : value.split(",")) {
+                layerSizes.add(Integer.parseInt(s.trim()));
+            }
+            architectures.add(layerSizes);
+        }
+        int inputNeurons = architectures.get(0).get(0);
+        int outputNeurons = architectures.get(0).get(architectures.get(0).size() - 1);
+        for (List<Integer> layerSizes : architectures) {
+            if (layerSizes.get(0) != inputNeurons || layerSizes.get(layerSizes.size() - 1) != outputNeurons) {
+                System.err.println("All layer sizes must have the same input and output layers");
+                System.exit(1);
+            }
+        }
+        String[] batchSizes = cmdline.hasOption("batch-size")
+            ? cmdline.getOptionValues("batch-size") : new String[] {defaultBatchSize};
+        String[] learningRates = cmdline.hasOption("learning-rate")
+            ? cmdline.getOptionValues("learning-rate") : new String[] {defaultLearningRate};
+        List<Config> configs = Lists.newArrayList();
+        for (List<Integer> layerSizes : architectures) {
+            for (String batchSize : batchSizes) {
+                for (String learningRate : learningRates) {
+                    configs.add(new Config(layerSizes, Integer.parseInt(batchSize), Double.parseDouble(learningRate)));
+                }
+            }
+        }
+
+        String hashing = cmdline.getOptionValue("feature-hashing");
+        FeatureHasher hasher = hashing == null ? null : FeatureHasher.forMode(hashing, inputNeurons);
+        Dataset train = Dataset.load(new File(cmdline.getOptionValue("examples")),
+            inputNeurons, outputNeurons, hasher);
+        Dataset validation = Dataset.load(new File(cmdline.getOptionValue("validation")),
+            inputNeurons, outputNeurons, hasher);
+        int epochs = Integer.parseInt(cmdline.getOptionValue("epochs", defaultEpochs));
+        int threads = Integer.parseInt(cmdline.getOptionValue("threads", defaultThreads));
+
+        List<Outcome> outcomes = new Sweep(train, validation, epochs).run(configs, threads);
+        System.out.println("rank\taccuracy\tseconds\tconfiguration");
+        for (int i = 0; i < outcomes.size(); i++) {
+            Outcome outcome = outcomes.get(i);
+            System.out.println(String.format("%d\t%.4f\t%.1f\t%s", i + 1, outcome.getAccuracy(),
+                outcome.getMillis() / 1000.0, outcome.getConfig()));
+        }
+        if (cmdline.hasOption("best-model")) {
+            File modelFile = new File(cmdline.getOptionValue("best-model"));
+            outcomes.get(0).getNetwork().writeModel(modelFile);
+            FeatureHasher.writeMode(hashing, modelFile);
+        }
+    }
+}
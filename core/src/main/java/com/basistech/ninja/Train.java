@@ -20,7 +20,12 @@
 package com.basistech.ninja;
 
 import com.basistech.ninja.ejml.ColVector;
+import com.basistech.ninja.ejml.Kernels;
+import com.basistech.ninja.ejml.KernelsLoader;
+import com.basistech.ninja.ejml.NinjaMatrix;
+import com.google.common.base.Charsets;
 import com.google.common.collect.Lists;
+import com.google.common.io.Files;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
 import org.apache.commons.cli.GnuParser;
@@ -53,25 +58,217 @@ import java.util.List;
  * </pre>
  */
 public class Train {
+    private static final String DEFAULT_TEMPERATURE = "1";
+    private static final String DEFAULT_ALPHA = "1";
+    private static final String DEFAULT_UNIFORM_FRACTION = "0.5";
     private final Network net;
+    // non-null when training in single precision
+    private final FloatNetwork floatNet;
     private final File examplesFile;
+    // non-null with feature hashing
+    private FeatureHasher hasher;
+    // non-null with negative sampling, which needs labels instead of y
+    private NegativeSampling sampling;
+    // non-null when distilling a teacher model
+    private Distillation distillation;
+    // position of the next batch in the epoch
+    private int position;
+    // with gradient accumulation, the number of examples read at a time, and the accumulated gradient
+    private int microBatchSize;
+    private NinjaMatrix[] gradient;
+    // non-null with importance sampling, which keeps the examples in memory
+    private ImportanceSampling importance;
+    private List<String> examples;
     private ColVector[] x;
     private ColVector[] y;
+    private int[] labels;
 
     Train(List<Integer> layerSizes, File examplesFile) {
-        net = new Network(layerSizes);
+        this(layerSizes, examplesFile, KernelsLoader.get());
+    }
+
+    Train(List<Integer> layerSizes, File examplesFile, Kernels kernels) {
+        this(layerSizes, examplesFile, kernels, false);
+    }
+
+    Train(List<Integer> layerSizes, File examplesFile, Kernels kernels, boolean singlePrecision) {
+        net = new Network(kernels, layerSizes);
+        floatNet = singlePrecision ? new FloatNetwork(net) : null;
+        this.examplesFile = examplesFile;
+    }
+
+    /**
+     * Constructs a trainer that continues training an existing network.
+     *
+     * @param net the network, which is updated in place
+     * @param examplesFile the examples file
+     */
+    public Train(Network net, File examplesFile) {
+        this.net = net;
+        floatNet = null;
         this.examplesFile = examplesFile;
     }
 
+    void setFeatureHasher(FeatureHasher hasher) {
+        this.hasher = hasher;
+    }
+
+    void setNegativeSamples(int negatives) {
+        sampling = new NegativeSampling(net, negatives);
+    }
+
+    void setDistillation(Distillation distillation) {
+        if (microBatchSize > 0) {
+            // the teacher's soft targets are cached for every example, which micro-batches are meant to avoid
+            throw new IllegalStateException("a teacher can't be used with micro-batches");
+        }
+        List<Integer> teacherSizes = distillation.getTeacher().getLayerSizes();
+        if (!teacherSizes.get(0).equals(net.getNumUnits(0))
+            || !teacherSizes.get(teacherSizes.size() - 1).equals(net.getNumUnits(net.getNumLayers() - 1))) {
+            throw new IllegalArgumentException(String.format(
+                "teacher has different inputs or outputs: %s and %s", teacherSizes, net.getLayerSizes()));
+        }
+        this.distillation = distillation;
+    }
+
+    void setMicroBatchSize(int microBatchSize) {
+        if (microBatchSize <= 0) {
+            throw new IllegalArgumentException("micro-batch size must be positive: " + microBatchSize);
+        }
+        if (floatNet != null || sampling != null || distillation != null) {
+            throw new IllegalStateException(
+                "gradient accumulation needs double precision, without negative sampling or a teacher");
+        }
+        this.microBatchSize = microBatchSize;
+        gradient = net.newGradient();
+    }
+
+    void setCheckpointInterval(int interval) {
+        if (floatNet != null || sampling != null) {
+            throw new IllegalStateException("checkpointing needs double precision, without negative sampling");
+        }
+        net.setCheckpointInterval(interval);
+    }
+
+    void setImportanceSampling(double uniform) throws IOException {
+        if (floatNet != null || sampling != null) {
+            throw new IllegalStateException("importance sampling needs double precision, without negative sampling");
+        }
+        examples = Files.readLines(examplesFile, Charsets.UTF_8);
+        importance = new ImportanceSampling(examples.size(), uniform);
+        gradient = net.newGradient();
+    }
+
     void train(int batchSize, int epochs, double learningRate, File modelFile) throws IOException {
         for (int i = 0; i < epochs; i++) {
             System.out.println("Epoch: " + (i + 1));
-            for (List<String> batch : new ExamplesIterator(examplesFile, batchSize)) {
-                parseExamples(batch);
-                net.trainBatch(x, y, learningRate);
+            position = 0;
+            TrainingListener.Span span = Profiler.ENABLED ? Profiler.epochStarted(i + 1) : null;
+            if (importance != null) {
+                trainSampled(i == 0, batchSize, learningRate);
+            } else if (microBatchSize > 0) {
+                trainMicroBatches(batchSize, learningRate);
+            } else {
+                for (List<String> batch : new ExamplesIterator(examplesFile, batchSize)) {
+                    trainBatch(batch, learningRate);
+                }
+            }
+            if (Profiler.ENABLED) {
+                span.end();
+            }
+        }
+        if (floatNet == null) {
+            net.writeModel(modelFile);
+        } else {
+            floatNet.write(modelFile);
+        }
+        FeatureHasher.writeMode(hasher == null ? null : hasher.getMode(), modelFile);
+    }
+
+    /**
+     * Parses a batch of example lines, as read by {@link ExamplesIterator},
+     * and updates the weights.
+     *
+     * @param batch the example lines
+     * @param learningRate the learning rate
+     */
+    public void trainBatch(List<String> batch, double learningRate) {
+        parseExamples(batch);
+        if (distillation != null) {
+            y = distillation.targets(position, x, labels);
+        }
+        position += x.length;
+        if (sampling != null) {
+            sampling.trainBatch(x, labels, learningRate);
+        } else if (floatNet == null) {
+            net.trainBatch(x, y, learningRate);
+        } else {
+            floatNet.trainBatch(x, y, learningRate);
+        }
+    }
+
+    // reads microBatchSize examples at a time and updates the weights every batchSize examples
+    void trainMicroBatches(int batchSize, double learningRate) throws IOException {
+        int inBatch = 0;
+        TrainingListener.Span span = null;
+        for (List<String> micro : new ExamplesIterator(examplesFile, microBatchSize)) {
+            int start = 0;
+            while (start < micro.size()) {
+                if (Profiler.ENABLED && inBatch == 0) {
+                    span = Profiler.batchStarted(batchSize);
+                }
+                int count = Math.min(micro.size() - start, batchSize - inBatch);
+                parseExamples(micro.subList(start, start + count));
+                net.accumulateGradient(x, y, gradient);
+                start += count;
+                inBatch += count;
+                if (inBatch == batchSize) {
+                    net.applyGradient(gradient, inBatch, learningRate);
+                    inBatch = 0;
+                    if (Profiler.ENABLED) {
+                        span.end();
+                    }
+                }
+            }
+        }
+        if (inBatch > 0) {
+            net.applyGradient(gradient, inBatch, learningRate);
+            if (Profiler.ENABLED) {
+                span.end();
+            }
+        }
+    }
+
+    // draws as many examples as there are, by loss; the first epoch goes through them in order to record their losses
+    void trainSampled(boolean first, int batchSize, double learningRate) {
+        int n = importance.getNumExamples();
+        if (!first) {
+            importance.update();
+        }
+        for (int start = 0; start < n; start += batchSize) {
+            int count = Math.min(batchSize, n - start);
+            TrainingListener.Span span = Profiler.ENABLED ? Profiler.batchStarted(count) : null;
+            int[] picked = new int[count];
+            double[] weights = first ? null : new double[count];
+            List<String> batch = Lists.newArrayListWithCapacity(count);
+            for (int i = 0; i < count; i++) {
+                picked[i] = first ? start + i : importance.sample();
+                if (!first) {
+                    weights[i] = importance.weight(picked[i]);
+                }
+                batch.add(examples.get(picked[i]));
+            }
+            parseExamples(batch);
+            double[] losses = new double[count];
+            net.accumulateGradient(x, y, weights, losses, gradient);
+            net.applyGradient(gradient, count, learningRate);
+            for (int i = 0; i < count; i++) {
+                importance.setLoss(picked[i], losses[i]);
+            }
+            if (Profiler.ENABLED) {
+                span.end();
             }
         }
-        net.writeModel(modelFile);
     }
 
     void parseExamples(List<String> lines) {
@@ -79,12 +276,11 @@ public class Train {
         int outputNeurons = net.getNumUnits(net.getNumLayers() - 1);
 
         x = new ColVector[lines.size()];
-        y = new ColVector[lines.size()];
+        y = sampling == null ? new ColVector[lines.size()] : null;
+        labels = new int[lines.size()];
 
         int lineno = 0;
         for (String line : lines) {
-            x[lineno] = new ColVector(inputNeurons);
-            y[lineno] = new ColVector(outputNeurons);
 
             // 1 1:1 2:1 5:1
             String[] fields = line.split("\\s+");
@@ -98,26 +294,88 @@ public class Train {
                                 yval,
                                 outputNeurons));
             }
-            y[lineno].set(yval, 1.0);
-            for (int i = 1; i < fields.length; i++) {
-                String[] feature = fields[i].split(":");
-                int index = Integer.parseInt(feature[0]);
-                double value = Double.parseDouble(feature[1]);
-                if (index < 0 || index >= inputNeurons) {
-                    // TODO: Fix bogus lineno
-                    throw new RuntimeException(
-                            String.format(
-                                    "line %d: index (%d) out of range [0, %d); wrong network architecture?",
-                                    lineno + 1,
-                                    index,
-                                    inputNeurons));
-                }
-                x[lineno].set(index, value);
+            labels[lineno] = yval;
+            if (y != null) {
+                y[lineno] = new ColVector(outputNeurons);
+                y[lineno].set(yval, 1.0);
             }
+            x[lineno] = Models.parseFeatures(fields, inputNeurons, lineno + 1, hasher);
             lineno++;
         }
     }
 
+    private static void addSamplingOptions(Options options) {
+        options.addOption(new Option(null, "negative-samples", true,
+            "train the output layer on the label and this many other labels"));
+        options.addOption(new Option(null, "importance-sampling", false,
+            "after the first epoch, pick the examples of each batch by their loss"));
+        options.addOption(new Option(null, "uniform-fraction", true,
+            String.format("fraction of importance sampling that is uniform (default = %s)",
+                DEFAULT_UNIFORM_FRACTION)));
+    }
+
+    private static void setSamplingOptions(Train that, CommandLine cmdline) throws IOException {
+        if (cmdline.hasOption("negative-samples")) {
+            that.setNegativeSamples(Integer.parseInt(cmdline.getOptionValue("negative-samples")));
+        }
+        if (cmdline.hasOption("importance-sampling")) {
+            that.setImportanceSampling(Double.parseDouble(
+                cmdline.getOptionValue("uniform-fraction", DEFAULT_UNIFORM_FRACTION)));
+        }
+    }
+
+    private static void addMemoryOptions(Options options) {
+        options.addOption(new Option(null, "micro-batch-size", true,
+            "read this many examples at a time and accumulate their gradients"));
+        options.addOption(new Option(null, "checkpoint-interval", true,
+            "keep the activations of every this many layers, and recompute the rest"));
+    }
+
+    private static void setMemoryOptions(Train that, CommandLine cmdline) {
+        if (cmdline.hasOption("micro-batch-size")) {
+            that.setMicroBatchSize(Integer.parseInt(cmdline.getOptionValue("micro-batch-size")));
+        }
+        if (cmdline.hasOption("checkpoint-interval")) {
+            that.setCheckpointInterval(Integer.parseInt(cmdline.getOptionValue("checkpoint-interval")));
+        }
+    }
+
+    private static void addDistillationOptions(Options options) {
+        options.addOption(new Option(null, "teacher", true, "teacher model file, to train on its outputs"));
+        options.addOption(new Option(null, "temperature", true,
+            String.format("temperature of the teacher's soft targets (default = %s)", DEFAULT_TEMPERATURE)));
+        options.addOption(new Option(null, "alpha", true,
+            String.format("weight of the teacher's soft targets, from 0 to 1 (default = %s)", DEFAULT_ALPHA)));
+    }
+
+    private static Distillation distillation(CommandLine cmdline) throws IOException {
+        return new Distillation(Models.load(new File(cmdline.getOptionValue("teacher"))),
+            Double.parseDouble(cmdline.getOptionValue("temperature", DEFAULT_TEMPERATURE)),
+            Double.parseDouble(cmdline.getOptionValue("alpha", DEFAULT_ALPHA)));
+    }
+
+    // returns why the options can't be used together, or null if they can
+    private static String conflictingOptions(CommandLine cmdline, boolean singlePrecision) {
+        if (cmdline.hasOption("negative-samples") && singlePrecision) {
+            return "Negative sampling needs double precision";
+        }
+        if (cmdline.hasOption("negative-samples") && cmdline.hasOption("teacher")) {
+            return "Negative sampling can't be used with a teacher";
+        }
+        if (cmdline.hasOption("micro-batch-size") && (cmdline.hasOption("negative-samples") || singlePrecision
+            || cmdline.hasOption("teacher"))) {
+            return "Gradient accumulation needs double precision, without negative sampling or a teacher";
+        }
+        if (cmdline.hasOption("checkpoint-interval") && (cmdline.hasOption("negative-samples") || singlePrecision)) {
+            return "Checkpointing needs double precision, without negative sampling";
+        }
+        if (cmdline.hasOption("importance-sampling") && (cmdline.hasOption("negative-samples") || singlePrecision
+            || cmdline.hasOption("teacher") || cmdline.hasOption("micro-batch-size"))) {
+            return "Importance sampling needs double precision, without negative sampling, a teacher or micro-batches";
+        }
+        return null;
+    }
+
     private static void usage(Options options) {
         HelpFormatter formatter = new HelpFormatter();
         formatter.setWidth(80);
@@ -130,14 +388,40 @@ public class Train {
      *
      * <pre>
      *  usage: Train [options]
+     *  --alpha <arg>           weight of the teacher's soft targets, from 0 to 1 (default = 1)
      *  --batch-size <arg>      batch size (default = 10)
+     *  --checkpoint-interval <arg> keep the activations of every this many layers, and recompute the rest
      *  --epochs <arg>          epochs (default = 5)
      *  --examples <arg>        input examples file (required)
+     *  --feature-hashing <arg> hash feature keys into the input layer: unsigned or signed
+     *  --importance-sampling   after the first epoch, pick the examples of each batch by their loss
+     *  --kernels <arg>         linear algebra backend: ejml, blocked, vector
      *  --layer-sizes <arg>     layer sizes, including input/output, e.g. 3 4 2 (required)
      *  --learning-rate <arg>   learning-rate (default = 0.7)
+     *  --micro-batch-size <arg> read this many examples at a time and accumulate their gradients
      *  --model <arg>           output model file (required)
+     *  --negative-samples <arg> train the output layer on the label and this many other labels
+     *  --precision <arg>       double or float (default = double)
+     *  --teacher <arg>         teacher model file, to train on its outputs
+     *  --temperature <arg>     temperature of the teacher's soft targets (default = 1)
+     *  --uniform-fraction <arg> fraction of importance sampling that is uniform (default = 0.5)
      * </pre>
      *
+     * With {@code --precision float}, the network is trained as a {@link FloatNetwork}
+     * and saved in the float model format. With {@code -Dninja.profile=true}, the
+     * time spent in each layer is printed at the end; see {@link Profiler}. With
+     * {@code --feature-hashing}, feature keys may be any strings, and are hashed
+     * into the input layer; see {@link FeatureHasher}. {@code --negative-samples}
+     * makes training with many labels faster; see {@link NegativeSampling}.
+     * With {@code --teacher}, the network learns the outputs of the teacher
+     * model instead of just the labels; see {@link Distillation}. With
+     * {@code --micro-batch-size}, each batch is read and its gradient summed a
+     * few examples at a time, so memory use doesn't grow with the batch size.
+     * {@code --checkpoint-interval} saves memory on deep networks by recomputing
+     * activations during backprop; see {@link Network#setCheckpointInterval}.
+     * {@code --importance-sampling} reads all the examples into memory, and
+     * trains more often on those with a high loss; see {@link ImportanceSampling}.
+     *
      * @param args command line arguments
      * @throws IOException
      */
@@ -145,6 +429,7 @@ public class Train {
         String defaultBatchSize = "10";
         String deafaultEpochs = "5";
         String defaultLearningRate = "0.7";
+        String defaultPrecision = "double";
 
         Options options = new Options();
         Option option;
@@ -168,6 +453,17 @@ public class Train {
         option = new Option(null, "learning-rate", true,
             String.format("learning-rate (default = %s)", defaultLearningRate));
         options.addOption(option);
+        option = new Option(null, "kernels", true, "linear algebra backend: ejml, blocked, vector");
+        options.addOption(option);
+        option = new Option(null, "precision", true,
+            String.format("double or float (default = %s)", defaultPrecision));
+        options.addOption(option);
+        option = new Option(null, "feature-hashing", true,
+            "hash feature keys into the input layer: unsigned or signed");
+        options.addOption(option);
+        addSamplingOptions(options);
+        addMemoryOptions(options);
+        addDistillationOptions(options);
 
         CommandLineParser parser = new GnuParser();
         CommandLine cmdline = null;
@@ -190,12 +486,37 @@ public class Train {
         }
 
         File examplesFile = new File(cmdline.getOptionValue("examples"));
-        Train that = new Train(layerSizes, examplesFile);
+        Kernels kernels = cmdline.hasOption("kernels")
+            ? KernelsLoader.load(cmdline.getOptionValue("kernels")) : KernelsLoader.get();
+        String precision = cmdline.getOptionValue("precision", defaultPrecision);
+        if (!"double".equals(precision) && !"float".equals(precision)) {
+            System.err.println("Unknown precision: " + precision);
+            usage(options);
+            System.exit(1);
+        }
+        String conflict = conflictingOptions(cmdline, "float".equals(precision));
+        if (conflict != null) {
+            System.err.println(conflict);
+            System.exit(1);
+        }
+        Train that = new Train(layerSizes, examplesFile, kernels, "float".equals(precision));
+        setSamplingOptions(that, cmdline);
+        setMemoryOptions(that, cmdline);
+        if (cmdline.hasOption("teacher")) {
+            that.setDistillation(distillation(cmdline));
+        }
+        if (cmdline.hasOption("feature-hashing")) {
+            that.setFeatureHasher(FeatureHasher.forMode(cmdline.getOptionValue("feature-hashing"),
+                layerSizes.get(0)));
+        }
         int batchSize = Integer.parseInt(cmdline.getOptionValue("batch-size", defaultBatchSize));
         int epochs = Integer.parseInt(cmdline.getOptionValue("epochs", deafaultEpochs));
         double learningRate = Double.parseDouble(cmdline.getOptionValue("learning-rate", defaultLearningRate));
         File modelFile = new File(cmdline.getOptionValue("model"));
 
         that.train(batchSize, epochs, learningRate, modelFile);
+        if (Profiler.ENABLED) {
+            Profiler.report(System.out);
+        }
     }
 }
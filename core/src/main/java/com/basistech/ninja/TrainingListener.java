@@ -0,0 +1,56 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.ninja;
+
+/**
+ * {@code TrainingListener} is told when training batches and epochs start and
+ * end. Implementations are registered in
+ * {@code META-INF/services/com.basistech.ninja.TrainingListener} and are only
+ * loaded when {@link Profiler#ENABLED} is true; see {@link Profiler}. The
+ * ninja-jfr module provides one that emits Java Flight Recorder events.
+ * Methods may be called from several threads at the same time.
+ */
+public interface TrainingListener {
+    /**
+     * Something that started and will end.
+     */
+    interface Span {
+        /**
+         * Called when the batch or epoch has ended, on the thread that started it.
+         */
+        void end();
+    }
+
+    /**
+     * Called when a batch starts.
+     *
+     * @param examples the number of examples in the batch
+     * @return the span to end when the batch has been trained
+     */
+    Span batchStarted(int examples);
+
+    /**
+     * Called when an epoch starts.
+     *
+     * @param epoch the epoch number, starting at 1
+     * @return the span to end when the epoch has been trained
+     */
+    Span epochStarted(int epoch);
+}
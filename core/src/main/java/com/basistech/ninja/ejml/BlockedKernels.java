@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.ninja.ejml;
+
+import java.util.Arrays;
+
+/**
+ * {@code BlockedKernels} implements {@link Kernels} in plain Java, tuned for
+ * the shapes that neural networks produce. Matrix-vector products work on four
+ * rows at a time, so each element of the vector is loaded once per four rows
+ * instead of once per row. The transposed product is also split into blocks
+ * of columns, so the part of the output being accumulated stays in the L1 cache
+ * even when layers are very wide.
+ */
+public class BlockedKernels implements Kernels {
+    public static final String NAME = "blocked";
+    // output doubles accumulated per pass of multTransA (8KB)
+    private static final int BLOCK = 1024;
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void mult(NinjaMatrix m, ColVector x, ColVector out) {
+        int rows = m.numRows();
+        int cols = m.numCols();
+        double[] a = m.getData();
+        double[] v = x.getData();
+        double[] result = out.getData();
+        int i = 0;
+        for (; i + 3 < rows; i += 4) {
+            int o0 = i * cols;
+            int o1 = o0 + cols;
+            int o2 = o1 + cols;
+            int o3 = o2 + cols;
+            double s0 = 0;
+            double s1 = 0;
+            double s2 = 0;
+            double s3 = 0;
+            for (int j = 0; j < cols; j++) {
+                double vj = v[j];
+                s0 += a[o0 + j] * vj;
+                s1 += a[o1 + j] * vj;
+                s2 += a[o2 + j] * vj;
+                s3 += a[o3 + j] * vj;
+            }
+            result[i] = s0;
+            result[i + 1] = s1;
+            result[i + 2] = s2;
+            result[i + 3] = s3;
+        }
+        for (; i < rows; i++) {
+            int offset = i * cols;
+            double sum = 0;
+            for (int j = 0; j < cols; j++) {
+                sum += a[offset + j] * v[j];
+            }
+            result[i] = sum;
+        }
+    }
+
+    @Override
+    public void multTransA(NinjaMatrix m, ColVector x, ColVector out) {
+        int rows = m.numRows();
+        int cols = m.numCols();
+        double[] a = m.getData();
+        double[] v = x.getData();
+        double[] result = out.getData();
+        Arrays.fill(result, 0.0);
+        for (int start = 0; start < cols; start += BLOCK) {
+            int end = Math.min(cols, start + BLOCK);
+            int i = 0;
+            for (; i + 3 < rows; i += 4) {
+                int o0 = i * cols;
+                int o1 = o0 + cols;
+                int o2 = o1 + cols;
+                int o3 = o2 + cols;
+                double v0 = v[i];
+                double v1 = v[i + 1];
+                double v2 = v[i + 2];
+                double v3 = v[i + 3];
+                for (int j = start; j < end; j++) {
+                    result[j] += a[o0 + j] * v0 + a[o1 + j] * v1 + a[o2 + j] * v2 + a[o3 + j] * v3;
+                }
+            }
+            for (; i < rows; i++) {
+                int offset = i * cols;
+                double vi = v[i];
+                for (int j = start; j < end; j++) {
+                    result[j] += a[offset + j] * vi;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void addOuterProduct(NinjaMatrix acc, ColVector u, ColVector v) {
+        int rows = acc.numRows();
+        int cols = acc.numCols();
+        double[] a = acc.getData();
+        double[] left = u.getData();
+        double[] right = v.getData();
+        for (int i = 0; i < rows; i++) {
+            double ui = left[i];
+            if (ui == 0.0) {
+                continue;
+            }
+            int offset = i * cols;
+            for (int j = 0; j < cols; j++) {
+                a[offset + j] += ui * right[j];
+            }
+        }
+    }
+
+    @Override
+    public void sigmoid(ColVector z, ColVector out) {
+        double[] in = z.getData();
+        double[] result = out.getData();
+        for (int i = 0; i < in.length; i++) {
+            result[i] = 1.0 / (1 + Math.exp(-in[i]));
+        }
+    }
+
+    @Override
+    public void multSigmoidPrime(ColVector delta, ColVector a) {
+        double[] d = delta.getData();
+        double[] values = a.getData();
+        for (int i = 0; i < d.length; i++) {
+            d[i] *= values[i] * (1.0 - values[i]);
+        }
+    }
+
+    @Override
+    public void addScaled(NinjaMatrix acc, double alpha, NinjaMatrix x) {
+        double[] a = acc.getData();
+        double[] b = x.getData();
+        int n = acc.numRows() * acc.numCols();
+        for (int i = 0; i < n; i++) {
+            a[i] += alpha * b[i];
+        }
+    }
+}
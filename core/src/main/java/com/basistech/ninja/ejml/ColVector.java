@@ -19,6 +19,8 @@
 
 package com.basistech.ninja.ejml;
 
+import org.ejml.data.DenseMatrix64F;
+
 /**
  * {@code ColVector} is a vector with a single column. It's implemented as a
  * {@code NinjaMatrix} with a single column.
@@ -41,6 +43,10 @@ public class ColVector {
         this.data = matrix;
     }
 
+    DenseMatrix64F getMatrix() {
+        return data.getMatrix();
+    }
+
     public int numRows() {
         return data.numRows();
     }
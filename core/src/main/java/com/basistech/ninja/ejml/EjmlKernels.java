@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.ninja.ejml;
+
+import org.ejml.ops.CommonOps;
+
+/**
+ * {@code EjmlKernels} implements {@link Kernels} with EJML's {@code CommonOps}.
+ * It is the default, and the fallback when no other implementation can be used.
+ */
+public class EjmlKernels implements Kernels {
+    public static final String NAME = "ejml";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void mult(NinjaMatrix m, ColVector x, ColVector out) {
+        CommonOps.mult(m.getMatrix(), x.getMatrix(), out.getMatrix());
+    }
+
+    @Override
+    public void multTransA(NinjaMatrix m, ColVector x, ColVector out) {
+        CommonOps.multTransA(m.getMatrix(), x.getMatrix(), out.getMatrix());
+    }
+
+    @Override
+    public void addOuterProduct(NinjaMatrix acc, ColVector u, ColVector v) {
+        CommonOps.multAddTransB(u.getMatrix(), v.getMatrix(), acc.getMatrix());
+    }
+
+    @Override
+    public void sigmoid(ColVector z, ColVector out) {
+        double[] in = z.getData();
+        double[] result = out.getData();
+        for (int i = 0; i < in.length; i++) {
+            result[i] = 1.0 / (1 + Math.exp(-in[i]));
+        }
+    }
+
+    @Override
+    public void multSigmoidPrime(ColVector delta, ColVector a) {
+        double[] d = delta.getData();
+        double[] values = a.getData();
+        for (int i = 0; i < d.length; i++) {
+            d[i] *= values[i] * (1.0 - values[i]);
+        }
+    }
+
+    @Override
+    public void addScaled(NinjaMatrix acc, double alpha, NinjaMatrix x) {
+        CommonOps.addEquals(acc.getMatrix(), alpha, x.getMatrix());
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.ninja.ejml;
+
+/**
+ * {@code Kernels} is the linear algebra backend. It implements the arithmetic
+ * used by training and inference, so that {@code Network} doesn't depend on how
+ * it is done. The default implementation uses EJML; {@link BlockedKernels} is
+ * a cache-blocked pure Java alternative, and others are found with
+ * {@link java.util.ServiceLoader}. {@link KernelsLoader} selects one.
+ *
+ * <p>The matrices and vectors are always {@link NinjaMatrix} and
+ * {@link ColVector}, which store their values in EJML's dense row-major
+ * {@code double[]}; implementations read and write that array.
+ *
+ * <p>Output arguments must already have the right dimensions and must not be
+ * the same objects as the inputs. Implementations must be thread safe.
+ */
+public interface Kernels {
+    /**
+     * Returns the name used to select this implementation.
+     *
+     * @return the name
+     */
+    String getName();
+
+    /**
+     * Computes {@code out = m * x}.
+     *
+     * @param m the matrix
+     * @param x the vector, with {@code m.numCols()} rows
+     * @param out the result, with {@code m.numRows()} rows
+     */
+    void mult(NinjaMatrix m, ColVector x, ColVector out);
+
+    /**
+     * Computes {@code out = transpose(m) * x}, without transposing {@code m}.
+     *
+     * @param m the matrix
+     * @param x the vector, with {@code m.numRows()} rows
+     * @param out the result, with {@code m.numCols()} rows
+     */
+    void multTransA(NinjaMatrix m, ColVector x, ColVector out);
+
+    /**
+     * Computes {@code acc = acc + u * transpose(v)}.
+     *
+     * @param acc the accumulator, with {@code u.numRows()} rows and {@code v.numRows()} columns
+     * @param u the column vector
+     * @param v the vector whose transpose is the row vector
+     */
+    void addOuterProduct(NinjaMatrix acc, ColVector u, ColVector v);
+
+    /**
+     * Computes {@code out[i] = 1 / (1 + exp(-z[i]))}.
+     *
+     * @param z the input
+     * @param out the result, with the same number of rows as {@code z}
+     */
+    void sigmoid(ColVector z, ColVector out);
+
+    /**
+     * Computes {@code delta[i] = delta[i] * a[i] * (1 - a[i])}, which is the
+     * derivative of the sigmoid given its output {@code a}.
+     *
+     * @param delta the vector to update
+     * @param a the sigmoid output, with the same number of rows as {@code delta}
+     */
+    void multSigmoidPrime(ColVector delta, ColVector a);
+
+    /**
+     * Computes {@code acc = acc + alpha * x}.
+     *
+     * @param acc the matrix to update
+     * @param alpha the scale factor
+     * @param x the matrix to add, with the same dimensions as {@code acc}
+     */
+    void addScaled(NinjaMatrix acc, double alpha, NinjaMatrix x);
+}
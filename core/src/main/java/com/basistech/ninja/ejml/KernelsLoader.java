@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.ninja.ejml;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+/**
+ * {@code KernelsLoader} selects the {@link Kernels} implementation.
+ *
+ * <p>{@link EjmlKernels} ("ejml") and {@link BlockedKernels} ("blocked") are
+ * built in. Other implementations are registered in
+ * {@code META-INF/services/com.basistech.ninja.ejml.Kernels}. The system property
+ * {@code ninja.kernels} names the implementation to use. Without it, the first
+ * registered implementation that can be loaded is used, or EJML if there are
+ * none. In both cases, if the implementation cannot be loaded on this JVM
+ * (e.g., it needs a JDK module that wasn't added), EJML is used instead.
+ */
+public final class KernelsLoader {
+    public static final String PROPERTY = "ninja.kernels";
+    private static final Logger LOG = LoggerFactory.getLogger(KernelsLoader.class);
+    private static final Kernels DEFAULT = load(System.getProperty(PROPERTY));
+
+    private KernelsLoader() {
+        // empty
+    }
+
+    /**
+     * Returns the implementation selected for this JVM.
+     *
+     * @return the kernels
+     */
+    public static Kernels get() {
+        return DEFAULT;
+    }
+
+    /**
+     * Returns the named implementation, or EJML if it can't be loaded.
+     *
+     * @param name the implementation name, or {@code null} for the first available
+     * @return the kernels
+     */
+    public static Kernels load(String name) {
+        if (EjmlKernels.NAME.equals(name)) {
+            return new EjmlKernels();
+        }
+        if (BlockedKernels.NAME.equals(name)) {
+            return new BlockedKernels();
+        }
+        Iterator<Kernels> it = ServiceLoader.load(Kernels.class).iterator();
+        while (it.hasNext()) {
+            Kernels kernels;
+            try {
+                kernels = it.next();
+            } catch (ServiceConfigurationError | LinkageError e) {
+                LOG.debug("Skipping kernels that can't be loaded", e);
+                continue;
+            }
+            if (name == null || name.equals(kernels.getName())) {
+                return kernels;
+            }
+        }
+        if (name != null) {
+            LOG.warn("Kernels '{}' are not available; using {}", name, EjmlKernels.NAME);
+        }
+        return new EjmlKernels();
+    }
+}
@@ -27,6 +27,14 @@ import org.ejml.ops.SpecializedOps;
  * {@code NinjaMatrix} is a matrix of doubles. The current implementation uses a
  * dense representation. The underlying implementation is based on
  * <a "href=http://ejml.org/javadoc/org/ejml/data/DenseMatrix64F.html">EJML's DenseMatrix64F</a>.
+ *
+ * <p>Only the arithmetic is pluggable (see {@link Kernels}); the storage is not
+ * abstracted, and every backend works on the same row-major {@code double[]}
+ * returned by {@link #getData()}. That lets the EJML backend call EJML on the
+ * wrapped matrix without copying, lets the other backends index the array
+ * directly instead of through a virtual call per element, and keeps the model
+ * formats, {@link com.basistech.ninja.FrozenNetwork} and the other readers of
+ * the weights independent of the backend.
  */
 public class NinjaMatrix {
     private DenseMatrix64F data;
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.ninja;
+
+import com.basistech.ninja.ejml.ColVector;
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class CascadeTest {
+    @Rule
+    public TemporaryFolder folderRule = new TemporaryFolder();
+
+    @Test
+    public void testApply() {
+        Network fast = new Network(Arrays.asList(3, 2));
+        Network accurate = new Network(Arrays.asList(3, 5, 2));
+        double[] input = {0.5, -0.2, 0.1};
+        Cascade always = new Cascade(fast, accurate, 0, 0);
+        assertArrayEquals(fast.apply(input).getData(), always.apply(input).getData(), 0);
+        // sigmoid scores never reach 2
+        Cascade never = new Cascade(fast, accurate, 2, 0);
+        assertArrayEquals(accurate.apply(input).getData(), never.apply(input).getData(), 0);
+        assertEquals(accurate.getLayerSizes(), never.getLayerSizes());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDifferentOutputs() {
+        new Cascade(new Network(Arrays.asList(3, 2)), new Network(Arrays.asList(3, 4)), 0.5, 0);
+    }
+
+    @Test
+    public void testConfidence() {
+        Cascade cascade = new Cascade(new Network(Arrays.asList(2, 3)), new Network(Arrays.asList(2, 3)), 0.6, 0.2);
+        assertArrayEquals(new double[] {0.7, 0.4}, Cascade.topTwo(new ColVector(0.4, 0.7, 0.1)), 0);
+        assertEquals(true, cascade.isConfident(new ColVector(0.4, 0.7, 0.1)));
+        // high score, low margin
+        assertEquals(false, cascade.isConfident(new ColVector(0.65, 0.7, 0.1)));
+        // high margin, low score
+        assertEquals(false, cascade.isConfident(new ColVector(0.1, 0.5, 0.1)));
+    }
+
+    @Test
+    public void testTune() {
+        double[] confidence = {0.7, 0.9, 0.5, 0.6, 0.8};
+        boolean[] fastCorrect = {false, true, false, true, true};
+        boolean[] accurateCorrect = {true, true, true, true, true};
+
+        // the fast model may answer the two most confident examples
+        Cascade.Tuning tuning = Cascade.tune(confidence, fastCorrect, accurateCorrect, 1.0, 10, 100);
+        assertEquals(0.8, tuning.getThreshold(), 0);
+        assertEquals(1.0, tuning.getAccuracy(), 1e-9);
+        assertEquals(0.4, tuning.getFastFraction(), 1e-9);
+        assertEquals(0.7, tuning.getRelativeCost(), 1e-9);
+
+        tuning = Cascade.tune(confidence, fastCorrect, accurateCorrect, 0.8, 10, 100);
+        assertEquals(0.6, tuning.getThreshold(), 0);
+        assertEquals(0.8, tuning.getAccuracy(), 1e-9);
+
+        // unreachable: the best accuracy with the most fast answers
+        tuning = Cascade.tune(confidence, fastCorrect, accurateCorrect, 1.1, 10, 100);
+        assertEquals(0.8, tuning.getThreshold(), 0);
+    }
+
+    @Test
+    public void testTuneTies() {
+        double[] confidence = {0.9, 0.9, 0.5};
+        boolean[] fastCorrect = {true, false, true};
+        boolean[] accurateCorrect = {true, true, true};
+        Cascade.Tuning tuning = Cascade.tune(confidence, fastCorrect, accurateCorrect, 1.0, 10, 100);
+        assertEquals(Double.POSITIVE_INFINITY, tuning.getThreshold(), 0);
+        assertEquals(0.0, tuning.getFastFraction(), 0);
+        assertEquals(1.1, tuning.getRelativeCost(), 1e-9);
+    }
+
+    @Test
+    public void testTuneFile() throws Exception {
+        Network fast = new Network(Arrays.asList(4, 3));
+        Network accurate = new Network(Arrays.asList(4, 8, 3));
+        Random random = new Random(42);
+        StringBuilder sb = new StringBuilder();
+        for (int n = 0; n < 200; n++) {
+            sb.append(random.nextInt(3));
+            for (int i = 0; i < 4; i++) {
+                sb.append(String.format(" %d:%f", i, random.nextDouble()));
+            }
+            sb.append('\n');
+        }
+        File examples = folderRule.newFile("examples.txt");
+        Files.write(sb.toString(), examples, Charsets.UTF_8);
+
+        for (boolean margin : new boolean[] {false, true}) {
+            Cascade.Tuning tuning = Cascade.tune(fast, accurate, examples, 0.0, margin);
+            // with no target, the fast model answers everything
+            assertEquals(1.0, tuning.getFastFraction(), 0);
+            assertEquals(Models.accuracy(fast, examples), tuning.getAccuracy(), 1e-9);
+
+            tuning = Cascade.tune(fast, accurate, examples, 1.0, margin);
+            double threshold = tuning.getThreshold();
+            Cascade cascade = margin
+                ? new Cascade(fast, accurate, 0, threshold) : new Cascade(fast, accurate, threshold, 0);
+            assertEquals(tuning.getAccuracy(), Models.accuracy(cascade, examples), 1e-9);
+        }
+    }
+}
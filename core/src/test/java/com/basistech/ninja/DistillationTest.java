@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.ninja;
+
+import com.basistech.ninja.ejml.ColVector;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class DistillationTest {
+    // returns a fixed output and counts the calls
+    private static final class Teacher implements Model {
+        private final double[] output;
+        private int calls;
+
+        Teacher(double... output) {
+            this.output = output;
+        }
+
+        int getCalls() {
+            return calls;
+        }
+
+        @Override
+        public List<Integer> getLayerSizes() {
+            return Arrays.asList(2, output.length);
+        }
+
+        @Override
+        public ColVector apply(double... values) {
+            calls++;
+            return new ColVector(output.clone());
+        }
+    }
+
+    @Test
+    public void testSoften() {
+        double[] outputs = {0.9, 0.2, 0.5, 0.0};
+        float[] same = Distillation.soften(outputs, 1);
+        for (int j = 0; j < outputs.length; j++) {
+            assertEquals(outputs[j], same[j], 1e-6);
+        }
+        float[] soft = Distillation.soften(outputs, 2);
+        // sigmoid(logit(0.9) / 2) = 3 / (3 + 1)
+        assertEquals(0.75, soft[0], 1e-6);
+        assertEquals(0.5, soft[2], 1e-6);
+        assertEquals(1 / 3.0, soft[1], 1e-6);
+    }
+
+    @Test
+    public void testTargets() {
+        Teacher teacher = new Teacher(0.9, 0.2, 0.5);
+        Distillation distillation = new Distillation(teacher, 1, 0.5);
+        ColVector[] x = {new ColVector(2), new ColVector(2)};
+        ColVector[] y = distillation.targets(0, x, new int[] {0, 1});
+        assertEquals(0.95, y[0].get(0), 1e-6);
+        assertEquals(0.1, y[0].get(1), 1e-6);
+        assertEquals(0.45, y[1].get(0), 1e-6);
+        assertEquals(0.6, y[1].get(1), 1e-6);
+        assertEquals(0.25, y[1].get(2), 1e-6);
+        assertEquals(2, teacher.getCalls());
+    }
+
+    @Test
+    public void testCache() {
+        Teacher teacher = new Teacher(0.9, 0.1);
+        Distillation distillation = new Distillation(teacher, 2, 1);
+        ColVector[] x = {new ColVector(2), new ColVector(2)};
+        int[] labels = {0, 1};
+        for (int epoch = 0; epoch < 3; epoch++) {
+            distillation.targets(0, x, labels);
+            distillation.targets(2, x, labels);
+        }
+        assertEquals(4, teacher.getCalls());
+        assertEquals(4, distillation.getCacheSize());
+    }
+
+    @Test
+    public void testNetworkTeacher() {
+        // a network teacher goes through FrozenNetwork.applyBatch, for the new examples only
+        Network net = new Network(Arrays.asList(2, 5, 3));
+        Distillation distillation = new Distillation(net, 2, 0.5);
+        ColVector[] x = {new ColVector(0.1, 0.9), new ColVector(-0.5, 0.3), new ColVector(0.7, 0.2)};
+        int[] labels = {0, 2, 1};
+        distillation.targets(0, Arrays.copyOf(x, 1), Arrays.copyOf(labels, 1));
+        ColVector[] y = distillation.targets(0, x, labels);
+        assertEquals(3, distillation.getCacheSize());
+        for (int i = 0; i < x.length; i++) {
+            float[] soft = Distillation.soften(net.apply(x[i]).getData(), 2);
+            for (int j = 0; j < soft.length; j++) {
+                assertEquals(0.5 * soft[j] + (j == labels[i] ? 0.5 : 0), y[i].get(j), 1e-6);
+            }
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testSkippedBatch() {
+        Distillation distillation = new Distillation(new Teacher(0.5, 0.5), 1, 1);
+        distillation.targets(2, new ColVector[] {new ColVector(2)}, new int[] {0});
+    }
+}
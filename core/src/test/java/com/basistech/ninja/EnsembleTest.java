@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.ninja;
+
+import com.basistech.ninja.ejml.ColVector;
+import com.google.common.collect.Lists;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EnsembleTest {
+    @Rule
+    public TemporaryFolder folderRule = new TemporaryFolder();
+
+    private static List<Network> members(int count, Integer... layerSizes) {
+        List<Network> nets = Lists.newArrayList();
+        for (int m = 0; m < count; m++) {
+            nets.add(new Network(Arrays.asList(layerSizes)));
+        }
+        return nets;
+    }
+
+    private static double[] input(Random random, int size) {
+        double[] input = new double[size];
+        for (int i = 0; i < size; i++) {
+            input[i] = random.nextGaussian();
+        }
+        return input;
+    }
+
+    private static void assertAverage(List<Network> nets, Model ensemble, double[] input) {
+        ColVector actual = ensemble.apply(input);
+        for (int j = 0; j < actual.numRows(); j++) {
+            double sum = 0;
+            for (Network net : nets) {
+                sum += net.apply(input).get(j);
+            }
+            assertEquals(sum / nets.size(), actual.get(j), 1e-12);
+        }
+    }
+
+    @Test
+    public void testApply() {
+        // 7 and 5 units exercise the unrolled loop and its tail
+        List<Network> nets = members(3, 6, 7, 5, 3);
+        Ensemble ensemble = new Ensemble(nets);
+        assertEquals(3, ensemble.getNumMembers());
+        assertEquals(Arrays.asList(6, 7, 5, 3), ensemble.getLayerSizes());
+        Random random = new Random(42);
+        for (int n = 0; n < 10; n++) {
+            assertAverage(nets, ensemble, input(random, 6));
+        }
+    }
+
+    @Test
+    public void testSingleLayer() {
+        List<Network> nets = members(2, 4, 3);
+        assertAverage(nets, new Ensemble(nets), input(new Random(42), 4));
+    }
+
+    @Test
+    public void testWriteLoad() throws Exception {
+        List<Network> nets = members(4, 5, 6, 2);
+        File file = folderRule.newFile("model.ensemble");
+        new Ensemble(nets).write(file);
+        Model loaded = Models.load(file);
+        assertTrue(loaded instanceof Ensemble);
+        assertEquals(4, ((Ensemble) loaded).getNumMembers());
+        assertEquals(Arrays.asList(5, 6, 2), loaded.getLayerSizes());
+        assertAverage(nets, loaded, input(new Random(42), 5));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDifferentLayerSizes() {
+        new Ensemble(Arrays.asList(new Network(Arrays.asList(3, 4, 2)), new Network(Arrays.asList(3, 5, 2))));
+    }
+}
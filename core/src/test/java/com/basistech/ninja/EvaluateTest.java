@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.ninja;
+
+import com.basistech.ninja.ejml.ColVector;
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EvaluateTest {
+    @Rule
+    public TemporaryFolder folderRule = new TemporaryFolder();
+
+    @Test
+    public void testEvaluation() {
+        Evaluation evaluation = new Evaluation(3, 2);
+        evaluation.add(0, new ColVector(0.9, 0.1, 0.0));
+        evaluation.add(0, new ColVector(0.2, 0.7, 0.1));
+        evaluation.add(1, new ColVector(0.1, 0.8, 0.3));
+        evaluation.add(2, new ColVector(0.5, 0.4, 0.3));
+
+        Evaluation other = new Evaluation(3, 2);
+        other.add(2, new ColVector(0.0, 0.1, 0.9));
+        evaluation.merge(other);
+
+        assertEquals(5, evaluation.getTotal());
+        assertEquals(0.6, evaluation.getAccuracy(), 1e-9);
+        // the label of the fourth example is third of three
+        assertEquals(0.8, evaluation.getTopKAccuracy(), 1e-9);
+        assertEquals(1, evaluation.getCount(0, 1));
+        assertEquals(1, evaluation.getCount(2, 0));
+        assertEquals(0.5, evaluation.getPrecision(0), 1e-9);
+        assertEquals(0.5, evaluation.getRecall(0), 1e-9);
+        assertEquals(0.5, evaluation.getPrecision(1), 1e-9);
+        assertEquals(1.0, evaluation.getRecall(1), 1e-9);
+        assertEquals(1.0, evaluation.getPrecision(2), 1e-9);
+        assertEquals(0.5, evaluation.getRecall(2), 1e-9);
+        assertEquals(2, evaluation.getSupport(2));
+    }
+
+    @Test
+    public void testManyClasses() {
+        // a dense confusion matrix would need 80 GB
+        int classes = 100000;
+        Evaluation evaluation = new Evaluation(classes, 1);
+        Evaluation other = new Evaluation(classes, 1);
+        ColVector scores = new ColVector(classes);
+        scores.set(classes - 1, 1.0);
+        evaluation.add(3, scores);
+        other.add(3, scores);
+        other.add(classes - 1, scores);
+        evaluation.merge(other);
+
+        assertEquals(2, evaluation.getCount(3, classes - 1));
+        assertEquals(1, evaluation.getCount(classes - 1, classes - 1));
+        assertEquals(0, evaluation.getCount(classes - 1, 3));
+        assertEquals(1.0 / 3, evaluation.getPrecision(classes - 1), 1e-9);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        evaluation.print(new PrintStream(bytes, true));
+        assertTrue(bytes.toString().contains("\n3\t99999\t2\n"));
+    }
+
+    @Test
+    public void testManyDistinctMistakes() {
+        // 3000 distinct mistakes, more than are tracked, and one frequent one
+        int classes = 1000;
+        Evaluation evaluation = new Evaluation(classes, 1);
+        ColVector scores = new ColVector(classes);
+        scores.set(classes - 1, 1.0);
+        for (int i = 0; i < 200; i++) {
+            evaluation.add(3, scores);
+        }
+        scores.set(classes - 1, 0.0);
+        for (int i = 0; i < 3000; i++) {
+            int label = i % classes;
+            int prediction = (label + i / classes + 1) % classes;
+            scores.set(prediction, 1.0);
+            evaluation.add(label, scores);
+            scores.set(prediction, 0.0);
+        }
+
+        assertTrue(evaluation.isApproximate());
+        // overestimated by at most the number of mistakes over the number tracked
+        long count = evaluation.getCount(3, classes - 1);
+        assertTrue(count >= 200 && count <= 200 + 3200 / 1000);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        evaluation.print(new PrintStream(bytes, true));
+        assertTrue(bytes.toString().contains("(estimated; over 1000 distinct)\nlabel\tprediction\tcount\n3\t999\t"));
+    }
+
+    private File examplesFile(int count) throws Exception {
+        Random random = new Random(7);
+        StringBuilder examples = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            int label = random.nextInt(3);
+            double signal = 0.5 + random.nextDouble() / 2;
+            examples.append(label).append(' ').append(label).append(':').append(signal).append(' ')
+                .append(random.nextInt(3)).append(':').append(random.nextDouble() / 2).append('\n');
+        }
+        File file = folderRule.newFile("examples");
+        Files.write(examples.toString(), file, Charsets.UTF_8);
+        return file;
+    }
+
+    @Test
+    public void testEvaluate() throws Exception {
+        // more lines than fit in the queue at once
+        File file = examplesFile(5000);
+        Network net = new Network(Arrays.asList(3, 4, 3));
+        Dataset dataset = Dataset.load(file, 3, 3);
+        dataset.trainEpoch(net, 10, 2.0);
+        FrozenNetwork frozen = net.freeze();
+
+        Evaluation single = Evaluate.evaluate(frozen, file, 1, 1);
+        Evaluation parallel = Evaluate.evaluate(frozen, file, 3, 1);
+        assertEquals(5000, parallel.getTotal());
+        assertEquals(Models.accuracy(frozen, file), parallel.getAccuracy(), 1e-9);
+        // top-1 is plain accuracy
+        assertEquals(parallel.getAccuracy(), parallel.getTopKAccuracy(), 1e-9);
+        for (int i = 0; i < 3; i++) {
+            for (int j = 0; j < 3; j++) {
+                assertEquals(single.getCount(i, j), parallel.getCount(i, j));
+            }
+        }
+    }
+
+    @Test(expected = ExecutionException.class)
+    public void testLabelOutOfRange() throws Exception {
+        File file = examplesFile(5000);
+        Evaluate.evaluate(new Network(Arrays.asList(3, 2)).freeze(), file, 2, 1);
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.ninja;
+
+import com.basistech.ninja.ejml.ColVector;
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FeatureHasherTest {
+    @Rule
+    public TemporaryFolder folderRule = new TemporaryFolder();
+
+    private static double sum(ColVector x) {
+        double sum = 0;
+        for (double value : x.getData()) {
+            sum += value;
+        }
+        return sum;
+    }
+
+    @Test
+    public void testUnsigned() {
+        FeatureHasher hasher = new FeatureHasher(16, false);
+        ColVector x = hasher.parseFeatures("1 word=ninja:2.5 word=java url:http://x:0.5 12345".split(" "));
+        assertEquals(16, x.numRows());
+        // all values are added, wherever they land
+        assertEquals(5.0, sum(x), 1e-9);
+        ColVector same = hasher.parseFeatures("0 12345 word=java url:http://x:0.5 word=ninja:2.5".split(" "));
+        assertTrue(Arrays.equals(x.getData(), same.getData()));
+    }
+
+    @Test
+    public void testSigned() {
+        FeatureHasher hasher = new FeatureHasher(1000, true);
+        int negative = 0;
+        for (int i = 0; i < 1000; i++) {
+            ColVector x = hasher.parseFeatures(new String[] {"0", "feature" + i});
+            assertEquals(1.0, Math.abs(sum(x)), 0);
+            if (sum(x) < 0) {
+                negative++;
+            }
+        }
+        // about half
+        assertTrue(negative > 400 && negative < 600);
+    }
+
+    @Test
+    public void testCollisionsAdd() {
+        FeatureHasher hasher = new FeatureHasher(1, false);
+        ColVector x = hasher.parseFeatures("0 a:1 b:2 c:3".split(" "));
+        assertEquals(6.0, x.get(0), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownMode() {
+        FeatureHasher.forMode("sometimes", 10);
+    }
+
+    @Test
+    public void testTrainAndEvaluate() throws Exception {
+        // no dictionary: the words themselves are the features
+        File file = folderRule.newFile("examples");
+        Files.write("0 the cat sat\n1 ninja java code\n0 a cat ran\n1 java ninja\n", file, Charsets.UTF_8);
+        FeatureHasher hasher = FeatureHasher.forMode(FeatureHasher.SIGNED, 64);
+        Network net = new Network(Arrays.asList(64, 2));
+        Train train = new Train(net, file);
+        train.setFeatureHasher(hasher);
+        for (int i = 0; i < 200; i++) {
+            train.trainBatch(Files.readLines(file, Charsets.UTF_8), 1.0);
+        }
+        Evaluation evaluation = Evaluate.evaluate(net.freeze(), file, 2, 1, hasher);
+        assertEquals(4, evaluation.getTotal());
+        assertEquals(1.0, evaluation.getAccuracy(), 0);
+    }
+
+    @Test
+    public void testModeRecordedWithModel() throws Exception {
+        File examples = folderRule.newFile("examples");
+        Files.write("0 the cat\n1 ninja java\n", examples, Charsets.UTF_8);
+        File model = folderRule.newFile("model");
+        Train train = new Train(new Network(Arrays.asList(64, 2)), examples);
+        train.setFeatureHasher(FeatureHasher.forMode(FeatureHasher.SIGNED, 64));
+        train.train(2, 1, 0.5, model);
+
+        assertEquals(FeatureHasher.SIGNED, FeatureHasher.readMode(model));
+        // the caller needn't repeat the mode
+        FeatureHasher hasher = Models.featureHasher(model, 64, null);
+        assertTrue(hasher.isSigned());
+        assertEquals(64, hasher.getBuckets());
+        try {
+            Models.featureHasher(model, 64, FeatureHasher.UNSIGNED);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("--feature-hashing signed"));
+        }
+
+        // retraining the same file without hashing drops the record
+        Files.write("0 0:1.0\n1 1:1.0\n", examples, Charsets.UTF_8);
+        new Train(new Network(Arrays.asList(64, 2)), examples).train(2, 1, 0.5, model);
+        assertEquals(null, FeatureHasher.readMode(model));
+        assertEquals(null, Models.featureHasher(model, 64, null));
+    }
+
+    @Test
+    public void testConvertedModels() throws Exception {
+        File examples = folderRule.newFile("examples");
+        Files.write("0 the cat sat\n1 ninja java code\n0 a cat ran\n1 java ninja\n", examples, Charsets.UTF_8);
+        File model = folderRule.newFile("model");
+        Network net = new Network(Arrays.asList(64, 2));
+        Train train = new Train(net, examples);
+        train.setFeatureHasher(FeatureHasher.forMode(FeatureHasher.SIGNED, 64));
+        train.train(4, 200, 1.0, model);
+
+        // the converters parse hashed examples and keep the record
+        FeatureHasher hasher = Models.featureHasher(model, 64, null);
+        assertEquals(1.0, Models.accuracy(net, examples, hasher), 0);
+        QuantizedNetwork quantized = QuantizedNetwork.quantize(net, examples, hasher);
+        assertEquals(1.0, Models.accuracy(quantized, examples, hasher), 0.25);
+        File converted = new File(folderRule.getRoot(), "model.q8");
+        quantized.write(converted);
+        FeatureHasher.copyMode(model, converted);
+        assertEquals(FeatureHasher.SIGNED, FeatureHasher.readMode(converted));
+
+        // models that read the same examples must agree
+        File plain = folderRule.newFile("plain");
+        assertEquals(FeatureHasher.SIGNED, Models.featureHasher(Arrays.asList(model, converted), 64).getMode());
+        try {
+            Models.featureHasher(Arrays.asList(model, plain), 64);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("different feature hashing"));
+        }
+    }
+}
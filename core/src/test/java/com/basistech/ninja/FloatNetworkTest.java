@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.ninja;
+
+import com.basistech.ninja.ejml.ColVector;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FloatNetworkTest {
+    @Rule
+    public TemporaryFolder folderRule = new TemporaryFolder();
+
+    @Test
+    public void testApply() {
+        Network net = TestNetworks.network();
+        FloatNetwork floatNet = new FloatNetwork(net);
+        assertEquals(Arrays.asList(3, 4, 2), floatNet.getLayerSizes());
+        double[][] inputs = {{0, 0, 0}, {1, 1, 1}, {-0.1, 0.2, -0.05}};
+        for (double[] input : inputs) {
+            TestNetworks.assertVectorEquals(net.apply(input), floatNet.apply(input), 1e-6);
+        }
+    }
+
+    @Test
+    public void testTrainBatch() {
+        Network net = TestNetworks.network();
+        FloatNetwork floatNet = new FloatNetwork(net);
+        ColVector[] x = {new ColVector(0.5, -0.2, 0.1), new ColVector(-1.0, 0.3, 0.8)};
+        ColVector[] y = {new ColVector(1.0, 0.0), new ColVector(0.0, 1.0)};
+        for (int i = 0; i < 20; i++) {
+            net.trainBatch(x, y, 0.7);
+            floatNet.trainBatch(x, y, 0.7);
+        }
+        Network widened = floatNet.toNetwork();
+        for (int l = 0; l < 2; l++) {
+            assertTrue(net.getWeightMatrix(l).isIdentical(widened.getWeightMatrix(l), 1e-5));
+        }
+    }
+
+    @Test
+    public void testSmallUpdates() {
+        // each update is below half a unit in the last place of the weights, and would round away
+        Network net = TestNetworks.network();
+        FloatNetwork floatNet = new FloatNetwork(net);
+        ColVector[] x = {new ColVector(0.5, -0.2, 0.1), new ColVector(-1.0, 0.3, 0.8)};
+        ColVector[] y = {new ColVector(1.0, 0.0), new ColVector(0.0, 1.0)};
+        for (int i = 0; i < 2000; i++) {
+            net.trainBatch(x, y, 1e-8);
+            floatNet.trainBatch(x, y, 1e-8);
+        }
+        Network widened = floatNet.toNetwork();
+        for (int l = 0; l < 2; l++) {
+            assertTrue(net.getWeightMatrix(l).isIdentical(widened.getWeightMatrix(l), 2e-7));
+        }
+    }
+
+    @Test
+    public void testWriteAndLoad() throws Exception {
+        FloatNetwork floatNet = new FloatNetwork(TestNetworks.network());
+        File file = folderRule.newFile("model.f32");
+        floatNet.write(file);
+        // 5 ints of header, 16 + 10 floats of weights
+        assertEquals(4 * (5 + 26), file.length());
+
+        Model loaded = Models.load(file);
+        assertTrue(loaded instanceof FloatNetwork);
+        assertEquals(floatNet.getLayerSizes(), loaded.getLayerSizes());
+        double[] input = {0.3, -0.4, 0.5};
+        TestNetworks.assertVectorEquals(floatNet.apply(input), loaded.apply(input), 0);
+    }
+}
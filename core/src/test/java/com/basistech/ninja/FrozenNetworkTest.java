@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.ninja;
+
+import com.basistech.ninja.ejml.ColVector;
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+
+public class FrozenNetworkTest {
+    @Test
+    public void testApply() {
+        // 7 and 5 output units exercise the unrolled loop and its tail
+        Network net = new Network(Arrays.asList(6, 7, 5));
+        FrozenNetwork frozen = net.freeze();
+        assertEquals(Arrays.asList(6, 7, 5), frozen.getLayerSizes());
+        Random random = new Random(42);
+        for (int n = 0; n < 10; n++) {
+            double[] input = new double[6];
+            for (int i = 0; i < input.length; i++) {
+                input[i] = random.nextGaussian();
+            }
+            TestNetworks.assertVectorEquals(net.apply(input), frozen.apply(input), 1e-12);
+        }
+    }
+
+    @Test
+    public void testApplyBatch() {
+        FrozenNetwork frozen = new Network(Arrays.asList(6, 7, 5)).freeze();
+        Random random = new Random(42);
+        double[][] inputs = new double[3][6];
+        for (double[] input : inputs) {
+            for (int i = 0; i < input.length; i++) {
+                input[i] = random.nextGaussian();
+            }
+        }
+        ColVector[] outputs = frozen.applyBatch(inputs);
+        assertEquals(inputs.length, outputs.length);
+        for (int n = 0; n < inputs.length; n++) {
+            TestNetworks.assertVectorEquals(frozen.apply(inputs[n]), outputs[n], 0);
+        }
+    }
+
+    @Test
+    public void testTrainingDoesNotChangeCopy() {
+        Network net = new Network(Arrays.asList(3, 4, 2));
+        FrozenNetwork frozen = net.freeze();
+        double[] input = {0.5, -0.2, 0.1};
+        ColVector before = frozen.apply(input);
+        ColVector[] x = {new ColVector(input)};
+        ColVector[] y = {new ColVector(1.0, 0.0)};
+        net.trainBatch(x, y, 0.7);
+        TestNetworks.assertVectorEquals(before, frozen.apply(input), 0);
+    }
+
+    @Test
+    public void testConcurrentApply() throws Exception {
+        final Network net = new Network(Arrays.asList(20, 16, 4));
+        final FrozenNetwork frozen = net.freeze();
+        final double[] input = new double[20];
+        Arrays.fill(input, 0.5);
+        final ColVector expected = frozen.apply(input);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Void>> futures = Lists.newArrayList();
+            for (int t = 0; t < 4; t++) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        for (int n = 0; n < 1000; n++) {
+                            TestNetworks.assertVectorEquals(expected, frozen.apply(input), 0);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            // training the original while the copy is in use
+            ColVector[] x = {new ColVector(input)};
+            ColVector[] y = {new ColVector(1.0, 0.0, 0.0, 0.0)};
+            for (int n = 0; n < 100; n++) {
+                net.trainBatch(x, y, 0.7);
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrongInputSize() {
+        new Network(Arrays.asList(3, 4, 2)).freeze().apply(1.0, 2.0);
+    }
+}
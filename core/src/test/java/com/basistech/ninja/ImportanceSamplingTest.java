@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.ninja;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class ImportanceSamplingTest {
+    @Test
+    public void testUniformWithoutLosses() {
+        ImportanceSampling sampling = new ImportanceSampling(5, 0.1);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(1.0, sampling.weight(i), 1e-12);
+        }
+        for (int i = 0; i < 5; i++) {
+            sampling.setLoss(i, 0.0);
+        }
+        sampling.update();
+        for (int i = 0; i < 5; i++) {
+            assertEquals(1.0, sampling.weight(i), 1e-12);
+        }
+    }
+
+    @Test
+    public void testSample() {
+        double[] losses = {1.0, 3.0, 0.0, 4.0};
+        // p = 0.5 * loss / 8 + 0.5 / 4
+        double[] expected = {0.1875, 0.3125, 0.125, 0.375};
+        ImportanceSampling sampling = new ImportanceSampling(losses.length, 0.5, new Random(42));
+        for (int i = 0; i < losses.length; i++) {
+            sampling.setLoss(i, losses[i]);
+        }
+        sampling.update();
+        int draws = 100000;
+        int[] counts = new int[losses.length];
+        for (int n = 0; n < draws; n++) {
+            counts[sampling.sample()]++;
+        }
+        double mean = 0;
+        for (int i = 0; i < losses.length; i++) {
+            assertEquals(expected[i], (double) counts[i] / draws, 0.01);
+            // the weights undo the sampling: the expected weight is 1
+            mean += expected[i] * sampling.weight(i);
+        }
+        assertEquals(1.0, mean, 1e-12);
+    }
+}
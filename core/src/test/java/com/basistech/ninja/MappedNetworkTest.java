@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.ninja;
+
+import com.basistech.ninja.ejml.NinjaMatrix;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MappedNetworkTest {
+    @Rule
+    public TemporaryFolder folderRule = new TemporaryFolder();
+
+    @Test
+    public void testMap() throws Exception {
+        NinjaMatrix w1 = new NinjaMatrix(4, 4, true,
+            1, 2, 3, 4,
+            5, 6, 7, 8,
+            9, 10, 11, 12,
+            13, 14, 15, 16
+        );
+        NinjaMatrix w2 = new NinjaMatrix(2, 5, true,
+            1, 2, 3, 4, 5,
+            -6, -7, -8, -9, -10
+        );
+        Network net = new Network(w1, w2);
+        File file = folderRule.newFile("model.bin");
+        MappedNetwork.write(net, file);
+        assertTrue(MappedNetwork.isBinaryModel(file));
+
+        MappedNetwork mapped = MappedNetwork.map(file);
+        assertEquals(Arrays.asList(3, 4, 2), mapped.getLayerSizes());
+        double[][] inputs = {{0, 0, 0}, {1, 1, 1}, {-0.1, 0.2, -0.05}};
+        for (double[] input : inputs) {
+            TestNetworks.assertVectorEquals(net.apply(input), mapped.apply(input), 1e-12);
+        }
+
+        Network copy = mapped.toNetwork();
+        assertTrue(w1.isIdentical(copy.getWeightMatrix(0), 0));
+        assertTrue(w2.isIdentical(copy.getWeightMatrix(1), 0));
+    }
+
+    @Test
+    public void testTextModelIsNotBinary() throws Exception {
+        File file = folderRule.newFile("model");
+        new Network(new NinjaMatrix(1, 2, true, 5, -10)).writeModel(file);
+        assertFalse(MappedNetwork.isBinaryModel(file));
+    }
+
+    @Test
+    public void testTruncatedHeader() throws Exception {
+        File file = folderRule.newFile("model.bin");
+        MappedNetwork.write(new Network(new NinjaMatrix(1, 2, true, 5, -10)), file);
+        // the magic number and half of the number of layers
+        byte[] head = Arrays.copyOf(Files.readAllBytes(file.toPath()), 6);
+        Files.write(file.toPath(), head);
+        try {
+            MappedNetwork.map(file);
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("truncated"));
+        }
+    }
+}
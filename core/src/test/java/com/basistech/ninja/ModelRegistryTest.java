@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.ninja;
+
+import com.basistech.ninja.ejml.ColVector;
+import com.basistech.ninja.ejml.NinjaMatrix;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ModelRegistryTest {
+    @Rule
+    public TemporaryFolder folderRule = new TemporaryFolder();
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    @After
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private File writeModel(String name, NinjaMatrix... w) throws IOException {
+        File file = folderRule.newFile(name);
+        new Network(w).writeModel(file);
+        return file;
+    }
+
+    @Test
+    public void testApply() throws Exception {
+        ModelRegistry registry = new ModelRegistry(100, 0, executor);
+        registry.register("and", writeModel("and", new NinjaMatrix(1, 3, true, -15, 10, 10)));
+        registry.register("or", writeModel("or", new NinjaMatrix(1, 3, true, -15, 20, 20)));
+        assertFalse(registry.isLoaded("and"));
+
+        ColVector and = registry.apply("and", 0, 1).get();
+        ColVector or = registry.apply("or", 0, 1).get();
+        assertTrue(and.get(0) < 0.1);
+        assertTrue(or.get(0) > 0.9);
+        assertTrue(registry.isLoaded("and"));
+        assertEquals(6, registry.getLoadedWeights());
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        // room for two of the three models
+        ModelRegistry registry = new ModelRegistry(7, 0, executor);
+        registry.register("and", writeModel("and", new NinjaMatrix(1, 3, true, -15, 10, 10)));
+        registry.register("or", writeModel("or", new NinjaMatrix(1, 3, true, -15, 20, 20)));
+        registry.register("not", writeModel("not", new NinjaMatrix(1, 2, true, 5, -10)));
+
+        registry.get("and");
+        registry.get("or");
+        registry.get("and");
+        registry.get("not");
+        assertTrue(registry.isLoaded("and"));
+        assertFalse(registry.isLoaded("or"));
+        assertTrue(registry.isLoaded("not"));
+        assertTrue(registry.getLoadedWeights() <= 7);
+
+        // checking doesn't make "and" more recently used than "not"
+        assertTrue(registry.isLoaded("and"));
+        registry.get("or");
+        assertFalse(registry.isLoaded("and"));
+        assertTrue(registry.isLoaded("not"));
+    }
+
+    @Test
+    public void testRefresh() throws Exception {
+        File file = writeModel("model", new NinjaMatrix(1, 3, true, -15, 10, 10));
+        ModelRegistry registry = new ModelRegistry(100, 0, executor);
+        registry.register("model", file);
+        assertTrue(registry.apply("model", 0, 1).get().get(0) < 0.1);
+
+        new Network(new NinjaMatrix(1, 3, true, -15, 20, 20)).writeModel(file);
+        assertTrue(file.setLastModified(file.lastModified() + 10000));
+        registry.refresh("model");
+        for (int i = 0; i < 100 && registry.apply("model", 0, 1).get().get(0) < 0.1; i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(registry.apply("model", 0, 1).get().get(0) > 0.9);
+    }
+}
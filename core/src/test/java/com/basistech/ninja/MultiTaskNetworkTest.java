@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.ninja;
+
+import com.basistech.ninja.ejml.ColVector;
+import com.basistech.ninja.ejml.KernelsLoader;
+import com.basistech.ninja.ejml.NinjaMatrix;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MultiTaskNetworkTest {
+    @Rule
+    public TemporaryFolder folderRule = new TemporaryFolder();
+
+    private static ColVector[] inputs(int count, int size) {
+        Random random = new Random(42);
+        ColVector[] x = new ColVector[count];
+        for (int i = 0; i < count; i++) {
+            x[i] = new ColVector(size);
+            for (int j = 0; j < size; j++) {
+                x[i].set(j, random.nextDouble());
+            }
+        }
+        return x;
+    }
+
+    @Test
+    public void testOneTaskIsANetwork() {
+        MultiTaskNetwork multi = new MultiTaskNetwork(KernelsLoader.get(), Arrays.asList(5, 6, 4), Arrays.asList(3));
+        Network trunk = multi.getTrunk();
+        Network net = new Network(trunk.getWeightMatrix(0), trunk.getWeightMatrix(1),
+            multi.getHead(0).getWeightMatrix(0));
+        ColVector[] x = inputs(4, 5);
+        int[][] labels = {{0}, {2}, {1}, {2}};
+        ColVector[] y = new ColVector[labels.length];
+        for (int i = 0; i < labels.length; i++) {
+            y[i] = new ColVector(3);
+            y[i].set(labels[i][0], 1.0);
+        }
+        for (int n = 0; n < 3; n++) {
+            multi.trainBatch(x, labels, 0.7);
+            net.trainBatch(x, y, 0.7);
+        }
+        for (ColVector input : x) {
+            assertArrayEquals(net.apply(input).getData(), multi.applyAll(input.getData())[0].getData(), 1e-12);
+        }
+    }
+
+    @Test
+    public void testMissingLabels() {
+        MultiTaskNetwork multi = new MultiTaskNetwork(KernelsLoader.get(), Arrays.asList(5, 4), Arrays.asList(3, 2));
+        NinjaMatrix before = multi.getHead(1).getWeightMatrix(0);
+        multi.trainBatch(inputs(2, 5), new int[][] {{0, -1}, {1, -1}}, 0.7);
+        assertTrue(before.isIdentical(multi.getHead(1).getWeightMatrix(0), 0));
+        assertTrue(!multi.getHead(0).getWeightMatrix(0).isIdentical(before, 0));
+    }
+
+    @Test
+    public void testApply() {
+        MultiTaskNetwork multi = new MultiTaskNetwork(KernelsLoader.get(), Arrays.asList(5, 4), Arrays.asList(3, 2));
+        double[] input = inputs(1, 5)[0].getData();
+        ColVector[] outputs = multi.applyAll(input);
+        assertEquals(2, outputs.length);
+        for (int t = 0; t < 2; t++) {
+            Model task = multi.getTask(t);
+            assertEquals(Arrays.asList(5, 4, t == 0 ? 3 : 2), task.getLayerSizes());
+            assertArrayEquals(outputs[t].getData(), task.apply(input).getData(), 0);
+        }
+    }
+
+    @Test
+    public void testParseLabels() {
+        MultiTaskNetwork multi = new MultiTaskNetwork(KernelsLoader.get(), Arrays.asList(5, 4), Arrays.asList(3, 2));
+        assertArrayEquals(new int[] {2, -1}, multi.parseLabels("2,-", 1));
+        try {
+            multi.parseLabels("2,2", 1);
+            fail("label out of range");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("task 1"));
+        }
+    }
+
+    @Test
+    public void testWriteLoad() throws Exception {
+        MultiTaskNetwork multi = new MultiTaskNetwork(KernelsLoader.get(), Arrays.asList(5, 6, 4), Arrays.asList(3, 2));
+        File file = folderRule.newFile("model.multi");
+        multi.writeModel(file);
+        MultiTaskNetwork loaded = MultiTaskNetwork.loadModel(file);
+        assertEquals(2, loaded.getNumTasks());
+        double[] input = inputs(1, 5)[0].getData();
+        for (int t = 0; t < 2; t++) {
+            assertArrayEquals(multi.applyAll(input)[t].getData(), loaded.applyAll(input)[t].getData(), 1e-12);
+        }
+    }
+}
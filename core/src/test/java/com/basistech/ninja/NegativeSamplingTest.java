@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.ninja;
+
+import com.basistech.ninja.ejml.ColVector;
+import com.basistech.ninja.ejml.NinjaMatrix;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class NegativeSamplingTest {
+    private static Network copy(Network net) {
+        NinjaMatrix[] w = new NinjaMatrix[net.getNumLayers() - 1];
+        for (int l = 0; l < w.length; l++) {
+            w[l] = net.getWeightMatrix(l);
+        }
+        return new Network(w);
+    }
+
+    private static ColVector[] randomInputs(Random random, int count, int size) {
+        ColVector[] x = new ColVector[count];
+        for (int i = 0; i < count; i++) {
+            x[i] = new ColVector(size);
+            for (int j = 0; j < size; j++) {
+                x[i].set(j, random.nextDouble());
+            }
+        }
+        return x;
+    }
+
+    @Test
+    public void testSample() {
+        NegativeSampling sampling = new NegativeSampling(new Network(Arrays.asList(2, 100)), 10);
+        for (int label = 0; label < 100; label++) {
+            int[] rows = sampling.sample(label);
+            assertEquals(11, rows.length);
+            assertEquals(label, rows[0]);
+            Set<Integer> distinct = new HashSet<>();
+            for (int row : rows) {
+                assertTrue(row >= 0 && row < 100);
+                distinct.add(row);
+            }
+            assertEquals(11, distinct.size());
+        }
+    }
+
+    @Test
+    public void testAllNegativesIsFullGradient() {
+        Random random = new Random(3);
+        Network net = new Network(Arrays.asList(4, 5, 3, 6));
+        Network sampled = copy(net);
+        ColVector[] x = randomInputs(random, 3, 4);
+        int[] labels = {2, 5, 0};
+        ColVector[] y = new ColVector[labels.length];
+        for (int i = 0; i < labels.length; i++) {
+            y[i] = new ColVector(6);
+            y[i].set(labels[i], 1.0);
+        }
+
+        net.trainBatch(x, y, 0.5);
+        new NegativeSampling(sampled, 100).trainBatch(x, labels, 0.5);
+        for (int l = 0; l < net.getNumLayers() - 1; l++) {
+            assertArrayEquals(net.getWeightMatrix(l).getData(), sampled.getWeightMatrix(l).getData(), 1e-12);
+        }
+    }
+
+    @Test
+    public void testOnlySampledRowsChange() {
+        Network net = new Network(Arrays.asList(3, 4, 50));
+        double[] before = net.getWeightMatrix(1).getData();
+        new NegativeSampling(net, 4).trainBatch(randomInputs(new Random(5), 1, 3), new int[] {7}, 0.5);
+        double[] after = net.getWeightMatrix(1).getData();
+        int changed = 0;
+        for (int row = 0; row < 50; row++) {
+            boolean rowChanged = false;
+            for (int j = 0; j < 5; j++) {
+                rowChanged |= before[row * 5 + j] != after[row * 5 + j];
+            }
+            if (rowChanged) {
+                changed++;
+            }
+        }
+        assertEquals(5, changed);
+        assertTrue(before[7 * 5] != after[7 * 5]);
+    }
+
+    @Test
+    public void testLearns() {
+        // the label is the input that is set
+        int size = 20;
+        ColVector[] x = new ColVector[size];
+        int[] labels = new int[size];
+        for (int i = 0; i < size; i++) {
+            x[i] = new ColVector(size);
+            x[i].set(i, 1.0);
+            labels[i] = i;
+        }
+        Network net = new Network(Arrays.asList(size, 10, size));
+        NegativeSampling sampling = new NegativeSampling(net, 3);
+        for (int epoch = 0; epoch < 2000; epoch++) {
+            sampling.trainBatch(x, labels, 2.0);
+        }
+        int correct = 0;
+        for (int i = 0; i < size; i++) {
+            if (Network.sort(net.apply(x[i])).get(0).getIndex() == i) {
+                correct++;
+            }
+        }
+        assertTrue(correct >= 18);
+    }
+}
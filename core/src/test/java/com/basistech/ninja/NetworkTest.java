@@ -30,6 +30,7 @@ import java.io.IOException;
 import java.io.Reader;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.util.Arrays;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
@@ -342,4 +343,104 @@ public class NetworkTest {
         assertTrue(isOne(net.apply(1, 0)));
         assertTrue(isZero(net.apply(1, 1)));
     }
+
+    @Test
+    public void testAccumulateGradient() {
+        Network net = new Network(Arrays.asList(3, 4, 2));
+        Network accumulated = new Network(net.getWeightMatrix(0), net.getWeightMatrix(1));
+        ColVector[] x = {
+            new ColVector(0.1, 0.2, 0.3),
+            new ColVector(0.9, 0.1, 0.5),
+            new ColVector(0.4, 0.7, 0.2),
+        };
+        ColVector[] y = {
+            new ColVector(1.0, 0.0),
+            new ColVector(0.0, 1.0),
+            new ColVector(1.0, 0.0),
+        };
+        NinjaMatrix[] gradient = accumulated.newGradient();
+        // twice, to check that the buffers are zeroed after each update
+        for (int n = 0; n < 2; n++) {
+            net.trainBatch(x, y, 0.7);
+            accumulated.accumulateGradient(new ColVector[] {x[0], x[1]}, new ColVector[] {y[0], y[1]}, gradient);
+            accumulated.accumulateGradient(new ColVector[] {x[2]}, new ColVector[] {y[2]}, gradient);
+            accumulated.applyGradient(gradient, 3, 0.7);
+            for (int l = 0; l < 2; l++) {
+                assertTrue(net.getWeightMatrix(l).isIdentical(accumulated.getWeightMatrix(l), 1e-12));
+            }
+        }
+    }
+
+    @Test
+    public void testCheckpointing() {
+        Network net = new Network(Arrays.asList(3, 5, 4, 6, 5, 2));
+        ColVector[] x = {
+            new ColVector(0.1, 0.2, 0.3),
+            new ColVector(0.9, 0.1, 0.5),
+        };
+        ColVector[] y = {
+            new ColVector(1.0, 0.0),
+            new ColVector(0.0, 1.0),
+        };
+        NinjaMatrix[] expected = net.computeGradient(x, y);
+        // an interval of 5 keeps only the input and output activations
+        for (int interval : new int[] {2, 3, 5}) {
+            net.setCheckpointInterval(interval);
+            NinjaMatrix[] gradient = net.computeGradient(x, y);
+            for (int l = 0; l < expected.length; l++) {
+                assertTrue(expected[l].isIdentical(gradient[l], 1e-12));
+            }
+        }
+    }
+
+    @Test
+    public void testWeightedGradient() {
+        Network net = new Network(Arrays.asList(3, 5, 4, 2));
+        ColVector[] x = {
+            new ColVector(0.1, 0.2, 0.3),
+            new ColVector(0.9, 0.1, 0.5),
+        };
+        ColVector[] y = {
+            new ColVector(1.0, 0.0),
+            new ColVector(0.0, 1.0),
+        };
+        for (int interval : new int[] {1, 2}) {
+            net.setCheckpointInterval(interval);
+            // a weight of 2 is the same as the example twice
+            NinjaMatrix[] expected = net.newGradient();
+            net.accumulateGradient(new ColVector[] {x[0], x[0], x[1]}, new ColVector[] {y[0], y[0], y[1]}, expected);
+            NinjaMatrix[] weighted = net.newGradient();
+            double[] losses = new double[x.length];
+            net.accumulateGradient(x, y, new double[] {2.0, 1.0}, losses, weighted);
+            for (int l = 0; l < expected.length; l++) {
+                assertTrue(expected[l].isIdentical(weighted[l], 1e-12));
+            }
+            for (int i = 0; i < x.length; i++) {
+                assertEquals(net.loss(net.apply(x[i]), y[i]), losses[i], 1e-12);
+            }
+        }
+    }
+
+    @Test
+    public void testPlainGradientSkipsLoss() {
+        final int[] calls = new int[1];
+        Network net = new Network(Arrays.asList(3, 5, 4, 2)) {
+            @Override
+            double loss(ColVector output, ColVector y) {
+                calls[0]++;
+                return super.loss(output, y);
+            }
+        };
+        ColVector[] x = {new ColVector(0.1, 0.2, 0.3), new ColVector(0.9, 0.1, 0.5)};
+        ColVector[] y = {new ColVector(1.0, 0.0), new ColVector(0.0, 1.0)};
+        for (int interval : new int[] {1, 2}) {
+            net.setCheckpointInterval(interval);
+            net.trainBatch(x, y, 0.1);
+            net.accumulateGradient(x, y, net.newGradient());
+            net.accumulateGradient(x, y, new double[] {2.0, 1.0}, null, net.newGradient());
+        }
+        assertEquals(0, calls[0]);
+        net.accumulateGradient(x, y, null, new double[x.length], net.newGradient());
+        assertEquals(x.length, calls[0]);
+    }
 }
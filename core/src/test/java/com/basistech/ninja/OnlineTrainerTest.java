@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.ninja;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class OnlineTrainerTest {
+    // the label is the input that is set
+    private static final String EXAMPLES = "0 0:1\n1 1:1\n";
+
+    @Rule
+    public TemporaryFolder folderRule = new TemporaryFolder();
+
+    @Test
+    public void testPoll() throws Exception {
+        File file = folderRule.newFile("examples");
+        Network initial = new Network(Arrays.asList(2, 2));
+        double[] initialWeights = initial.getWeightMatrix(0).getData();
+        try (OnlineTrainer trainer = new OnlineTrainer(initial, file, 2, 2.0, 100, 0)) {
+            FrozenNetwork first = trainer.get();
+            assertEquals(0, trainer.poll());
+            assertSame(first, trainer.get());
+
+            // an incomplete line and an incomplete batch are not trained yet
+            Files.append("0 0:1\n1 1:", file, Charsets.UTF_8);
+            assertEquals(0, trainer.poll());
+            assertEquals(0, trainer.getVersion());
+            Files.append("1\n", file, Charsets.UTF_8);
+            assertEquals(2, trainer.poll());
+            assertEquals(1, trainer.getVersion());
+            assertTrue(first != trainer.get());
+
+            // a bad line is skipped
+            Files.append("0 0:1\n7 1:1\n", file, Charsets.UTF_8);
+            assertEquals(1, trainer.poll());
+            assertEquals(3, trainer.getExamplesTrained());
+        }
+        // the initial network isn't changed
+        assertArrayEquals(initialWeights, initial.getWeightMatrix(0).getData(), 0);
+    }
+
+    @Test
+    public void testPublishCadence() throws Exception {
+        File file = folderRule.newFile("examples");
+        StringBuilder examples = new StringBuilder();
+        for (int i = 0; i < 10; i++) {
+            examples.append(EXAMPLES);
+        }
+        Files.write(examples.toString(), file, Charsets.UTF_8);
+        try (OnlineTrainer trainer = new OnlineTrainer(new Network(Arrays.asList(2, 2)), file, 2, 2.0, 3, 0)) {
+            // 10 batches: after 3, 6 and 9, and at the end of the file
+            assertEquals(20, trainer.poll());
+            assertEquals(4, trainer.getVersion());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testZeroBatchSize() throws Exception {
+        new OnlineTrainer(new Network(Arrays.asList(2, 2)), folderRule.newFile("examples"), 0, 2.0, 1, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testZeroPublishBatches() throws Exception {
+        new OnlineTrainer(new Network(Arrays.asList(2, 2)), folderRule.newFile("examples"), 2, 2.0, 0, 0);
+    }
+
+    @Test
+    public void testTruncated() throws Exception {
+        File file = folderRule.newFile("examples");
+        Files.write(EXAMPLES + EXAMPLES, file, Charsets.UTF_8);
+        try (OnlineTrainer trainer = new OnlineTrainer(new Network(Arrays.asList(2, 2)), file, 2, 2.0, 1, 0)) {
+            assertEquals(4, trainer.poll());
+            Files.write(EXAMPLES, file, Charsets.UTF_8);
+            assertEquals(2, trainer.poll());
+        }
+    }
+
+    @Test
+    public void testBackgroundTraining() throws Exception {
+        File file = folderRule.newFile("examples");
+        try (OnlineTrainer trainer = new OnlineTrainer(new Network(Arrays.asList(2, 2)), file, 2, 2.0, 5, 5)) {
+            FrozenNetwork snapshot = trainer.get();
+            double before = snapshot.apply(1, 0).get(0);
+            for (int i = 0; i < 200; i++) {
+                Files.append(EXAMPLES, file, Charsets.UTF_8);
+                trainer.apply(1, 0);
+            }
+            long deadline = System.currentTimeMillis() + 10000;
+            while (trainer.getExamplesTrained() < 400 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(400, trainer.getExamplesTrained());
+            while (trainer.apply(1, 0).get(0) < 0.5 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertTrue(trainer.apply(1, 0).get(0) > 0.5);
+            assertTrue(trainer.apply(0, 1).get(1) > 0.5);
+            // snapshots don't change
+            assertEquals(before, snapshot.apply(1, 0).get(0), 0);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.ninja;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class ParallelNetworkTest {
+    @Test
+    public void testSameAsFrozen() {
+        // odd layer sizes leave a short last block
+        FrozenNetwork frozen = new Network(Arrays.asList(30, 101, 37, 5)).freeze();
+        Random random = new Random(42);
+        try (ParallelNetwork parallel = new ParallelNetwork(frozen, 3, 1)) {
+            assertEquals(frozen.getLayerSizes(), parallel.getLayerSizes());
+            for (int n = 0; n < 20; n++) {
+                double[] input = new double[30];
+                for (int i = 0; i < input.length; i++) {
+                    input[i] = random.nextGaussian();
+                }
+                TestNetworks.assertVectorEquals(frozen.apply(input), parallel.apply(input), 0);
+            }
+        }
+    }
+
+    @Test
+    public void testTasks() {
+        FrozenNetwork frozen = new Network(Arrays.asList(2, 2)).freeze();
+        try (ParallelNetwork parallel = new ParallelNetwork(frozen, 4, 1000)) {
+            // too few weights to split
+            assertEquals(1, parallel.tasks(10, 100));
+            assertEquals(1, parallel.tasks(100, 19));
+            assertEquals(2, parallel.tasks(100, 20));
+            // no more than the threads
+            assertEquals(4, parallel.tasks(100000, 2048));
+            // no fewer than four rows each
+            assertEquals(2, parallel.tasks(8, 100000));
+        }
+        try (ParallelNetwork single = new ParallelNetwork(frozen, 1)) {
+            assertEquals(1, single.tasks(100000, 2048));
+        }
+    }
+
+    @Test
+    public void testBlockRows() {
+        assertEquals(28, ParallelNetwork.blockRows(101, 4));
+        assertEquals(4, ParallelNetwork.blockRows(8, 2));
+        assertEquals(36, ParallelNetwork.blockRows(101, 3));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrongInputSize() {
+        FrozenNetwork frozen = new Network(Arrays.asList(3, 2)).freeze();
+        try (ParallelNetwork parallel = new ParallelNetwork(frozen, 2)) {
+            parallel.apply(1.0, 2.0);
+        }
+    }
+}
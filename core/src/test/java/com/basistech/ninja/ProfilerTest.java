@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.ninja;
+
+import com.basistech.ninja.ejml.ColVector;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ProfilerTest {
+    @Test
+    public void testBuckets() {
+        for (long value = 0; value < 100000; value++) {
+            int bucket = LatencyHistogram.bucket(value);
+            assertTrue(value <= LatencyHistogram.bucketMax(bucket));
+            if (bucket > 0) {
+                assertTrue(value > LatencyHistogram.bucketMax(bucket - 1));
+            }
+            // within 12.5%
+            assertTrue(LatencyHistogram.bucketMax(bucket) - value <= value / 8);
+        }
+        assertTrue(LatencyHistogram.bucket(Long.MAX_VALUE) > LatencyHistogram.bucket(Long.MAX_VALUE / 2));
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentile(50));
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+        histogram.record(-5);
+        assertEquals(1001, histogram.getCount());
+        assertEquals(1000, histogram.getMax());
+        long p50 = histogram.getPercentile(50);
+        assertTrue(p50 >= 500 && p50 <= 500 * 9 / 8);
+        long p99 = histogram.getPercentile(99);
+        assertTrue(p99 >= 990 && p99 <= 1000);
+        assertEquals(1000, histogram.getPercentile(100));
+        assertEquals(0, histogram.getPercentile(0));
+    }
+
+    @Test
+    public void testRecordAndReport() {
+        Profiler.reset();
+        assertNull(Profiler.getHistogram(Profiler.Operation.BACKPROP, 1));
+        long start = System.nanoTime();
+        Profiler.record(Profiler.Operation.BACKPROP, 1, start);
+        Profiler.record(Profiler.Operation.BACKPROP, 1, start);
+        assertEquals(2, Profiler.getHistogram(Profiler.Operation.BACKPROP, 1).getCount());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Profiler.report(new PrintStream(bytes, true));
+        String[] lines = bytes.toString().split("\\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[1].startsWith("backprop\t1-2\t2\t"));
+        Profiler.reset();
+    }
+
+    @Test
+    public void testDeepNetwork() {
+        Profiler.reset();
+        long start = System.nanoTime();
+        Profiler.record(Profiler.Operation.BACKPROP, Profiler.MAX_LAYERS, start);
+        Profiler.record(Profiler.Operation.GRADIENT, Profiler.MAX_LAYERS * 4, start);
+        Profiler.record(Profiler.Operation.GRADIENT, Profiler.MAX_LAYERS - 1, start);
+        // deep weight matrices share the last histogram of their own operation
+        assertEquals(1, Profiler.getHistogram(Profiler.Operation.BACKPROP, Profiler.MAX_LAYERS - 1).getCount());
+        assertEquals(2, Profiler.getHistogram(Profiler.Operation.GRADIENT, Profiler.MAX_LAYERS).getCount());
+        assertNull(Profiler.getHistogram(Profiler.Operation.GRADIENT, 0));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Profiler.report(new PrintStream(bytes, true));
+        assertTrue(bytes.toString().contains("\ncomputeGradient\t255+\t2\t"));
+        Profiler.reset();
+    }
+
+    @Test
+    public void testDisabledByDefault() {
+        // the build doesn't set ninja.profile, so training records nothing
+        Profiler.reset();
+        Network net = new Network(Arrays.asList(2, 3, 2));
+        net.trainBatch(new ColVector[] {new ColVector(1.0, 0.0)}, new ColVector[] {new ColVector(0.0, 1.0)}, 0.5);
+        assertEquals(false, Profiler.ENABLED);
+        assertNull(Profiler.getHistogram(Profiler.Operation.FEED_FORWARD, 0));
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.ninja;
+
+import com.basistech.ninja.ejml.NinjaMatrix;
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PrunerTest {
+    @Rule
+    public TemporaryFolder folderRule = new TemporaryFolder();
+
+    @Test
+    public void testPruneBelow() {
+        Network net = TestNetworks.network();
+        new Pruner(net).pruneBelow(0.65);
+        NinjaMatrix w1 = net.getWeightMatrix(0);
+        // bias weights are kept
+        assertEquals(0.1, w1.get(0, 0), 0);
+        assertEquals(0.0, w1.get(0, 3), 0);
+        assertEquals(0.0, w1.get(1, 1), 0);
+        assertEquals(0.7, w1.get(1, 2), 0);
+        assertEquals(0.0, net.getWeightMatrix(1).get(0, 4), 0);
+    }
+
+    @Test
+    public void testPruneToSparsity() {
+        Network net = TestNetworks.network();
+        Pruner pruner = new Pruner(net);
+        pruner.pruneToSparsity(0.5);
+        assertEquals(0.5, pruner.getSparsity(), 0);
+        // the largest weights of each layer survive
+        assertEquals(1.6, net.getWeightMatrix(0).get(3, 3), 0);
+        assertEquals(-1.0, net.getWeightMatrix(1).get(1, 4), 0);
+        pruner.pruneToSparsity(1.0);
+        assertEquals(1.0, pruner.getSparsity(), 0);
+    }
+
+    @Test
+    public void testFineTuneKeepsPrunedWeights() throws Exception {
+        Network net = TestNetworks.network();
+        Pruner pruner = new Pruner(net);
+        pruner.pruneToSparsity(0.5);
+        File examples = folderRule.newFile("examples");
+        Files.write("0 0:1.0 1:-2.0\n1 1:0.5 2:0.25\n", examples, Charsets.UTF_8);
+        pruner.fineTune(examples, 1, 3, 0.5);
+        assertEquals(0.5, pruner.getSparsity(), 0);
+    }
+
+    @Test
+    public void testSparseNetwork() throws Exception {
+        Network net = TestNetworks.network();
+        new Pruner(net).pruneToSparsity(0.5);
+        SparseNetwork sparse = new SparseNetwork(net);
+        assertEquals(0.5, sparse.getSparsity(), 0);
+        double[][] inputs = {{0, 0, 0}, {1, 1, 1}, {-0.1, 0.2, -0.05}};
+        for (double[] input : inputs) {
+            TestNetworks.assertVectorEquals(net.apply(input), sparse.apply(input), 1e-12);
+        }
+
+        File file = folderRule.newFile("model.sparse");
+        sparse.write(file);
+        assertEquals(sparse.getFileSize(), file.length());
+        Model loaded = Models.load(file);
+        assertTrue(loaded instanceof SparseNetwork);
+        for (double[] input : inputs) {
+            TestNetworks.assertVectorEquals(sparse.apply(input), loaded.apply(input), 0);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.ninja;
+
+import com.basistech.ninja.ejml.NinjaMatrix;
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class QuantizedNetworkTest {
+    @Rule
+    public TemporaryFolder folderRule = new TemporaryFolder();
+
+    private File examplesFile() throws Exception {
+        File file = folderRule.newFile("examples");
+        Files.write("0 0:1.0 1:-2.0\n1 1:0.5 2:0.25\n", file, Charsets.UTF_8);
+        return file;
+    }
+
+    @Test
+    public void testCalibrate() throws Exception {
+        double[] maxAbs = QuantizedNetwork.calibrate(TestNetworks.network(), examplesFile(), null);
+        assertEquals(2, maxAbs.length);
+        assertEquals(2.0, maxAbs[0], 0);
+        // hidden layer sigmoid outputs
+        assertTrue(maxAbs[1] > 0 && maxAbs[1] < 1);
+    }
+
+    @Test
+    public void testApply() throws Exception {
+        Network net = TestNetworks.network();
+        QuantizedNetwork quantized = QuantizedNetwork.quantize(net, examplesFile());
+        double[][] inputs = {{0, 0, 0}, {1.0, -2.0, 0}, {0, 0.5, 0.25}, {-0.1, 0.2, -0.05}};
+        for (double[] input : inputs) {
+            TestNetworks.assertVectorEquals(net.apply(input), quantized.apply(input), 0.01);
+        }
+    }
+
+    @Test
+    public void testWriteAndLoad() throws Exception {
+        QuantizedNetwork quantized = QuantizedNetwork.quantize(TestNetworks.network(), examplesFile());
+        File file = folderRule.newFile("model.q8");
+        quantized.write(file);
+        // header, then for each layer: input scale, row scales and biases, weights
+        long layer1 = 4 + 8 * 4 + 12;
+        long layer2 = 4 + 8 * 2 + 8;
+        assertEquals(4 * 5 + layer1 + layer2, file.length());
+
+        Model loaded = Models.load(file);
+        assertTrue(loaded instanceof QuantizedNetwork);
+        assertEquals(quantized.getLayerSizes(), loaded.getLayerSizes());
+        double[] input = {0.3, -0.4, 0.5};
+        TestNetworks.assertVectorEquals(quantized.apply(input), loaded.apply(input), 0);
+    }
+
+    @Test
+    public void testWideRow() {
+        // more terms than an int can sum at 127 * 127 each
+        int cols = 140000;
+        NinjaMatrix w = new NinjaMatrix(1, cols + 1);
+        double[] data = w.getData();
+        double[] input = new double[cols];
+        for (int j = 0; j < cols; j++) {
+            // every product has the same sign, so the sum doesn't cancel out
+            double sign = j % 2 == 0 ? 1 : -1;
+            data[j + 1] = sign * 1e-6;
+            input[j] = sign;
+        }
+        Network net = new Network(w);
+        QuantizedNetwork quantized = QuantizedNetwork.quantize(net, new double[] {1.0});
+        assertEquals(net.apply(input).get(0), quantized.apply(input).get(0), 1e-3);
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.ninja;
+
+import com.basistech.ninja.ejml.NinjaMatrix;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ReloadingNetworkTest {
+    @Rule
+    public TemporaryFolder folderRule = new TemporaryFolder();
+
+    @Test
+    public void testReload() throws Exception {
+        File file = folderRule.newFile("model");
+        new Network(new NinjaMatrix(1, 3, true, -15, 10, 10)).writeModel(file);
+
+        try (ReloadingNetwork net = new ReloadingNetwork(file, 0)) {
+            assertTrue(net.apply(0, 1).get(0) < 0.1);
+            assertFalse(net.reload());
+
+            new Network(new NinjaMatrix(1, 3, true, -15, 20, 20)).writeModel(file);
+            assertTrue(file.setLastModified(file.lastModified() + 10000));
+            assertTrue(net.reload());
+            assertTrue(net.apply(0, 1).get(0) > 0.9);
+        }
+    }
+
+    @Test
+    public void testLayerSizesMismatch() throws Exception {
+        File file = folderRule.newFile("model");
+        new Network(new NinjaMatrix(1, 3, true, -15, 10, 10)).writeModel(file);
+
+        try (ReloadingNetwork net = new ReloadingNetwork(file, 0)) {
+            Network original = net.get();
+            new Network(new NinjaMatrix(1, 2, true, 5, -10)).writeModel(file);
+            assertTrue(file.setLastModified(file.lastModified() + 10000));
+            try {
+                net.reload();
+                fail("expected IllegalStateException");
+            } catch (IllegalStateException e) {
+                assertTrue(e.getMessage().contains("layer sizes changed"));
+            }
+            assertSame(original, net.get());
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.ninja;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SweepTest {
+    @Rule
+    public TemporaryFolder folderRule = new TemporaryFolder();
+
+    private File examplesFile() throws Exception {
+        // the label is the input that is set
+        File file = folderRule.newFile("examples");
+        Files.write("0 0:1\n1 1:1\n2 2:1\n0 0:0.9\n1 1:0.8\n2 2:0.9\n", file, Charsets.UTF_8);
+        return file;
+    }
+
+    @Test
+    public void testDataset() throws Exception {
+        Dataset dataset = Dataset.load(examplesFile(), 3, 3);
+        assertEquals(6, dataset.size());
+        Network net = new Network(Arrays.asList(3, 3));
+        for (int i = 0; i < 200; i++) {
+            dataset.trainEpoch(net, 2, 2.0);
+        }
+        assertEquals(1.0, dataset.accuracy(net), 0);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testLabelOutOfRange() throws Exception {
+        Dataset.load(examplesFile(), 3, 2);
+    }
+
+    @Test
+    public void testRun() throws Exception {
+        Dataset dataset = Dataset.load(examplesFile(), 3, 3);
+        List<Sweep.Config> configs = Arrays.asList(
+            new Sweep.Config(Arrays.asList(3, 3), 2, 0.0),
+            new Sweep.Config(Arrays.asList(3, 4, 3), 2, 2.0),
+            new Sweep.Config(Arrays.asList(3, 3), 1, 2.0));
+        List<Sweep.Outcome> outcomes = new Sweep(dataset, dataset, 200).run(configs, 2);
+        assertEquals(3, outcomes.size());
+        for (int i = 1; i < outcomes.size(); i++) {
+            assertTrue(outcomes.get(i - 1).getAccuracy() >= outcomes.get(i).getAccuracy());
+        }
+        assertEquals(1.0, outcomes.get(0).getAccuracy(), 0);
+        assertEquals(0.0, outcomes.get(2).getConfig().getLearningRate(), 0);
+        // only the best network is kept
+        assertEquals(1.0, dataset.accuracy(outcomes.get(0).getNetwork()), 0);
+        assertNull(outcomes.get(1).getNetwork());
+        assertNull(outcomes.get(2).getNetwork());
+
+        // each network is seeded by its configuration, whatever the order of the threads
+        List<Sweep.Outcome> again = new Sweep(dataset, dataset, 200).run(configs, 1);
+        assertSame(outcomes.get(0).getConfig(), again.get(0).getConfig());
+        for (int l = 0; l < outcomes.get(0).getNetwork().getNumLayers() - 1; l++) {
+            assertTrue(outcomes.get(0).getNetwork().getWeightMatrix(l)
+                .isIdentical(again.get(0).getNetwork().getWeightMatrix(l), 0));
+        }
+    }
+}
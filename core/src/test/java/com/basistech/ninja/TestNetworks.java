@@ -0,0 +1,61 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.ninja;
+
+import com.basistech.ninja.ejml.ColVector;
+import com.basistech.ninja.ejml.NinjaMatrix;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Fixtures and assertions shared by the tests of the inference models.
+ */
+final class TestNetworks {
+    private TestNetworks() {
+        // empty
+    }
+
+    /**
+     * Returns a 3-4-2 network with fixed weights of both signs, for models
+     * that are derived from a {@link Network}.
+     *
+     * @return the network
+     */
+    static Network network() {
+        NinjaMatrix w1 = new NinjaMatrix(4, 4, true,
+            0.1, 0.2, -0.3, 0.4,
+            -0.5, 0.6, 0.7, -0.8,
+            0.9, -1.0, 1.1, 1.2,
+            -1.3, 1.4, -1.5, 1.6
+        );
+        NinjaMatrix w2 = new NinjaMatrix(2, 5, true,
+            0.1, 0.2, 0.3, 0.4, 0.5,
+            -0.6, -0.7, -0.8, -0.9, -1.0
+        );
+        return new Network(w1, w2);
+    }
+
+    static void assertVectorEquals(ColVector expected, ColVector actual, double delta) {
+        assertEquals(expected.numRows(), actual.numRows());
+        for (int i = 0; i < expected.numRows(); i++) {
+            assertEquals(expected.get(i), actual.get(i), delta);
+        }
+    }
+}
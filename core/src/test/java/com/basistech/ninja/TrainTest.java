@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.ninja;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+
+public class TrainTest {
+    @Rule
+    public TemporaryFolder folderRule = new TemporaryFolder();
+
+    // 25 examples with 5 features and 3 labels: the last batch of 10 is short
+    private File writeExamples() throws IOException {
+        Random random = new Random(42);
+        StringBuilder sb = new StringBuilder();
+        for (int n = 0; n < 25; n++) {
+            sb.append(random.nextInt(3));
+            for (int i = 0; i < 5; i++) {
+                sb.append(String.format(" %d:%f", i, random.nextDouble()));
+            }
+            sb.append('\n');
+        }
+        File examples = folderRule.newFile("examples.txt");
+        Files.write(sb.toString(), examples, Charsets.UTF_8);
+        return examples;
+    }
+
+    @Test
+    public void testMicroBatches() throws Exception {
+        // micro-batches of 4 straddle batches of 10
+        File examples = writeExamples();
+        Network initial = new Network(Arrays.asList(5, 4, 3));
+        Network whole = new Network(initial.getWeightMatrix(0), initial.getWeightMatrix(1));
+        Network micro = new Network(initial.getWeightMatrix(0), initial.getWeightMatrix(1));
+        new Train(whole, examples).train(10, 2, 0.7, folderRule.newFile("whole.model"));
+        Train train = new Train(micro, examples);
+        train.setMicroBatchSize(4);
+        train.train(10, 2, 0.7, folderRule.newFile("micro.model"));
+
+        for (int l = 0; l < 2; l++) {
+            assertTrue(whole.getWeightMatrix(l).isIdentical(micro.getWeightMatrix(l), 1e-12));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testZeroMicroBatchSize() throws Exception {
+        new Train(new Network(Arrays.asList(5, 4, 3)), writeExamples()).setMicroBatchSize(0);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testTeacherWithMicroBatches() throws Exception {
+        Train train = new Train(new Network(Arrays.asList(5, 4, 3)), writeExamples());
+        train.setMicroBatchSize(4);
+        train.setDistillation(new Distillation(new Network(Arrays.asList(5, 6, 3)), 2, 0.5));
+    }
+
+    @Test
+    public void testImportanceSamplingFirstEpoch() throws Exception {
+        // the first epoch goes through the examples in order, with no weights
+        File examples = writeExamples();
+        Network initial = new Network(Arrays.asList(5, 4, 3));
+        Network plain = new Network(initial.getWeightMatrix(0), initial.getWeightMatrix(1));
+        Network sampled = new Network(initial.getWeightMatrix(0), initial.getWeightMatrix(1));
+        new Train(plain, examples).train(10, 1, 0.7, folderRule.newFile("plain.model"));
+        Train train = new Train(sampled, examples);
+        train.setImportanceSampling(0.5);
+        train.train(10, 1, 0.7, folderRule.newFile("sampled.model"));
+
+        for (int l = 0; l < 2; l++) {
+            assertTrue(plain.getWeightMatrix(l).isIdentical(sampled.getWeightMatrix(l), 1e-12));
+        }
+    }
+}
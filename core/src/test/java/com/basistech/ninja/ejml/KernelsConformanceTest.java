@@ -0,0 +1,190 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.ninja.ejml;
+
+import com.basistech.ninja.Network;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that every {@link Kernels} implementation must pass. Each
+ * implementation has a subclass that returns it from {@link #createKernels()}.
+ * Results are compared with straightforward loops over {@link NinjaMatrix#get}.
+ */
+public abstract class KernelsConformanceTest {
+    private static final double TOLERANCE = 1e-9;
+    // odd sizes exercise unrolled and vectorized loop tails; 3x2100 spans column blocks
+    private static final int[][] SHAPES = {{1, 1}, {3, 5}, {4, 8}, {17, 33}, {64, 129}, {3, 2100}};
+    private final Random random = new Random(42);
+
+    protected abstract Kernels createKernels();
+
+    private NinjaMatrix randomMatrix(int rows, int cols) {
+        NinjaMatrix m = new NinjaMatrix(rows, cols);
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                m.set(i, j, random.nextGaussian());
+            }
+        }
+        return m;
+    }
+
+    private ColVector randomVector(int rows) {
+        return new ColVector(randomMatrix(rows, 1));
+    }
+
+    private static void assertVectorEquals(double[] expected, ColVector actual) {
+        assertEquals(expected.length, actual.numRows());
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], actual.get(i), TOLERANCE);
+        }
+    }
+
+    @Test
+    public void testName() {
+        Kernels kernels = createKernels();
+        assertEquals(kernels.getName(), KernelsLoader.load(kernels.getName()).getName());
+    }
+
+    @Test
+    public void testMult() {
+        Kernels kernels = createKernels();
+        for (int[] shape : SHAPES) {
+            NinjaMatrix m = randomMatrix(shape[0], shape[1]);
+            ColVector x = randomVector(shape[1]);
+            double[] expected = new double[shape[0]];
+            for (int i = 0; i < shape[0]; i++) {
+                for (int j = 0; j < shape[1]; j++) {
+                    expected[i] += m.get(i, j) * x.get(j);
+                }
+            }
+            ColVector out = new ColVector(shape[0]);
+            kernels.mult(m, x, out);
+            assertVectorEquals(expected, out);
+        }
+    }
+
+    @Test
+    public void testMultTransA() {
+        Kernels kernels = createKernels();
+        for (int[] shape : SHAPES) {
+            NinjaMatrix m = randomMatrix(shape[0], shape[1]);
+            ColVector x = randomVector(shape[0]);
+            double[] expected = new double[shape[1]];
+            for (int i = 0; i < shape[0]; i++) {
+                for (int j = 0; j < shape[1]; j++) {
+                    expected[j] += m.get(i, j) * x.get(i);
+                }
+            }
+            // stale values in the output must be overwritten
+            ColVector out = randomVector(shape[1]);
+            kernels.multTransA(m, x, out);
+            assertVectorEquals(expected, out);
+        }
+    }
+
+    @Test
+    public void testAddOuterProduct() {
+        Kernels kernels = createKernels();
+        for (int[] shape : SHAPES) {
+            NinjaMatrix acc = randomMatrix(shape[0], shape[1]);
+            ColVector u = randomVector(shape[0]);
+            u.set(0, 0.0);
+            ColVector v = randomVector(shape[1]);
+            NinjaMatrix expected = acc.copy();
+            for (int i = 0; i < shape[0]; i++) {
+                for (int j = 0; j < shape[1]; j++) {
+                    expected.set(i, j, expected.get(i, j) + u.get(i) * v.get(j));
+                }
+            }
+            kernels.addOuterProduct(acc, u, v);
+            assertTrue(expected.isIdentical(acc, TOLERANCE));
+        }
+    }
+
+    @Test
+    public void testSigmoid() {
+        Kernels kernels = createKernels();
+        for (int[] shape : SHAPES) {
+            ColVector z = randomVector(shape[1]);
+            z.set(0, 800.0);
+            double[] expected = new double[shape[1]];
+            for (int i = 0; i < expected.length; i++) {
+                expected[i] = 1.0 / (1 + Math.exp(-z.get(i)));
+            }
+            ColVector out = new ColVector(shape[1]);
+            kernels.sigmoid(z, out);
+            assertVectorEquals(expected, out);
+        }
+    }
+
+    @Test
+    public void testMultSigmoidPrime() {
+        Kernels kernels = createKernels();
+        for (int[] shape : SHAPES) {
+            ColVector delta = randomVector(shape[1]);
+            ColVector a = randomVector(shape[1]);
+            double[] expected = new double[shape[1]];
+            for (int i = 0; i < expected.length; i++) {
+                expected[i] = delta.get(i) * a.get(i) * (1 - a.get(i));
+            }
+            kernels.multSigmoidPrime(delta, a);
+            assertVectorEquals(expected, delta);
+        }
+    }
+
+    @Test
+    public void testAddScaled() {
+        Kernels kernels = createKernels();
+        for (int[] shape : SHAPES) {
+            NinjaMatrix acc = randomMatrix(shape[0], shape[1]);
+            NinjaMatrix x = randomMatrix(shape[0], shape[1]);
+            NinjaMatrix expected = acc.copy();
+            for (int i = 0; i < shape[0]; i++) {
+                for (int j = 0; j < shape[1]; j++) {
+                    expected.set(i, j, expected.get(i, j) - 0.5 * x.get(i, j));
+                }
+            }
+            kernels.addScaled(acc, -0.5, x);
+            assertTrue(expected.isIdentical(acc, TOLERANCE));
+        }
+    }
+
+    @Test
+    public void testTrainBatch() {
+        NinjaMatrix w1 = randomMatrix(5, 4);
+        NinjaMatrix w2 = randomMatrix(2, 6);
+        Network expected = new Network(new EjmlKernels(), w1.copy(), w2.copy());
+        Network actual = new Network(createKernels(), w1.copy(), w2.copy());
+        ColVector[] x = {randomVector(3), randomVector(3), randomVector(3)};
+        ColVector[] y = {new ColVector(1.0, 0.0), new ColVector(0.0, 1.0), new ColVector(1.0, 0.0)};
+        for (int i = 0; i < 10; i++) {
+            expected.trainBatch(x, y, 0.5);
+            actual.trainBatch(x, y, 0.5);
+        }
+        for (int l = 0; l < 2; l++) {
+            assertTrue(expected.getWeightMatrix(l).isIdentical(actual.getWeightMatrix(l), TOLERANCE));
+        }
+    }
+}
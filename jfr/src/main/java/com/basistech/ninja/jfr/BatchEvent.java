@@ -0,0 +1,48 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.ninja.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * {@code BatchEvent} covers the training of one batch.
+ */
+@Name(BatchEvent.NAME)
+@Label("Training Batch")
+@Category("Ninja")
+@Description("Computing the gradient of a batch and updating the weights")
+class BatchEvent extends Event {
+    static final String NAME = "com.basistech.ninja.Batch";
+
+    @Label("Examples")
+    private final int examples;
+
+    BatchEvent(int examples) {
+        this.examples = examples;
+    }
+
+    int getExamples() {
+        return examples;
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.ninja.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * {@code EpochEvent} covers one pass over the training examples.
+ */
+@Name(EpochEvent.NAME)
+@Label("Training Epoch")
+@Category("Ninja")
+@Description("One pass over the training examples")
+class EpochEvent extends Event {
+    static final String NAME = "com.basistech.ninja.Epoch";
+
+    @Label("Epoch")
+    private final int epoch;
+
+    EpochEvent(int epoch) {
+        this.epoch = epoch;
+    }
+
+    int getEpoch() {
+        return epoch;
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.ninja.jfr;
+
+import com.basistech.ninja.TrainingListener;
+import jdk.jfr.Event;
+
+/**
+ * {@code JfrTrainingListener} emits Java Flight Recorder events for training
+ * batches ({@code com.basistech.ninja.Batch}) and epochs
+ * ({@code com.basistech.ninja.Epoch}). It is registered as a service, so it is
+ * used whenever this module is on the classpath and
+ * {@link com.basistech.ninja.Profiler#ENABLED} is true. When no recording
+ * includes the events, committing them does nothing.
+ */
+public class JfrTrainingListener implements TrainingListener {
+    @Override
+    public Span batchStarted(int examples) {
+        return start(new BatchEvent(examples));
+    }
+
+    @Override
+    public Span epochStarted(int epoch) {
+        return start(new EpochEvent(epoch));
+    }
+
+    private static Span start(final Event event) {
+        event.begin();
+        return new Span() {
+            @Override
+            public void end() {
+                event.commit();
+            }
+        };
+    }
+}
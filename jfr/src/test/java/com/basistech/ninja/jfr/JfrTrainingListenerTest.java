@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.ninja.jfr;
+
+import com.basistech.ninja.Network;
+import com.basistech.ninja.Profiler;
+import com.basistech.ninja.TrainingListener;
+import com.basistech.ninja.ejml.ColVector;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class JfrTrainingListenerTest {
+    @Rule
+    public TemporaryFolder folderRule = new TemporaryFolder();
+
+    @Test
+    public void testEvents() throws Exception {
+        // surefire sets ninja.profile for this module
+        assertTrue(Profiler.ENABLED);
+        Profiler.reset();
+        Network net = new Network(Arrays.asList(2, 3, 2));
+        ColVector[] x = {new ColVector(1.0, 0.0), new ColVector(0.0, 1.0)};
+        ColVector[] y = {new ColVector(0.0, 1.0), new ColVector(1.0, 0.0)};
+
+        Path file = folderRule.newFile("training.jfr").toPath();
+        try (Recording recording = new Recording()) {
+            recording.enable(BatchEvent.NAME);
+            recording.enable(EpochEvent.NAME);
+            recording.start();
+            for (int epoch = 1; epoch <= 2; epoch++) {
+                TrainingListener.Span span = Profiler.epochStarted(epoch);
+                for (int i = 0; i < 3; i++) {
+                    net.trainBatch(x, y, 0.5);
+                }
+                span.end();
+            }
+            recording.stop();
+            recording.dump(file);
+        }
+
+        int batches = 0;
+        int epochs = 0;
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+        for (RecordedEvent event : events) {
+            if (BatchEvent.NAME.equals(event.getEventType().getName())) {
+                assertEquals(2, event.getInt("examples"));
+                batches++;
+            } else if (EpochEvent.NAME.equals(event.getEventType().getName())) {
+                epochs++;
+                assertEquals(epochs, event.getInt("epoch"));
+            }
+        }
+        assertEquals(6, batches);
+        assertEquals(2, epochs);
+
+        // three layers: two weight matrices forward, one backpropagated delta
+        assertEquals(12, Profiler.getHistogram(Profiler.Operation.FEED_FORWARD, 0).getCount());
+        assertEquals(12, Profiler.getHistogram(Profiler.Operation.FEED_FORWARD, 1).getCount());
+        assertEquals(12, Profiler.getHistogram(Profiler.Operation.BACKPROP, 1).getCount());
+        assertEquals(12, Profiler.getHistogram(Profiler.Operation.GRADIENT, 1).getCount());
+    }
+}
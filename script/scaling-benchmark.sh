@@ -0,0 +1,23 @@
+#! /bin/bash
+#
+# Runs ScalingBenchmark, which trains and evaluates networks on synthetic
+# examples over a grid of sizes and prints throughput, latency, peak heap
+# and GC time as CSV or JSON.  Build first with 'mvn install'.
+#
+# The heap is fixed so that peak heap and GC time are comparable across
+# runs; override it with JVM_ARGS.  For example:
+#
+# $ script/scaling-benchmark.sh --examples 10000,100000 --width 64,256 \
+#     --threads 1,4 --format json --output scaling.json
+
+benchmarks_dir=$(dirname $0)/../benchmarks
+CP=${benchmarks_dir}/target/classes:$(cat ${benchmarks_dir}/target/classpath.txt)
+
+if [ ! -f ${benchmarks_dir}/target/classpath.txt ]
+then
+    echo "$benchmarks_dir/target/classpath.txt must exist; run mvn install"
+    exit 1
+fi
+
+java ${JVM_ARGS:--Xms1g -Xmx1g} -Dfile.encoding=UTF-8 -cp "${CP}" \
+    com.basistech.ninja.benchmarks.ScalingBenchmark "$@"
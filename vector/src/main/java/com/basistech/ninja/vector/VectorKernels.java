@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.ninja.vector;
+
+import com.basistech.ninja.ejml.ColVector;
+import com.basistech.ninja.ejml.Kernels;
+import com.basistech.ninja.ejml.NinjaMatrix;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.util.Arrays;
+
+/**
+ * {@code VectorKernels} implements {@link Kernels} with the incubating Java
+ * Vector API, which compiles to SIMD instructions on supported hardware.
+ *
+ * <p>The JVM must be started with {@code --add-modules=jdk.incubator.vector};
+ * otherwise this class fails to load and {@link com.basistech.ninja.ejml.KernelsLoader}
+ * falls back to EJML. Sums are accumulated lane by lane, so results can differ
+ * from EJML in the last bits.
+ */
+public class VectorKernels implements Kernels {
+    public static final String NAME = "vector";
+    // initialized when the provider is instantiated, so that a missing module fails early
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void mult(NinjaMatrix m, ColVector x, ColVector out) {
+        int rows = m.numRows();
+        int cols = m.numCols();
+        double[] a = m.getData();
+        double[] v = x.getData();
+        double[] result = out.getData();
+        int bound = SPECIES.loopBound(cols);
+        for (int i = 0; i < rows; i++) {
+            int offset = i * cols;
+            DoubleVector acc = DoubleVector.zero(SPECIES);
+            int j = 0;
+            for (; j < bound; j += SPECIES.length()) {
+                DoubleVector row = DoubleVector.fromArray(SPECIES, a, offset + j);
+                acc = row.fma(DoubleVector.fromArray(SPECIES, v, j), acc);
+            }
+            double sum = acc.reduceLanes(VectorOperators.ADD);
+            for (; j < cols; j++) {
+                sum += a[offset + j] * v[j];
+            }
+            result[i] = sum;
+        }
+    }
+
+    @Override
+    public void multTransA(NinjaMatrix m, ColVector x, ColVector out) {
+        int rows = m.numRows();
+        int cols = m.numCols();
+        double[] a = m.getData();
+        double[] v = x.getData();
+        double[] result = out.getData();
+        Arrays.fill(result, 0.0);
+        // out += v[i] * row i, which streams through m in storage order
+        for (int i = 0; i < rows; i++) {
+            axpy(v[i], a, i * cols, result, cols);
+        }
+    }
+
+    @Override
+    public void addOuterProduct(NinjaMatrix acc, ColVector u, ColVector v) {
+        int rows = acc.numRows();
+        int cols = acc.numCols();
+        double[] a = acc.getData();
+        double[] left = u.getData();
+        double[] right = v.getData();
+        for (int i = 0; i < rows; i++) {
+            if (left[i] != 0.0) {
+                axpy(left[i], right, 0, a, i * cols, cols);
+            }
+        }
+    }
+
+    @Override
+    public void sigmoid(ColVector z, ColVector out) {
+        double[] in = z.getData();
+        double[] result = out.getData();
+        int bound = SPECIES.loopBound(in.length);
+        DoubleVector one = DoubleVector.broadcast(SPECIES, 1.0);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector e = DoubleVector.fromArray(SPECIES, in, i).neg().lanewise(VectorOperators.EXP);
+            one.div(one.add(e)).intoArray(result, i);
+        }
+        for (; i < in.length; i++) {
+            result[i] = 1.0 / (1 + Math.exp(-in[i]));
+        }
+    }
+
+    @Override
+    public void multSigmoidPrime(ColVector delta, ColVector a) {
+        double[] d = delta.getData();
+        double[] values = a.getData();
+        int bound = SPECIES.loopBound(d.length);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector av = DoubleVector.fromArray(SPECIES, values, i);
+            DoubleVector dv = DoubleVector.fromArray(SPECIES, d, i);
+            dv.mul(av).mul(av.neg().add(1.0)).intoArray(d, i);
+        }
+        for (; i < d.length; i++) {
+            d[i] *= values[i] * (1.0 - values[i]);
+        }
+    }
+
+    @Override
+    public void addScaled(NinjaMatrix acc, double alpha, NinjaMatrix x) {
+        axpy(alpha, x.getData(), 0, acc.getData(), acc.numRows() * acc.numCols());
+    }
+
+    // y[0, n) += alpha * x[xOffset, xOffset + n)
+    private static void axpy(double alpha, double[] x, int xOffset, double[] y, int n) {
+        axpy(alpha, x, xOffset, y, 0, n);
+    }
+
+    // y[yOffset, yOffset + n) += alpha * x[xOffset, xOffset + n)
+    private static void axpy(double alpha, double[] x, int xOffset, double[] y, int yOffset, int n) {
+        DoubleVector scale = DoubleVector.broadcast(SPECIES, alpha);
+        int bound = SPECIES.loopBound(n);
+        int j = 0;
+        for (; j < bound; j += SPECIES.length()) {
+            DoubleVector xv = DoubleVector.fromArray(SPECIES, x, xOffset + j);
+            DoubleVector yv = DoubleVector.fromArray(SPECIES, y, yOffset + j);
+            xv.fma(scale, yv).intoArray(y, yOffset + j);
+        }
+        for (; j < n; j++) {
+            y[yOffset + j] += alpha * x[xOffset + j];
+        }
+    }
+}